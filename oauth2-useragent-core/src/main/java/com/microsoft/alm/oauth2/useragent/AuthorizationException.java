@@ -3,11 +3,11 @@
 
 package com.microsoft.alm.oauth2.useragent;
 
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
+
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
-import java.net.URLEncoder;
 
 public class AuthorizationException extends Exception {
 
@@ -15,11 +15,10 @@ public class AuthorizationException extends Exception {
     static final String ERROR_DESCRIPTION = "error_description";
     static final String ERROR_URI = "error_uri";
 
-    private static final String UTF_8 = "UTF-8";
-
     private final String code;
     private final String description;
     private final URI uri;
+    private String networkCapture;
 
     public AuthorizationException(final String code) {
         this(code, null, null, null);
@@ -47,6 +46,18 @@ public class AuthorizationException extends Exception {
         return uri;
     }
 
+    /**
+     * @return the requests the browser made before this error, as an HTTP Archive (HAR) document,
+     *         or {@code null} unless the {@code userAgentRecordNetwork} property was {@code true}
+     */
+    public String getNetworkCapture() {
+        return networkCapture;
+    }
+
+    void setNetworkCapture(final String networkCapture) {
+        this.networkCapture = networkCapture;
+    }
+
     @Override public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append(getClass().getName()).append(": ");
@@ -69,21 +80,19 @@ public class AuthorizationException extends Exception {
     }
 
     public static String toString(final String code, final String description, final URI uri) {
-        try {
-            final StringBuilder sb = new StringBuilder();
-            sb.append(ERROR_CODE).append('=').append(URLEncoder.encode(code, UTF_8));
-            if (description != null) {
-                sb.append('&');
-                sb.append(ERROR_DESCRIPTION).append('=').append(URLEncoder.encode(description, UTF_8));
-            }
-            if (uri != null) {
-                sb.append('&');
-                sb.append(ERROR_URI).append('=').append(URLEncoder.encode(uri.toString(), UTF_8));
-            }
-            return sb.toString();
+        final StringBuilder sb = new StringBuilder();
+        sb.append(ERROR_CODE).append('=');
+        PercentEncoder.FORM.encode(code, sb);
+        if (description != null) {
+            sb.append('&');
+            sb.append(ERROR_DESCRIPTION).append('=');
+            PercentEncoder.FORM.encode(description, sb);
         }
-        catch (final UnsupportedEncodingException e) {
-            throw new Error(e);
+        if (uri != null) {
+            sb.append('&');
+            sb.append(ERROR_URI).append('=');
+            PercentEncoder.FORM.encode(uri.toString(), sb);
         }
+        return sb.toString();
     }
 }
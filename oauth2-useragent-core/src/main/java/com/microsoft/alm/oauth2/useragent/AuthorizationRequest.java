@@ -0,0 +1,38 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.net.URI;
+
+/**
+ * The parameters of one of the authorization requests sent to
+ * {@link UserAgent#requestAuthorizationCodes(java.util.List)}.
+ */
+public class AuthorizationRequest {
+
+    private final URI authorizationEndpoint;
+    private final URI redirectUri;
+
+    public AuthorizationRequest(final URI authorizationEndpoint, final URI redirectUri) {
+        if (authorizationEndpoint == null)
+            throw new IllegalArgumentException("The 'authorizationEndpoint' argument is null.");
+        if (redirectUri == null)
+            throw new IllegalArgumentException("The 'redirectUri' argument is null.");
+
+        this.authorizationEndpoint = authorizationEndpoint;
+        this.redirectUri = redirectUri;
+    }
+
+    public URI getAuthorizationEndpoint() {
+        return authorizationEndpoint;
+    }
+
+    public URI getRedirectUri() {
+        return redirectUri;
+    }
+
+    @Override public String toString() {
+        return "authorizationEndpoint: " + authorizationEndpoint + " redirectUri: " + redirectUri;
+    }
+}
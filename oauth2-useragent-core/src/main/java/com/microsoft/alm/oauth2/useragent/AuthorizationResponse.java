@@ -3,11 +3,10 @@
 
 package com.microsoft.alm.oauth2.useragent;
 
-import java.io.UnsupportedEncodingException;
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
+
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
 import java.util.regex.Pattern;
 
 public class AuthorizationResponse {
@@ -15,16 +14,21 @@ public class AuthorizationResponse {
     static final String RESPONSE_CODE = "code";
     static final String RESPONSE_STATE = "state";
 
-    private static final String UTF_8 = "UTF-8";
     private static final Pattern PAIR_SEPARATOR = Pattern.compile("&");
     private static final Pattern NAME_VALUE_SEPARATOR = Pattern.compile("=");
 
     private final String code;
     private final String state;
+    private final String networkCapture;
 
     public AuthorizationResponse(final String code, final String state) {
+        this(code, state, null);
+    }
+
+    AuthorizationResponse(final String code, final String state, final String networkCapture) {
         this.code = code;
         this.state = state;
+        this.networkCapture = networkCapture;
     }
 
     public String getCode() {
@@ -34,19 +38,24 @@ public class AuthorizationResponse {
         return state;
     }
 
+    /**
+     * @return the requests the browser made to obtain this response, as an HTTP Archive (HAR) document,
+     *         or {@code null} unless the {@code userAgentRecordNetwork} property was {@code true}
+     */
+    public String getNetworkCapture() {
+        return networkCapture;
+    }
+
     @Override public String toString() {
-        try {
-            final StringBuilder sb = new StringBuilder();
-            sb.append(RESPONSE_CODE).append('=').append(URLEncoder.encode(code, UTF_8));
-            if (state != null) {
-                sb.append('&');
-                sb.append(RESPONSE_STATE).append('=').append(URLEncoder.encode(state, UTF_8));
-            }
-            return sb.toString();
-        }
-        catch (final UnsupportedEncodingException e) {
-            throw new Error(e);
+        final StringBuilder sb = new StringBuilder();
+        sb.append(RESPONSE_CODE).append('=');
+        PercentEncoder.FORM.encode(code, sb);
+        if (state != null) {
+            sb.append('&');
+            sb.append(RESPONSE_STATE).append('=');
+            PercentEncoder.FORM.encode(state, sb);
         }
+        return sb.toString();
     }
 
     public static AuthorizationResponse fromString(final String s) throws AuthorizationException {
@@ -65,32 +74,27 @@ public class AuthorizationResponse {
 
             for (final String pair : pairs) {
                 final String[] nameAndValue = NAME_VALUE_SEPARATOR.split(pair, 2);
-                try {
-                    if (nameAndValue.length != 2) {
-                        final StringBuilder sb = new StringBuilder("Failed to parse response: ");
-                        sb.append("'").append(trimmed).append("'.");
-                        if (errorDescription != null) {
-                            sb.append("\n").append("Additional information: ").append(errorDescription);
-                        }
-                        throw new AuthorizationException("parsing_error", sb.toString(), null, null);
-                    }
-
-                    final String name = URLDecoder.decode(nameAndValue[0], UTF_8);
-                    final String value = URLDecoder.decode(nameAndValue[1], UTF_8);
-                    if (RESPONSE_CODE.equals(name)) {
-                        code = value;
-                    } else if (RESPONSE_STATE.equals(name)) {
-                        state = value;
-                    } else if (AuthorizationException.ERROR_CODE.equals(name)) {
-                        error = value;
-                    } else if (AuthorizationException.ERROR_DESCRIPTION.equals(name)) {
-                        errorDescription = value;
-                    } else if (AuthorizationException.ERROR_URI.equals(name)) {
-                        errorUriString = value;
+                if (nameAndValue.length != 2) {
+                    final StringBuilder sb = new StringBuilder("Failed to parse response: ");
+                    sb.append("'").append(trimmed).append("'.");
+                    if (errorDescription != null) {
+                        sb.append("\n").append("Additional information: ").append(errorDescription);
                     }
+                    throw new AuthorizationException("parsing_error", sb.toString(), null, null);
                 }
-                catch (final UnsupportedEncodingException e) {
-                    throw new Error(e);
+
+                final String name = PercentEncoder.FORM.decode(nameAndValue[0]);
+                final String value = PercentEncoder.FORM.decode(nameAndValue[1]);
+                if (RESPONSE_CODE.equals(name)) {
+                    code = value;
+                } else if (RESPONSE_STATE.equals(name)) {
+                    state = value;
+                } else if (AuthorizationException.ERROR_CODE.equals(name)) {
+                    error = value;
+                } else if (AuthorizationException.ERROR_DESCRIPTION.equals(name)) {
+                    errorDescription = value;
+                } else if (AuthorizationException.ERROR_URI.equals(name)) {
+                    errorUriString = value;
                 }
             }
         }
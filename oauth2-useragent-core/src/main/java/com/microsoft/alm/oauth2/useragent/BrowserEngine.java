@@ -0,0 +1,186 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The native engine behind the SWT provider's browser, which is the single biggest factor in how long
+ * that provider takes to start.  The {@code userAgentSwtBrowserEngine} property names an engine,
+ * or {@code auto} to benchmark each engine available on the platform once and then use the one
+ * that started the fastest, as recorded by the browser process itself in {@code ~/.oauth2-useragent/engines.properties}.
+ */
+enum BrowserEngine {
+
+    /**
+     * Whatever SWT picks on its own.
+     */
+    DEFAULT,
+    /**
+     * Mozilla, through XULRunner.
+     */
+    MOZILLA,
+    /**
+     * WebKit, on Linux and Mac OS X.
+     */
+    WEBKIT,
+    /**
+     * Edge, on Windows, from SWT 4.14.
+     */
+    EDGE;
+
+    private static final Logger logger = Logger.getLogger(BrowserEngine.class.getName());
+
+    static final String BROWSER_ENGINE_PROPERTY_NAME = "userAgentSwtBrowserEngine";
+    static final String AUTO = "auto";
+    /**
+     * Tells the browser process which engine to use and for which environment, so it can record how long it took to start.
+     */
+    static final String SELECTED_ENGINE_PROPERTY_NAME = "userAgentSwtBrowserEngineSelected";
+    static final String ENVIRONMENT_PROPERTY_NAME = "userAgentSwtBrowserEnvironment";
+    static final String FAILED = "failed";
+    static final File BENCHMARK_FILE = new File(Provider.USER_AGENT_HOME, "engines.properties");
+
+    boolean isAvailable(final PlatformInfo platform) {
+        switch (this) {
+            case WEBKIT:
+                return !platform.isWindows();
+            case EDGE:
+                return platform.isWindows();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Adds the JVM arguments that select this engine in the browser process.
+     *
+     * @param command     the command line of the browser process
+     * @param environment the environment the engine was selected for
+     */
+    void addArguments(final List<String> command, final String environment) {
+        command.add("-D" + SELECTED_ENGINE_PROPERTY_NAME + "=" + name());
+        command.add("-D" + ENVIRONMENT_PROPERTY_NAME + "=" + environment);
+    }
+
+    /**
+     * Determines the engine to use according to the {@code userAgentSwtBrowserEngine} property.
+     * An engine that isn't available on the platform is replaced with {@link #DEFAULT}.
+     *
+     * @param properties    the properties to consult, usually the System Properties
+     * @param platform      the facts about the platform the browser process will run on
+     * @param benchmarkFile where the start-up times of the engines are recorded
+     * @return the engine to use; {@code null} to leave SWT alone
+     */
+    static BrowserEngine fromProperties(final Properties properties, final PlatformInfo platform, final File benchmarkFile) {
+        final String value = properties.getProperty(BROWSER_ENGINE_PROPERTY_NAME);
+        if (StringHelper.isNullOrWhiteSpace(value)) {
+            return null;
+        }
+        final String trimmed = value.trim();
+        if (AUTO.equalsIgnoreCase(trimmed)) {
+            return select(RuntimeSelector.loadProperties(benchmarkFile), getEnvironment(platform.getSwtRuntimeJar()), platform);
+        }
+        final BrowserEngine result = parse(trimmed);
+        if (result == null) {
+            logger.log(Level.WARNING, "Ignoring unknown SWT browser engine ''{0}''", trimmed);
+        }
+        else if (!result.isAvailable(platform)) {
+            logger.log(Level.WARNING, "The SWT browser engine {0} isn''t available on {1}; using the default one instead", new Object[]{result, platform.getOsName()});
+            return DEFAULT;
+        }
+        return result;
+    }
+
+    static BrowserEngine parse(final String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+        catch (final IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies the SWT runtime the benchmarks apply to, including when it was last modified,
+     * so that upgrading it starts the benchmarks over.
+     *
+     * @param swtRuntimeJar the SWT runtime JAR the browser process will use
+     * @return the environment, suitable as a key in the benchmark file
+     */
+    static String getEnvironment(final File swtRuntimeJar) {
+        if (swtRuntimeJar == null) {
+            return "none";
+        }
+        return swtRuntimeJar.getAbsolutePath() + "|" + swtRuntimeJar.lastModified();
+    }
+
+    /**
+     * Picks the first engine available on the platform that hasn't been benchmarked yet, if any,
+     * otherwise the one that started the fastest.  Engines that failed to start are never picked again.
+     *
+     * @param benchmarks  the start-up times recorded so far
+     * @param environment the SWT runtime the browser process will use, from {@link #getEnvironment(File)}
+     * @param platform    the facts about the platform the browser process will run on
+     * @return the engine to use
+     */
+    static BrowserEngine select(final Properties benchmarks, final String environment, final PlatformInfo platform) {
+        BrowserEngine fastest = DEFAULT;
+        long fastestMillis = Long.MAX_VALUE;
+        for (final BrowserEngine engine : values()) {
+            if (!engine.isAvailable(platform)) {
+                continue;
+            }
+            final String benchmark = benchmarks.getProperty(getBenchmarkKey(environment, engine));
+            if (benchmark == null) {
+                return engine;
+            }
+            final long startupMillis = parseStartupMillis(benchmark);
+            if (startupMillis < fastestMillis) {
+                fastestMillis = startupMillis;
+                fastest = engine;
+            }
+        }
+        return fastest;
+    }
+
+    static long parseStartupMillis(final String benchmark) {
+        try {
+            return Long.parseLong(benchmark);
+        }
+        catch (final NumberFormatException ignored) {
+            // including FAILED
+            return Long.MAX_VALUE;
+        }
+    }
+
+    static String getBenchmarkKey(final String environment, final BrowserEngine engine) {
+        return environment + "." + engine.name();
+    }
+
+    /**
+     * Remembers how long the browser process took to create its browser with this engine.
+     * Meant to be called by the browser process.
+     *
+     * @param benchmarkFile where the start-up times of the engines are recorded
+     * @param environment   the environment the engine was selected for
+     * @param startupMillis how long it took for the browser to be created, in milliseconds;
+     *                      a negative value if the engine couldn't be used
+     */
+    void recordStartup(final File benchmarkFile, final String environment, final long startupMillis) {
+        final Properties benchmarks = RuntimeSelector.loadProperties(benchmarkFile);
+        benchmarks.setProperty(getBenchmarkKey(environment, this), startupMillis < 0 ? FAILED : Long.toString(startupMillis));
+        RuntimeSelector.saveProperties(benchmarkFile, benchmarks, "SWT browser start-up times by engine, in milliseconds");
+    }
+}
@@ -0,0 +1,701 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.ResponseCache;
+import java.net.SecureCacheResponse;
+import java.net.URI;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * A {@link ResponseCache} that keeps cacheable HTTP(S) responses on disk, so that the
+ * static resources of login pages can be shared by all the child processes.
+ * Only fresh responses are served, as per their {@code Cache-Control: max-age} or
+ * {@code Expires} header; responses that are private, set cookies or vary on everything
+ * are never stored and requests with credentials are never served from the cache.
+ * Since a {@link URLConnection} won't reveal all of its request headers once connected,
+ * the request headers are taken from the {@link #get(URI, String, Map)} call that
+ * {@link HttpURLConnection} makes (in the same thread) before sending the request, and
+ * a response is only stored if that call was seen.
+ * The least-recently-used entries are evicted once the total size exceeds the limit, and
+ * temporary files left behind by interrupted downloads are deleted once they are stale.
+ */
+class DiskResponseCache extends ResponseCache {
+
+    static final String HTTP_CACHE_PROPERTY_NAME = "userAgentHttpCache";
+    static final String HTTP_CACHE_DIRECTORY_PROPERTY_NAME = "userAgentHttpCacheDirectory";
+    static final String HTTP_CACHE_MAXIMUM_MEGABYTES_PROPERTY_NAME = "userAgentHttpCacheMaximumMegabytes";
+    static final Set<String> PROPERTY_NAMES = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            HTTP_CACHE_PROPERTY_NAME,
+            HTTP_CACHE_DIRECTORY_PROPERTY_NAME,
+            HTTP_CACHE_MAXIMUM_MEGABYTES_PROPERTY_NAME
+    )));
+    static final int DEFAULT_MAXIMUM_MEGABYTES = 50;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    static final long STALE_TEMPORARY_MILLISECONDS = 60L * 60L * 1000L;
+    private static final String UTF_8 = "UTF-8";
+
+    private static final Comparator<File> LEAST_RECENTLY_USED_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(final File left, final File right) {
+            final long leftModified = left.lastModified();
+            final long rightModified = right.lastModified();
+            return leftModified < rightModified ? -1 : (leftModified == rightModified ? 0 : 1);
+        }
+    };
+
+    private final File root;
+    private final long maximumBytes;
+    private final ThreadLocal<PendingRequest> pendingRequest = new ThreadLocal<PendingRequest>();
+
+    static class PendingRequest {
+        final URI uri;
+        final Map<String, List<String>> requestHeaders;
+
+        PendingRequest(final URI uri, final Map<String, List<String>> requestHeaders) {
+            this.uri = uri;
+            this.requestHeaders = requestHeaders;
+        }
+    }
+
+    DiskResponseCache(final File root, final long maximumBytes) {
+        if (root == null)
+            throw new IllegalArgumentException("The 'root' argument is null.");
+
+        this.root = root;
+        this.maximumBytes = maximumBytes;
+    }
+
+    /**
+     * Installs a DiskResponseCache as the default {@link ResponseCache} if the
+     * {@code userAgentHttpCache} system property is {@code true}.
+     * Meant to be called by a provider in its child process, before any connection is made.
+     */
+    static void installFromSystemProperties() {
+        final DiskResponseCache cache = fromProperties(System.getProperties());
+        if (cache != null) {
+            ResponseCache.setDefault(cache);
+        }
+    }
+
+    static DiskResponseCache fromProperties(final Properties properties) {
+        if (!Boolean.parseBoolean(properties.getProperty(HTTP_CACHE_PROPERTY_NAME))) {
+            return null;
+        }
+        final String directory = properties.getProperty(HTTP_CACHE_DIRECTORY_PROPERTY_NAME);
+        final File root = StringHelper.isNullOrWhiteSpace(directory)
+                ? new File(Provider.USER_AGENT_HOME, "cache")
+                : new File(directory);
+        int megabytes = DEFAULT_MAXIMUM_MEGABYTES;
+        final String value = properties.getProperty(HTTP_CACHE_MAXIMUM_MEGABYTES_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(value)) {
+            try {
+                megabytes = Integer.parseInt(value.trim());
+            }
+            catch (final NumberFormatException ignored) {
+            }
+        }
+        return new DiskResponseCache(root, megabytes * 1024L * 1024L);
+    }
+
+    @Override
+    public CacheResponse get(final URI uri, final String requestMethod, final Map<String, List<String>> requestHeaders)
+            throws IOException {
+        // remembered so that put() can check the headers of the request its response answers
+        pendingRequest.set(new PendingRequest(uri, requestHeaders));
+        if (!"GET".equals(requestMethod) || hasCredentials(requestHeaders) || forbidsCachedResponse(requestHeaders)) {
+            return null;
+        }
+        final File file = new File(root, toKey(uri) + ENTRY_SUFFIX);
+        final InputStream stream;
+        try {
+            stream = new BufferedInputStream(new FileInputStream(file));
+        }
+        catch (final FileNotFoundException ignored) {
+            return null;
+        }
+        boolean handedOff = false;
+        try {
+            final DataInputStream input = new DataInputStream(stream);
+            final Entry entry = Entry.read(input);
+            if (entry == null
+                    || !uri.toString().equals(entry.uri)
+                    || entry.expiresAt <= System.currentTimeMillis()
+                    || !entry.matchesVary(requestHeaders)) {
+                return null;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            handedOff = true;
+            return entry.toCacheResponse(stream);
+        }
+        catch (final IOException ignored) {
+            // a truncated or otherwise corrupt entry is a cache miss
+            return null;
+        }
+        finally {
+            if (!handedOff) {
+                stream.close();
+            }
+        }
+    }
+
+    @Override
+    public CacheRequest put(final URI uri, final URLConnection connection) throws IOException {
+        if (!(connection instanceof HttpURLConnection)) {
+            return null;
+        }
+        final HttpURLConnection httpConnection = (HttpURLConnection) connection;
+        if (!"GET".equals(httpConnection.getRequestMethod()) || httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            return null;
+        }
+        final PendingRequest request = pendingRequest.get();
+        pendingRequest.remove();
+        if (request == null || !uri.equals(request.uri)) {
+            // the request's headers can't be inspected, so neither its credentials nor what the response varies on
+            return null;
+        }
+        if (hasCredentials(request.requestHeaders) || getRequestProperty(connection, "Authorization") != null
+                || connection.getHeaderField("Set-Cookie") != null) {
+            return null;
+        }
+        final long expiresAt = determineExpiration(connection, System.currentTimeMillis());
+        if (expiresAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        final Entry entry = Entry.fromConnection(uri, connection, request.requestHeaders, expiresAt);
+        if (entry == null) {
+            return null;
+        }
+        if (!root.isDirectory() && !root.mkdirs()) {
+            return null;
+        }
+        final String key = toKey(uri);
+        final File temp = File.createTempFile(key, TEMPORARY_SUFFIX, root);
+        final DataOutputStream output;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        }
+        catch (final IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw e;
+        }
+        try {
+            entry.write(output);
+        }
+        catch (final IOException e) {
+            output.close();
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            // i.e. a header too long for writeUTF(); don't cache it
+            return null;
+        }
+        return new DiskCacheRequest(output, temp, new File(root, key + ENTRY_SUFFIX), maximumBytes / 4);
+    }
+
+    private class DiskCacheRequest extends CacheRequest {
+        private final DataOutputStream output;
+        private final File temp;
+        private final File destination;
+        private final long maximumBodyBytes;
+        private long bodyBytes = 0;
+        private boolean done = false;
+
+        DiskCacheRequest(final DataOutputStream output, final File temp, final File destination, final long maximumBodyBytes) {
+            this.output = output;
+            this.temp = temp;
+            this.destination = destination;
+            this.maximumBodyBytes = maximumBodyBytes;
+        }
+
+        @Override
+        public OutputStream getBody() throws IOException {
+            return new FilterOutputStream(output) {
+                @Override
+                public void write(final int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    if (done) {
+                        return;
+                    }
+                    bodyBytes += len;
+                    if (bodyBytes > maximumBodyBytes) {
+                        abort();
+                        return;
+                    }
+                    output.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    commit();
+                }
+            };
+        }
+
+        @Override
+        public synchronized void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                output.close();
+            }
+            catch (final IOException ignored) {
+            }
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+
+        synchronized void commit() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            output.close();
+            // File.renameTo() won't replace an existing file on Windows
+            //noinspection ResultOfMethodCallIgnored
+            destination.delete();
+            if (!temp.renameTo(destination)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                return;
+            }
+            evict(destination);
+        }
+    }
+
+    void evict(final File keep) {
+        final File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        final List<File> entries = new ArrayList<File>();
+        long totalBytes = 0;
+        final long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_MILLISECONDS;
+        for (final File child : children) {
+            final String name = child.getName();
+            if (name.endsWith(ENTRY_SUFFIX)) {
+                entries.add(child);
+                totalBytes += child.length();
+            }
+            else if (name.endsWith(TEMPORARY_SUFFIX)) {
+                // left behind by a process that died while downloading, unless still being written to
+                final long temporaryBytes = child.length();
+                if (child.lastModified() >= staleBefore || !child.delete()) {
+                    totalBytes += temporaryBytes;
+                }
+            }
+        }
+        if (totalBytes <= maximumBytes) {
+            return;
+        }
+        Collections.sort(entries, LEAST_RECENTLY_USED_FIRST);
+        for (final File entry : entries) {
+            if (totalBytes <= maximumBytes) {
+                break;
+            }
+            if (entry.equals(keep)) {
+                continue;
+            }
+            final long entryBytes = entry.length();
+            if (entry.delete()) {
+                totalBytes -= entryBytes;
+            }
+        }
+    }
+
+    static String getRequestProperty(final URLConnection connection, final String key) {
+        try {
+            return connection.getRequestProperty(key);
+        }
+        catch (final IllegalStateException ignored) {
+            // some implementations refuse once connected
+            return null;
+        }
+    }
+
+    static boolean hasCredentials(final Map<String, List<String>> requestHeaders) {
+        return findHeader(requestHeaders, "Authorization") != null;
+    }
+
+    static boolean forbidsCachedResponse(final Map<String, List<String>> requestHeaders) {
+        final String cacheControl = findHeader(requestHeaders, "Cache-Control");
+        final String pragma = findHeader(requestHeaders, "Pragma");
+        return parseCacheControl(cacheControl).containsKey("no-cache")
+                || parseCacheControl(pragma).containsKey("no-cache");
+    }
+
+    static String findHeader(final Map<String, List<String>> headers, final String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                final List<String> values = header.getValue();
+                return values == null ? null : StringHelper.join(",", values.toArray(new String[values.size()]));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the directives of a {@code Cache-Control} header.
+     *
+     * @param value the value of the header; can be {@code null}
+     * @return a map of the lower-case directive names to their (unquoted) value, if any
+     */
+    static Map<String, String> parseCacheControl(final String value) {
+        final Map<String, String> result = new LinkedHashMap<String, String>();
+        if (value == null) {
+            return result;
+        }
+        for (final String part : value.split(",")) {
+            final String directive = part.trim();
+            if (directive.length() == 0) {
+                continue;
+            }
+            final int equals = directive.indexOf('=');
+            if (equals == -1) {
+                result.put(directive.toLowerCase(Locale.ENGLISH), null);
+            }
+            else {
+                String argument = directive.substring(equals + 1).trim();
+                if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+                result.put(directive.substring(0, equals).trim().toLowerCase(Locale.ENGLISH), argument);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines until when the response can be served from the cache.
+     *
+     * @param connection the connection, after its response was received
+     * @param now        the current time, in milliseconds since the epoch
+     * @return the time after which the response is stale; {@code 0} if it mustn't be stored
+     */
+    static long determineExpiration(final URLConnection connection, final long now) {
+        final Map<String, String> cacheControl = parseCacheControl(connection.getHeaderField("Cache-Control"));
+        // requests' credentials can't always be seen here, so leave "private" responses alone
+        if (cacheControl.containsKey("no-store") || cacheControl.containsKey("no-cache") || cacheControl.containsKey("private")) {
+            return 0;
+        }
+        if (parseCacheControl(connection.getHeaderField("Pragma")).containsKey("no-cache")) {
+            return 0;
+        }
+        if ("*".equals(connection.getHeaderField("Vary"))) {
+            return 0;
+        }
+        final String maxAge = cacheControl.get("max-age");
+        if (maxAge != null) {
+            try {
+                return now + Long.parseLong(maxAge) * 1000L;
+            }
+            catch (final NumberFormatException ignored) {
+                return 0;
+            }
+        }
+        final long expiration = connection.getExpiration();
+        if (expiration == 0) {
+            // no heuristic freshness: if the server didn't say, don't assume
+            return 0;
+        }
+        final long date = connection.getDate();
+        // compensate for any difference between the server's clock and ours
+        return date == 0 ? expiration : now + (expiration - date);
+    }
+
+    static String toKey(final URI uri) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final byte[] hash = digest.digest(uri.toString().getBytes(UTF_8));
+            final StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+        catch (final UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    static class Entry {
+        final String uri;
+        final long expiresAt;
+        final Map<String, String> varyHeaders;
+        final Map<String, List<String>> headers;
+        final String cipherSuite;
+        final Certificate[] localCertificates;
+        final Certificate[] serverCertificates;
+
+        Entry(final String uri, final long expiresAt, final Map<String, String> varyHeaders, final Map<String, List<String>> headers, final String cipherSuite, final Certificate[] localCertificates, final Certificate[] serverCertificates) {
+            this.uri = uri;
+            this.expiresAt = expiresAt;
+            this.varyHeaders = varyHeaders;
+            this.headers = headers;
+            this.cipherSuite = cipherSuite;
+            this.localCertificates = localCertificates;
+            this.serverCertificates = serverCertificates;
+        }
+
+        static Entry fromConnection(final URI uri, final URLConnection connection, final Map<String, List<String>> requestHeaders, final long expiresAt) {
+            final Map<String, String> varyHeaders = new LinkedHashMap<String, String>();
+            final String vary = connection.getHeaderField("Vary");
+            if (vary != null) {
+                for (final String name : vary.split(",")) {
+                    final String trimmed = name.trim();
+                    if (trimmed.length() > 0) {
+                        final String requestValue = findHeader(requestHeaders, trimmed);
+                        varyHeaders.put(trimmed, requestValue == null ? "" : requestValue);
+                    }
+                }
+            }
+            String cipherSuite = null;
+            Certificate[] localCertificates = null;
+            Certificate[] serverCertificates = null;
+            if (connection instanceof HttpsURLConnection) {
+                final HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+                try {
+                    cipherSuite = httpsConnection.getCipherSuite();
+                    localCertificates = httpsConnection.getLocalCertificates();
+                    serverCertificates = httpsConnection.getServerCertificates();
+                }
+                catch (final SSLPeerUnverifiedException e) {
+                    return null;
+                }
+                catch (final IllegalStateException e) {
+                    return null;
+                }
+            }
+            return new Entry(uri.toString(), expiresAt, varyHeaders, connection.getHeaderFields(),
+                    cipherSuite, localCertificates, serverCertificates);
+        }
+
+        boolean matchesVary(final Map<String, List<String>> requestHeaders) {
+            for (final Map.Entry<String, String> varyHeader : varyHeaders.entrySet()) {
+                final String requestValue = findHeader(requestHeaders, varyHeader.getKey());
+                if (!varyHeader.getValue().equals(requestValue == null ? "" : requestValue)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void write(final DataOutputStream output) throws IOException {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(uri);
+            output.writeLong(expiresAt);
+            output.writeInt(varyHeaders.size());
+            for (final Map.Entry<String, String> varyHeader : varyHeaders.entrySet()) {
+                output.writeUTF(varyHeader.getKey());
+                output.writeUTF(varyHeader.getValue());
+            }
+            output.writeInt(headers.size());
+            for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+                // the status line is stored under the null key
+                output.writeBoolean(header.getKey() != null);
+                if (header.getKey() != null) {
+                    output.writeUTF(header.getKey());
+                }
+                output.writeInt(header.getValue().size());
+                for (final String value : header.getValue()) {
+                    output.writeUTF(value);
+                }
+            }
+            output.writeBoolean(cipherSuite != null);
+            if (cipherSuite != null) {
+                output.writeUTF(cipherSuite);
+                writeCertificates(output, localCertificates);
+                writeCertificates(output, serverCertificates);
+            }
+        }
+
+        static Entry read(final DataInputStream input) throws IOException {
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            final String uri = input.readUTF();
+            final long expiresAt = input.readLong();
+            final int varyCount = input.readInt();
+            final Map<String, String> varyHeaders = new LinkedHashMap<String, String>();
+            for (int i = 0; i < varyCount; i++) {
+                varyHeaders.put(input.readUTF(), input.readUTF());
+            }
+            final int headerCount = input.readInt();
+            final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+            for (int i = 0; i < headerCount; i++) {
+                final String key = input.readBoolean() ? input.readUTF() : null;
+                final int valueCount = input.readInt();
+                final List<String> values = new ArrayList<String>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(input.readUTF());
+                }
+                headers.put(key, Collections.unmodifiableList(values));
+            }
+            String cipherSuite = null;
+            Certificate[] localCertificates = null;
+            Certificate[] serverCertificates = null;
+            if (input.readBoolean()) {
+                cipherSuite = input.readUTF();
+                localCertificates = readCertificates(input);
+                serverCertificates = readCertificates(input);
+            }
+            return new Entry(uri, expiresAt, varyHeaders, Collections.unmodifiableMap(headers),
+                    cipherSuite, localCertificates, serverCertificates);
+        }
+
+        static void writeCertificates(final DataOutputStream output, final Certificate[] certificates) throws IOException {
+            if (certificates == null) {
+                output.writeInt(-1);
+                return;
+            }
+            output.writeInt(certificates.length);
+            for (final Certificate certificate : certificates) {
+                try {
+                    final byte[] encoded = certificate.getEncoded();
+                    output.writeInt(encoded.length);
+                    output.write(encoded);
+                }
+                catch (final CertificateEncodingException e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+        }
+
+        static Certificate[] readCertificates(final DataInputStream input) throws IOException {
+            final int count = input.readInt();
+            if (count == -1) {
+                return null;
+            }
+            final Certificate[] result = new Certificate[count];
+            try {
+                final CertificateFactory factory = CertificateFactory.getInstance("X.509");
+                for (int i = 0; i < count; i++) {
+                    final byte[] encoded = new byte[input.readInt()];
+                    input.readFully(encoded);
+                    result[i] = factory.generateCertificate(new ByteArrayInputStream(encoded));
+                }
+            }
+            catch (final CertificateException e) {
+                throw new IOException(e.getMessage());
+            }
+            return result;
+        }
+
+        CacheResponse toCacheResponse(final InputStream body) {
+            if (cipherSuite == null) {
+                return new CacheResponse() {
+                    @Override
+                    public Map<String, List<String>> getHeaders() {
+                        return headers;
+                    }
+
+                    @Override
+                    public InputStream getBody() {
+                        return body;
+                    }
+                };
+            }
+            return new SecureCacheResponse() {
+                @Override
+                public Map<String, List<String>> getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public InputStream getBody() {
+                    return body;
+                }
+
+                @Override
+                public String getCipherSuite() {
+                    return cipherSuite;
+                }
+
+                @Override
+                public List<Certificate> getLocalCertificateChain() {
+                    return localCertificates == null ? null : Arrays.asList(localCertificates);
+                }
+
+                @Override
+                public List<Certificate> getServerCertificateChain() throws SSLPeerUnverifiedException {
+                    if (serverCertificates == null || serverCertificates.length == 0) {
+                        throw new SSLPeerUnverifiedException("No server certificates were cached.");
+                    }
+                    return Arrays.asList(serverCertificates);
+                }
+
+                @Override
+                public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+                    final List<Certificate> chain = getServerCertificateChain();
+                    return ((X509Certificate) chain.get(0)).getSubjectX500Principal();
+                }
+
+                @Override
+                public Principal getLocalPrincipal() {
+                    if (localCertificates == null || localCertificates.length == 0) {
+                        return null;
+                    }
+                    return ((X509Certificate) localCertificates[0]).getSubjectX500Principal();
+                }
+            };
+        }
+    }
+}
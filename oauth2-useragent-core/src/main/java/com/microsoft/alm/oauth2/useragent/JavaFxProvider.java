@@ -17,28 +17,49 @@ class JavaFxProvider extends Provider {
         "A desktop environment.",
         "Oracle Java SE 7 is not supported on Mac OS X 10.11 and greater.  Please upgrade to Java 8."
     ));
-    private final File[] potentialJavaFxJarLocations = new File[]{
-        new File(JAVA_HOME, "lib/jfxrt.jar"),
-        new File(JAVA_HOME, "lib/ext/jfxrt.jar"),
-    };
 
     protected JavaFxProvider() {
         super("JavaFx");
     }
 
+    static File[] getPotentialJavaFxJarLocations(final String javaHome) {
+        return new File[]{
+            new File(javaHome, "lib/jfxrt.jar"),
+            new File(javaHome, "lib/ext/jfxrt.jar"),
+        };
+    }
+
+    static File findJavaFxJar(final File[] potentialJavaFxJarLocations) {
+        for (final File potentialJavaFxJar : potentialJavaFxJarLocations) {
+            if (potentialJavaFxJar.isFile()) {
+                return potentialJavaFxJar;
+            }
+        }
+        return null;
+    }
+
     @Override public List<String> checkRequirements() {
+        return checkRequirements(PlatformInfo.getCurrent());
+    }
 
-        return checkRequirements(JAVA_RUNTIME_VERSION, potentialJavaFxJarLocations, OS_NAME, OS_VERSION, ENV_DISPLAY);
+    @Override public List<String> checkRequirements(final PlatformInfo platform) {
+        return checkRequirements(platform.getJavaVersion(), platform.getJavaFxJar(), platform.isMac(), platform.getOsVersion(), platform.hasDesktop());
     }
 
     static ArrayList<String> checkRequirements(final String javaRuntimeVersionString, final File[] potentialJavaFxJarLocations, final String osName, final String osVersionString, final String displayVariable) {
-        final ArrayList<String> requirements = new ArrayList<String>();
         final Version javaVersion = Version.parseJavaRuntimeVersion(javaRuntimeVersionString);
+        final File javaFxJar = findJavaFxJar(potentialJavaFxJarLocations);
+        final Version osVersion = PlatformInfo.parseOrNull(osVersionString, false);
+        return checkRequirements(javaVersion, javaFxJar, isMac(osName), osVersion, hasDesktop(osName, displayVariable));
+    }
+
+    static ArrayList<String> checkRequirements(final Version javaVersion, final File javaFxJar, final boolean isMac, final Version osVersion, final boolean hasDesktop) {
+        final ArrayList<String> requirements = new ArrayList<String>();
         boolean hasSupportedJava = false;
         // TODO: what about 1.9 or 2.x?
-        final int javaMajorVersion = javaVersion.getMajor();
-        final int javaMinorVersion = javaVersion.getMinor();
-        final int javaUpdateVersion = javaVersion.getUpdate();
+        final int javaMajorVersion = javaVersion == null ? 0 : javaVersion.getMajor();
+        final int javaMinorVersion = javaVersion == null ? 0 : javaVersion.getMinor();
+        final int javaUpdateVersion = javaVersion == null ? 0 : javaVersion.getUpdate();
         switch (javaMajorVersion) {
             case 1:
                 switch (javaMinorVersion) {
@@ -57,9 +78,8 @@ class JavaFxProvider extends Provider {
             requirements.add(REQUIREMENTS.get(0));
         }
         else {
-            if (isMac(osName)) {
-                if (javaMajorVersion == 1 && javaMinorVersion == 7) {
-                    final Version osVersion = Version.parseVersion(osVersionString);
+            if (isMac) {
+                if (javaMajorVersion == 1 && javaMinorVersion == 7 && osVersion != null) {
                     if (osVersion.getMajor() == 10)
                     {
                         if (osVersion.getMinor() >= 11)
@@ -71,18 +91,11 @@ class JavaFxProvider extends Provider {
             }
         }
 
-        boolean hasJavaFx = false;
-        for (final File potentialJavaFxJar : potentialJavaFxJarLocations) {
-            if (potentialJavaFxJar.isFile()) {
-                hasJavaFx = true;
-                break;
-            }
-        }
-        if (!hasJavaFx) {
+        if (javaFxJar == null) {
             requirements.add(REQUIREMENTS.get(1));
         }
 
-        if (!hasDesktop(osName, displayVariable)) {
+        if (!hasDesktop) {
             requirements.add(REQUIREMENTS.get(2));
         }
 
@@ -90,15 +103,19 @@ class JavaFxProvider extends Provider {
     }
 
     @Override public void augmentProcessParameters(final List<String> command, final List<String> classPath) {
-        File javaFxJar = null;
-        for (final File potentialJavaFxJar : potentialJavaFxJarLocations) {
-            if (potentialJavaFxJar.isFile()) {
-                javaFxJar = potentialJavaFxJar;
-                break;
-            }
-        }
+        augmentProcessParameters(command, classPath, PlatformInfo.getCurrent());
+    }
+
+    @Override public void augmentProcessParameters(final List<String> command, final List<String> classPath, final PlatformInfo platform) {
+        final File javaFxJar = platform.getJavaFxJar();
         if (javaFxJar != null) {
             classPath.add(javaFxJar.getAbsolutePath());
         }
+
+        final String environment = RenderingProfile.getEnvironment(platform.getJavaHome(), System.getenv());
+        final RenderingProfile renderingProfile = RenderingProfile.fromProperties(System.getProperties(), environment, RenderingProfile.PROBE_FILE);
+        if (renderingProfile != null) {
+            renderingProfile.addArguments(command, environment);
+        }
     }
 }
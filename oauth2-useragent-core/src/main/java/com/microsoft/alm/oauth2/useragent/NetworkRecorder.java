@@ -0,0 +1,271 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Records the requests made by a provider's browser, with their timings and sizes, so that a slow
+ * sign-in can be traced to the request that was slow.  The capture is sent to the parent process
+ * in the HTTP Archive (HAR) 1.2 format along with each response, if the {@code userAgentRecordNetwork}
+ * property is {@code true}.  The query of URLs that go to the redirect URI (i.e. the authorization code
+ * and state) is left out of the capture.
+ */
+class NetworkRecorder {
+
+    static final String RECORD_NETWORK_PROPERTY_NAME = "userAgentRecordNetwork";
+    static final int MAXIMUM_ENTRIES = 1000;
+    static final long UNKNOWN = -1;
+    static final String REDACTED_QUERY = "?redacted";
+
+    private static volatile NetworkRecorder installed = null;
+
+    /**
+     * A request and its response.  The durations are in nanoseconds, {@link #UNKNOWN} if they weren't measured.
+     */
+    static final class Entry {
+        final long startedMillis;
+        String method = "GET";
+        String url;
+        int status = 0;
+        String statusText = "";
+        String mimeType = "";
+        String redirectUrl = "";
+        String comment = null;
+        long dnsNanos = UNKNOWN;
+        /** Includes the TLS handshake, which can't be told apart from opening the connection. */
+        long connectNanos = UNKNOWN;
+        long waitNanos = UNKNOWN;
+        long receiveNanos = UNKNOWN;
+        long bodySize = UNKNOWN;
+
+        Entry(final long startedMillis, final String url) {
+            this.startedMillis = startedMillis;
+            this.url = url;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private int droppedCount = 0;
+    private volatile String redirectUri = null;
+
+    /**
+     * Starts recording in this process if the {@code userAgentRecordNetwork} system property is {@code true}.
+     * Meant to be called by a provider as early as possible in its child process.
+     *
+     * @return the recorder, or {@code null} if recording isn't enabled
+     */
+    static NetworkRecorder installFromSystemProperties() {
+        if (Boolean.parseBoolean(System.getProperty(RECORD_NETWORK_PROPERTY_NAME))) {
+            installed = new NetworkRecorder();
+        }
+        return installed;
+    }
+
+    static NetworkRecorder getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Sets the redirect URI of the request about to be made, so that the response it carries isn't recorded.
+     *
+     * @param redirectUri the redirect URI
+     */
+    void setRedirectUri(final String redirectUri) {
+        if (redirectUri == null)
+            throw new IllegalArgumentException("The 'redirectUri' argument is null.");
+
+        this.redirectUri = redirectUri;
+    }
+
+    void record(final Entry entry) {
+        final String currentRedirectUri = redirectUri;
+        if (currentRedirectUri != null) {
+            entry.url = redact(entry.url, currentRedirectUri);
+            entry.redirectUrl = redact(entry.redirectUrl, currentRedirectUri);
+        }
+        synchronized (lock) {
+            if (entries.size() < MAXIMUM_ENTRIES) {
+                entries.add(entry);
+            }
+            else {
+                droppedCount++;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries recorded so far, so that each response only carries the requests made for it.
+     *
+     * @return the entries, in the HAR format; {@code null} if there were none
+     */
+    String drainHar() {
+        final List<Entry> drained;
+        final int dropped;
+        synchronized (lock) {
+            if (entries.isEmpty() && droppedCount == 0) {
+                return null;
+            }
+            drained = new ArrayList<Entry>(entries);
+            dropped = droppedCount;
+            entries.clear();
+            droppedCount = 0;
+        }
+        return toHar(drained, dropped);
+    }
+
+    /**
+     * Replaces the query and fragment of a URL that goes to the redirect URI.
+     *
+     * @param url         the URL to record
+     * @param redirectUri the redirect URI of the current request
+     * @return the URL, without the response it might carry
+     */
+    static String redact(final String url, final String redirectUri) {
+        final String prefix = redirectUri.endsWith("/")
+                ? redirectUri.substring(0, redirectUri.length() - 1)
+                : redirectUri;
+        if (url == null || !url.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return url;
+        }
+        int end = url.length();
+        final int queryStart = url.indexOf('?');
+        if (queryStart != -1) {
+            end = queryStart;
+        }
+        final int fragmentStart = url.indexOf('#');
+        if (fragmentStart != -1 && fragmentStart < end) {
+            end = fragmentStart;
+        }
+        return end == url.length() ? url : url.substring(0, end) + REDACTED_QUERY;
+    }
+
+    /**
+     * Formats the entries as a HAR document on a single line.
+     */
+    static String toHar(final List<Entry> entries, final int droppedCount) {
+        final SimpleDateFormat iso8601 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        iso8601.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{\"log\":{\"version\":\"1.2\",\"creator\":{\"name\":\"oauth2-useragent\",\"version\":\"\"}");
+        if (droppedCount > 0) {
+            sb.append(",\"comment\":");
+            appendJsonString(sb, droppedCount + " more entries were not recorded.");
+        }
+        sb.append(",\"pages\":[],\"entries\":[");
+        boolean first = true;
+        for (final Entry entry : entries) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"startedDateTime\":");
+            appendJsonString(sb, iso8601.format(new Date(entry.startedMillis)));
+            sb.append(",\"time\":");
+            appendMillis(sb, sum(entry.dnsNanos, entry.connectNanos, entry.waitNanos, entry.receiveNanos));
+            sb.append(",\"request\":{\"method\":");
+            appendJsonString(sb, entry.method);
+            sb.append(",\"url\":");
+            appendJsonString(sb, entry.url);
+            sb.append(",\"httpVersion\":\"\",\"cookies\":[],\"headers\":[],\"queryString\":[],\"headersSize\":-1,\"bodySize\":-1}");
+            sb.append(",\"response\":{\"status\":").append(entry.status);
+            sb.append(",\"statusText\":");
+            appendJsonString(sb, entry.statusText);
+            sb.append(",\"httpVersion\":\"\",\"cookies\":[],\"headers\":[],\"content\":{\"size\":").append(entry.bodySize);
+            sb.append(",\"mimeType\":");
+            appendJsonString(sb, entry.mimeType);
+            sb.append("},\"redirectURL\":");
+            appendJsonString(sb, entry.redirectUrl);
+            sb.append(",\"headersSize\":-1,\"bodySize\":").append(entry.bodySize).append('}');
+            sb.append(",\"cache\":{},\"timings\":{\"blocked\":-1,\"dns\":");
+            appendMillis(sb, entry.dnsNanos);
+            sb.append(",\"connect\":");
+            appendMillis(sb, entry.connectNanos);
+            sb.append(",\"ssl\":-1,\"send\":0,\"wait\":");
+            appendMillis(sb, entry.waitNanos);
+            sb.append(",\"receive\":");
+            appendMillis(sb, entry.receiveNanos);
+            sb.append('}');
+            if (entry.comment != null) {
+                sb.append(",\"comment\":");
+                appendJsonString(sb, entry.comment);
+            }
+            sb.append('}');
+        }
+        sb.append("]}}");
+        return sb.toString();
+    }
+
+    private static long sum(final long... nanos) {
+        long result = 0;
+        for (final long value : nanos) {
+            if (value > 0) {
+                result += value;
+            }
+        }
+        return result;
+    }
+
+    static void appendMillis(final StringBuilder sb, final long nanos) {
+        if (nanos < 0) {
+            sb.append(-1);
+        }
+        else {
+            // microsecond precision is plenty
+            final long micros = nanos / 1000;
+            sb.append(micros / 1000).append('.');
+            final long fraction = micros % 1000;
+            if (fraction < 100) {
+                sb.append('0');
+            }
+            if (fraction < 10) {
+                sb.append('0');
+            }
+            sb.append(fraction);
+        }
+    }
+
+    static void appendJsonString(final StringBuilder sb, final String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        sb.append("\\u");
+                        final String hex = Integer.toHexString(c);
+                        for (int j = hex.length(); j < 4; j++) {
+                            sb.append('0');
+                        }
+                        sb.append(hex);
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
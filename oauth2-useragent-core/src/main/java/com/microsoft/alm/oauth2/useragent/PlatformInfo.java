@@ -0,0 +1,190 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.io.File;
+
+/**
+ * An immutable snapshot of the facts about the current platform that the providers need
+ * to decide whether they can run and how to launch their process,
+ * so they don't have to be derived again every time the providers are scanned.
+ */
+public class PlatformInfo {
+
+    private static volatile PlatformInfo current = null;
+
+    private final String javaRuntimeVersion;
+    private final Version javaVersion;
+    private final String javaHome;
+    private final String osName;
+    private final String osVersionString;
+    private final Version osVersion;
+    private final String osArch;
+    private final String displayVariable;
+    private final boolean isMac;
+    private final boolean isLinux;
+    private final boolean isWindows;
+    private final boolean hasDesktop;
+    private final File javaFxJar;
+    private final File swtRuntimeJar;
+
+    PlatformInfo(final String javaRuntimeVersion, final String javaHome, final String osName, final String osVersionString, final String osArch, final String displayVariable, final File javaFxJar, final File swtRuntimeJar) {
+        if (osName == null)
+            throw new IllegalArgumentException("The 'osName' argument is null.");
+
+        this.javaRuntimeVersion = javaRuntimeVersion;
+        this.javaVersion = parseOrNull(javaRuntimeVersion, true);
+        this.javaHome = javaHome;
+        this.osName = osName;
+        this.osVersionString = osVersionString;
+        this.osVersion = parseOrNull(osVersionString, false);
+        this.osArch = osArch;
+        this.displayVariable = displayVariable;
+        this.isMac = Provider.isMac(osName);
+        this.isLinux = Provider.isLinux(osName);
+        this.isWindows = Provider.isWindows(osName);
+        this.hasDesktop = Provider.hasDesktop(osName, displayVariable);
+        this.javaFxJar = javaFxJar;
+        this.swtRuntimeJar = swtRuntimeJar;
+    }
+
+    /**
+     * Returns the facts about the current platform, determining them the first time.
+     *
+     * @return the {@link PlatformInfo} most recently captured by {@link #refresh()}
+     */
+    public static PlatformInfo getCurrent() {
+        final PlatformInfo result = current;
+        if (result != null) {
+            return result;
+        }
+        return refresh();
+    }
+
+    /**
+     * Determines the facts about the current platform again, such as after a toolkit was installed
+     * or a relevant System Property was changed, and makes them the current ones.
+     *
+     * @return the new {@link PlatformInfo}
+     */
+    public static PlatformInfo refresh() {
+        final PlatformInfo result = capture();
+        current = result;
+        return result;
+    }
+
+    static PlatformInfo capture() {
+        final String javaHome = System.getProperty("java.home");
+        return new PlatformInfo(
+                System.getProperty("java.runtime.version"),
+                javaHome,
+                System.getProperty("os.name"),
+                System.getProperty("os.version"),
+                System.getProperty("os.arch"),
+                System.getenv("DISPLAY"),
+                JavaFxProvider.findJavaFxJar(JavaFxProvider.getPotentialJavaFxJarLocations(javaHome)),
+                StandardWidgetToolkitProvider.getSwtRuntimeJar(StandardWidgetToolkitProvider.DEFAULT_SWT_RUNTIME_JAR)
+        );
+    }
+
+    /**
+     * Describes the same platform, as seen from another Java runtime,
+     * which needs its own SWT runtime if its architecture is different.
+     *
+     * @param javaRuntimeVersion the {@code java.runtime.version} of the other runtime
+     * @param javaHome           the {@code java.home} of the other runtime
+     * @param osArch             the {@code os.arch} of the other runtime
+     * @return the facts about the platform for the other runtime
+     */
+    PlatformInfo forJavaRuntime(final String javaRuntimeVersion, final String javaHome, final String osArch) {
+        final File javaFxJar = JavaFxProvider.findJavaFxJar(JavaFxProvider.getPotentialJavaFxJarLocations(javaHome));
+        final String swtJarName = StandardWidgetToolkitProvider.getSwtRuntimeJarName(osArch);
+        final File swtJar = swtJarName.equals(StandardWidgetToolkitProvider.getSwtRuntimeJarName(this.osArch))
+                ? swtRuntimeJar
+                : StandardWidgetToolkitProvider.getSwtRuntimeJarForArch(osArch);
+        return new PlatformInfo(javaRuntimeVersion, javaHome, osName, osVersionString, osArch, displayVariable, javaFxJar, swtJar);
+    }
+
+    static Version parseOrNull(final String versionString, final boolean isJavaRuntimeVersion) {
+        if (versionString == null) {
+            return null;
+        }
+        try {
+            return isJavaRuntimeVersion
+                    ? Version.parseJavaRuntimeVersion(versionString)
+                    : Version.parseVersion(versionString);
+        }
+        catch (final IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    public String getJavaRuntimeVersion() {
+        return javaRuntimeVersion;
+    }
+
+    /**
+     * @return the parsed {@code java.runtime.version}, or {@code null} if it wasn't recognized
+     */
+    public Version getJavaVersion() {
+        return javaVersion;
+    }
+
+    public String getJavaHome() {
+        return javaHome;
+    }
+
+    public String getOsName() {
+        return osName;
+    }
+
+    public String getOsVersionString() {
+        return osVersionString;
+    }
+
+    /**
+     * @return the parsed {@code os.version}, or {@code null} if it wasn't recognized
+     */
+    public Version getOsVersion() {
+        return osVersion;
+    }
+
+    public String getOsArch() {
+        return osArch;
+    }
+
+    public String getDisplayVariable() {
+        return displayVariable;
+    }
+
+    public boolean isMac() {
+        return isMac;
+    }
+
+    public boolean isLinux() {
+        return isLinux;
+    }
+
+    public boolean isWindows() {
+        return isWindows;
+    }
+
+    public boolean hasDesktop() {
+        return hasDesktop;
+    }
+
+    /**
+     * @return the JavaFX runtime JAR found in the Java home, or {@code null} if there wasn't one
+     */
+    public File getJavaFxJar() {
+        return javaFxJar;
+    }
+
+    /**
+     * @return the Standard Widget Toolkit runtime JAR that was found, or {@code null} if there wasn't one
+     */
+    public File getSwtRuntimeJar() {
+        return swtRuntimeJar;
+    }
+}
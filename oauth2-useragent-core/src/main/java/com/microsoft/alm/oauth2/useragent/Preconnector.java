@@ -0,0 +1,101 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Warms up the connection to the authorization server while the browser is still starting,
+ * by resolving its host name and opening a (TLS) connection to it, which the JVM's
+ * keep-alive and TLS session caches can then offer to the browser's first request.
+ */
+class Preconnector implements Runnable {
+
+    static final String PRECONNECT_PROPERTY_NAME = "userAgentPreconnect";
+    static final String PRECONNECT_URI_PROPERTY_NAME = "userAgentPreconnectUri";
+
+    private static final int TIMEOUT_MILLISECONDS = 5000;
+
+    private final URI origin;
+
+    Preconnector(final URI origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Starts warming up the connection named by the {@code userAgentPreconnectUri}
+     * system property in the background, if it was set.
+     * Meant to be called by a provider as early as possible in its child process.
+     */
+    static void startFromSystemProperty() {
+        final String uriString = System.getProperty(PRECONNECT_URI_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(uriString)) {
+            final Thread thread = new Thread(new Preconnector(URI.create(uriString)), "oauth2-useragent-preconnect");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Determines the root of the web server that hosts the specified endpoint.
+     *
+     * @param endpoint the authorization endpoint
+     * @return the {@link URI} of the root of the server; {@code null} if the endpoint isn't HTTP(S)
+     */
+    static URI toOrigin(final URI endpoint) {
+        final String scheme = endpoint.getScheme();
+        if (!"https".equalsIgnoreCase(scheme) && !"http".equalsIgnoreCase(scheme)) {
+            return null;
+        }
+        if (endpoint.getHost() == null) {
+            return null;
+        }
+        try {
+            return new URI(scheme, null, endpoint.getHost(), endpoint.getPort(), "/", null, null);
+        }
+        catch (final URISyntaxException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            InetAddress.getAllByName(origin.getHost());
+
+            final URL url = origin.toURL();
+            // honours the proxy properties relayed to this process
+            final URLConnection urlConnection = url.openConnection();
+            urlConnection.setConnectTimeout(TIMEOUT_MILLISECONDS);
+            urlConnection.setReadTimeout(TIMEOUT_MILLISECONDS);
+            if (urlConnection instanceof HttpURLConnection) {
+                final HttpURLConnection httpConnection = (HttpURLConnection) urlConnection;
+                httpConnection.setRequestMethod("HEAD");
+                httpConnection.setInstanceFollowRedirects(false);
+                final int responseCode = httpConnection.getResponseCode();
+                // closing (rather than disconnecting) returns the connection to the keep-alive cache
+                final InputStream stream = responseCode >= 400
+                        ? httpConnection.getErrorStream()
+                        : httpConnection.getInputStream();
+                if (stream != null) {
+                    stream.close();
+                }
+            }
+        }
+        catch (final IOException ignored) {
+            // this was only an optimization; the browser will report any actual problem
+        }
+        catch (final RuntimeException ignored) {
+        }
+    }
+}
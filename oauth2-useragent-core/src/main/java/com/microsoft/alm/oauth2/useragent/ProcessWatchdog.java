@@ -0,0 +1,67 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
+
+/**
+ * Destroys a child process that is still running after a deadline, so that whoever waits for it
+ * isn't blocked forever by a process that hangs (such as in a toolkit's native code).
+ */
+class ProcessWatchdog implements Runnable {
+
+    private final TestableProcess process;
+    private final long timeoutMillis;
+    private final Thread thread;
+    private volatile boolean fired = false;
+
+    private ProcessWatchdog(final TestableProcess process, final long timeoutMillis) {
+        this.process = process;
+        this.timeoutMillis = timeoutMillis;
+        this.thread = new Thread(this);
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the process.
+     *
+     * @param process       the process to destroy if it runs for too long
+     * @param timeoutMillis how long the process may run, in milliseconds
+     * @return the watchdog, to {@link #cancel()} once the process is done
+     */
+    static ProcessWatchdog start(final TestableProcess process, final long timeoutMillis) {
+        if (process == null)
+            throw new IllegalArgumentException("The 'process' argument is null.");
+
+        final ProcessWatchdog result = new ProcessWatchdog(process, timeoutMillis);
+        result.thread.start();
+        return result;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Thread.sleep(timeoutMillis);
+        }
+        catch (final InterruptedException ignored) {
+            return;
+        }
+        fired = true;
+        process.destroy();
+    }
+
+    /**
+     * Stops watching the process, which is left alone.
+     */
+    void cancel() {
+        thread.interrupt();
+    }
+
+    /**
+     * @return {@code true} if the process was destroyed because it ran for too long
+     */
+    boolean hasFired() {
+        return fired;
+    }
+}
@@ -0,0 +1,301 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Manages the browser profiles (user data, cookies, etc.) that are kept between
+ * authorization requests, one directory per authority of the authorization endpoint,
+ * evicting the least-recently-used ones when they grow past a size limit.
+ * The child processes hold a shared lock on their profile while they use it,
+ * so that other processes never evict it from under them.  As the profiles hold
+ * single sign-on cookies, they are only readable by their owner.
+ */
+class ProfileStore {
+
+    static final String PERSISTENT_PROFILE_PROPERTY_NAME = "userAgentPersistentProfile";
+    static final String PROFILE_DIRECTORY_PROPERTY_NAME = "userAgentProfileDirectory";
+    static final String PROFILE_MAXIMUM_MEGABYTES_PROPERTY_NAME = "userAgentProfileMaximumMegabytes";
+    /**
+     * Tells the child process which profile directory to use.
+     */
+    static final String PROFILE_PATH_PROPERTY_NAME = "userAgentProfilePath";
+    static final int DEFAULT_MAXIMUM_MEGABYTES = 100;
+    static final String LOCK_FILE_NAME = ".lock";
+    /**
+     * A profile acquired this recently might not have been locked by its child process yet.
+     */
+    static final long LOCK_GRACE_MILLISECONDS = 60 * 1000;
+
+    private static final Comparator<File> LEAST_RECENTLY_USED_FIRST = new Comparator<File>() {
+        @Override
+        public int compare(final File left, final File right) {
+            final long leftModified = left.lastModified();
+            final long rightModified = right.lastModified();
+            return leftModified < rightModified ? -1 : (leftModified == rightModified ? 0 : 1);
+        }
+    };
+
+    private final File root;
+    private final long maximumBytes;
+
+    ProfileStore(final File root, final long maximumBytes) {
+        if (root == null)
+            throw new IllegalArgumentException("The 'root' argument is null.");
+        if (maximumBytes < 0)
+            throw new IllegalArgumentException("The 'maximumBytes' argument is negative.");
+
+        this.root = root;
+        this.maximumBytes = maximumBytes;
+    }
+
+    long getMaximumBytes() {
+        return maximumBytes;
+    }
+
+    /**
+     * Creates a ProfileStore if the {@code userAgentPersistentProfile} property is {@code true}.
+     *
+     * @param properties the properties to consult, usually the System Properties
+     * @return a configured {@link ProfileStore}; {@code null} if persistent profiles weren't requested
+     */
+    static ProfileStore fromProperties(final Properties properties) {
+        if (!Boolean.parseBoolean(properties.getProperty(PERSISTENT_PROFILE_PROPERTY_NAME))) {
+            return null;
+        }
+        final String directory = properties.getProperty(PROFILE_DIRECTORY_PROPERTY_NAME);
+        final File root = StringHelper.isNullOrWhiteSpace(directory)
+                ? new File(Provider.USER_AGENT_HOME, "profiles")
+                : new File(directory);
+        int megabytes = DEFAULT_MAXIMUM_MEGABYTES;
+        final String value = properties.getProperty(PROFILE_MAXIMUM_MEGABYTES_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(value)) {
+            try {
+                final int parsed = Integer.parseInt(value.trim());
+                if (parsed >= 0) {
+                    megabytes = parsed;
+                }
+            }
+            catch (final NumberFormatException ignored) {
+            }
+        }
+        return new ProfileStore(root, megabytes * 1024L * 1024L);
+    }
+
+    /**
+     * Converts the authority of the endpoint into a name that is safe to use as a directory name.
+     *
+     * @param endpoint the authorization endpoint
+     * @return the name of the profile; {@code null} if the endpoint has no host
+     */
+    static String toProfileName(final URI endpoint) {
+        final String host = endpoint.getHost();
+        if (host == null) {
+            return null;
+        }
+        final StringBuilder sb = new StringBuilder();
+        final String lowerHost = host.toLowerCase(Locale.ENGLISH);
+        for (int i = 0; i < lowerHost.length(); i++) {
+            final char c = lowerHost.charAt(i);
+            final boolean isSafe = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '-';
+            sb.append(isSafe ? c : '_');
+        }
+        if (endpoint.getPort() != -1) {
+            sb.append('_').append(endpoint.getPort());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Finds (or creates) the profile directory for the specified endpoint, marks it as the
+     * most recently used and evicts other profiles until the total size is under the limit.
+     *
+     * @param endpoint the authorization endpoint
+     * @return the profile directory; {@code null} if one couldn't be provided
+     */
+    File acquire(final URI endpoint) {
+        final String profileName = toProfileName(endpoint);
+        if (profileName == null) {
+            return null;
+        }
+        final File profile = new File(root, profileName);
+        if (!profile.isDirectory() && !profile.mkdirs()) {
+            return null;
+        }
+        restrictToOwner(root);
+        restrictToOwner(profile);
+        //noinspection ResultOfMethodCallIgnored
+        profile.setLastModified(System.currentTimeMillis());
+        evict(profile);
+        return profile;
+    }
+
+    void evict(final File keep) {
+        final File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        final List<File> profiles = new ArrayList<File>();
+        long totalBytes = 0;
+        for (final File child : children) {
+            if (child.isDirectory()) {
+                profiles.add(child);
+                totalBytes += sizeOf(child);
+            }
+        }
+        if (totalBytes <= maximumBytes) {
+            return;
+        }
+        Collections.sort(profiles, LEAST_RECENTLY_USED_FIRST);
+        final long graceCutoff = System.currentTimeMillis() - LOCK_GRACE_MILLISECONDS;
+        for (final File profile : profiles) {
+            if (totalBytes <= maximumBytes) {
+                break;
+            }
+            if (profile.equals(keep) || profile.lastModified() > graceCutoff) {
+                continue;
+            }
+            final long profileBytes = sizeOf(profile);
+            if (emptyUnlessInUse(profile)) {
+                totalBytes -= profileBytes;
+            }
+        }
+    }
+
+    /**
+     * Marks the profile as in use until the lock is released or this process exits.
+     * Several processes can use the same profile at once.
+     *
+     * @param profile the profile directory
+     * @return the lock, which must be kept reachable for as long as the profile is in use;
+     *          {@code null} if it couldn't be obtained
+     */
+    static FileLock lockInUse(final File profile) {
+        try {
+            final RandomAccessFile lockFile = new RandomAccessFile(new File(profile, LOCK_FILE_NAME), "rw");
+            try {
+                return lockFile.getChannel().lock(0, Long.MAX_VALUE, true);
+            }
+            catch (final IOException e) {
+                lockFile.close();
+                throw e;
+            }
+            catch (final OverlappingFileLockException ignored) {
+                // this very process is already using the profile
+                lockFile.close();
+                return null;
+            }
+        }
+        catch (final IOException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the contents of the profile while holding its lock exclusively, unless a process is using it.
+     * The lock file (and thus the directory) is kept, as another process could be about to lock it:
+     * deleting it would leave that process holding a lock on a file nobody else can see.
+     *
+     * @param profile the profile directory
+     * @return {@code true} if the profile was emptied
+     */
+    static boolean emptyUnlessInUse(final File profile) {
+        final File lockFile = new File(profile, LOCK_FILE_NAME);
+        try {
+            final RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+            try {
+                final FileLock lock = file.getChannel().tryLock();
+                if (lock == null) {
+                    return false;
+                }
+                try {
+                    final File[] children = profile.listFiles();
+                    if (children != null) {
+                        for (final File child : children) {
+                            if (!child.equals(lockFile)) {
+                                delete(child);
+                            }
+                        }
+                    }
+                }
+                finally {
+                    lock.release();
+                }
+            }
+            finally {
+                file.close();
+            }
+        }
+        catch (final IOException ignored) {
+            return false;
+        }
+        catch (final OverlappingFileLockException ignored) {
+            // this very process is using the profile
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes the file or directory only readable, writable and (for a directory) searchable by its owner,
+     * as far as the platform supports it.
+     *
+     * @param file the file or directory to restrict
+     */
+    static void restrictToOwner(final File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.setReadable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        file.setReadable(true, true);
+        //noinspection ResultOfMethodCallIgnored
+        file.setWritable(false, false);
+        //noinspection ResultOfMethodCallIgnored
+        file.setWritable(true, true);
+        //noinspection ResultOfMethodCallIgnored
+        file.setExecutable(false, false);
+        if (file.isDirectory()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setExecutable(true, true);
+        }
+    }
+
+    static long sizeOf(final File file) {
+        if (!file.isDirectory()) {
+            return file.length();
+        }
+        long result = 0;
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                result += sizeOf(child);
+            }
+        }
+        return result;
+    }
+
+    static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
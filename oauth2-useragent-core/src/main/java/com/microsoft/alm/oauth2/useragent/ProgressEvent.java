@@ -0,0 +1,109 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
+
+/**
+ * Something that happened in the child process while it was handling an authorization request,
+ * reported as it happened so that callers can show their own progress or notice a stalled page.
+ */
+public class ProgressEvent {
+
+    public enum Type {
+        /** The provider's toolkit has started and its browser can be created. */
+        TOOLKIT_READY,
+        /** The provider's window is now visible; {@code userAgentSilentBudgetMilliseconds} can delay this. */
+        WINDOW_SHOWN,
+        /** The browser was asked to load the authorization endpoint, which is the detail. */
+        NAVIGATION_STARTED,
+        /** The browser's location changed to the detail. */
+        LOCATION_CHANGED,
+        /** The browser finished loading the page at the detail. */
+        PAGE_LOADED,
+        /** The browser was sent to the redirect URI, which is the detail. */
+        REDIRECT_MATCHED,
+        /** A request for the detail was not sent because of the {@code userAgentRequestFilter} rules. */
+        REQUEST_BLOCKED
+    }
+
+    private final Type type;
+    private final long timeMillis;
+    private final String detail;
+
+    public ProgressEvent(final Type type, final long timeMillis, final String detail) {
+        if (type == null)
+            throw new IllegalArgumentException("The 'type' argument is null.");
+
+        this.type = type;
+        this.timeMillis = timeMillis;
+        this.detail = detail;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return when the event happened in the child process, in milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * @return the URI the event is about, or {@code null} if the event isn't about a URI
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(type.name()).append(' ').append(timeMillis);
+        if (detail != null) {
+            sb.append(' ');
+            PercentEncoder.FORM.encode(detail, sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses the output of {@link #toString()}.
+     *
+     * @param s the string to parse
+     * @return the event; {@code null} if the string isn't an event this version knows about
+     */
+    public static ProgressEvent fromString(final String s) {
+        if (s == null) {
+            return null;
+        }
+        final int typeEnd = s.indexOf(' ');
+        if (typeEnd == -1) {
+            return null;
+        }
+        final Type type;
+        try {
+            type = Type.valueOf(s.substring(0, typeEnd));
+        }
+        catch (final IllegalArgumentException ignored) {
+            // an event added by a newer child process
+            return null;
+        }
+        final int timeEnd = s.indexOf(' ', typeEnd + 1);
+        final String timeString = timeEnd == -1 ? s.substring(typeEnd + 1) : s.substring(typeEnd + 1, timeEnd);
+        final long timeMillis;
+        String detail = null;
+        try {
+            timeMillis = Long.parseLong(timeString);
+            if (timeEnd != -1) {
+                detail = PercentEncoder.FORM.decode(s.substring(timeEnd + 1));
+            }
+        }
+        catch (final IllegalArgumentException ignored) {
+            return null;
+        }
+        return new ProgressEvent(type, timeMillis, detail);
+    }
+}
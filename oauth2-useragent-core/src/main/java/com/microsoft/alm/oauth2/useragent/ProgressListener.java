@@ -0,0 +1,19 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+/**
+ * Receives the {@link ProgressEvent}s of the child processes started by a {@link UserAgentImpl}.
+ */
+public interface ProgressListener {
+
+    /**
+     * Called from the thread consuming the child process's stdout stream, once for every event, in order.
+     * Implementations should return quickly, as the child process could block while its output
+     * is not being consumed.
+     *
+     * @param event the event that was reported
+     */
+    void progressReported(final ProgressEvent event);
+}
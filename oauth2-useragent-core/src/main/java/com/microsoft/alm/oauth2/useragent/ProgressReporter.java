@@ -0,0 +1,58 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends the {@link ProgressEvent}s of a provider to the parent process, over the same stream as the responses.
+ * Events reported before {@link UserAgentImpl#decode} attaches the stream, such as the toolkit starting,
+ * are held until it does, up to a limit.
+ */
+class ProgressReporter {
+
+    static final int MAXIMUM_PENDING_EVENTS = 100;
+
+    private static final Object LOCK = new Object();
+    private static final List<ProgressEvent> pendingEvents = new ArrayList<ProgressEvent>();
+    private static PrintStream output = null;
+
+    static void report(final ProgressEvent.Type type, final String detail) {
+        final ProgressEvent event = new ProgressEvent(type, System.currentTimeMillis(), detail);
+        synchronized (LOCK) {
+            if (output == null) {
+                if (pendingEvents.size() < MAXIMUM_PENDING_EVENTS) {
+                    pendingEvents.add(event);
+                }
+            }
+            else {
+                write(output, event);
+            }
+        }
+    }
+
+    static void attach(final PrintStream printStream) {
+        synchronized (LOCK) {
+            output = printStream;
+            for (final ProgressEvent event : pendingEvents) {
+                write(printStream, event);
+            }
+            pendingEvents.clear();
+        }
+    }
+
+    static void detach() {
+        synchronized (LOCK) {
+            output = null;
+        }
+    }
+
+    private static void write(final PrintStream printStream, final ProgressEvent event) {
+        // println() holds the stream's lock, so an event can't end up in the middle of a response
+        printStream.println(UserAgentImpl.EVENT_PREFIX + event.toString());
+        printStream.flush();
+    }
+}
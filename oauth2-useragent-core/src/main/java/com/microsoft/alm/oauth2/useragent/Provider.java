@@ -3,6 +3,7 @@
 
 package com.microsoft.alm.oauth2.useragent;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -13,6 +14,10 @@ public abstract class Provider {
     static final String JAVA_VM_NAME = System.getProperty("java.vm.name");
     static final String JAVA_HOME = System.getProperty("java.home");
     static final String USER_HOME = System.getProperty("user.home");
+    /**
+     * Where the library keeps the state that can be shared between child processes.
+     */
+    static final File USER_AGENT_HOME = new File(USER_HOME, ".oauth2-useragent");
     static final String OS_NAME = System.getProperty("os.name");
     static final String OS_VERSION = System.getProperty("os.version");
     static final String OS_ARCH = System.getProperty("os.arch");
@@ -77,8 +82,32 @@ public abstract class Provider {
 
     public abstract List<String> checkRequirements();
 
+    /**
+     * Checks the requirements against the specified snapshot of the platform.
+     * Providers that only override {@link #checkRequirements()} will determine the facts themselves.
+     *
+     * @param platform the facts about the platform
+     * @return the requirements that aren't met; an empty list if the provider can be used
+     */
+    public List<String> checkRequirements(final PlatformInfo platform) {
+        return checkRequirements();
+    }
+
     public abstract void augmentProcessParameters(final List<String> command, final List<String> classPath);
 
+    /**
+     * Adds what the provider's process needs to the command and class path,
+     * using the specified snapshot of the platform.
+     * Providers that only override {@link #augmentProcessParameters(List, List)} will determine the facts themselves.
+     *
+     * @param command   the command that will launch the process
+     * @param classPath the class path entries of the process
+     * @param platform  the facts about the platform
+     */
+    public void augmentProcessParameters(final List<String> command, final List<String> classPath, final PlatformInfo platform) {
+        augmentProcessParameters(command, classPath);
+    }
+
     /**
      * Check if there is a GUI desktop environment available for this process
      *
@@ -0,0 +1,245 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.subprocess.ProcessCoordinator;
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory;
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Confirms that a provider's toolkit can actually start, which {@link Provider#checkRequirements(PlatformInfo)}
+ * can't tell from static facts: the native libraries might be missing or the graphics driver broken,
+ * which otherwise only shows when the child process crashes seconds into a request.  If the
+ * {@code userAgentProbeProviders} property is {@code true}, the first provider that meets its requirements
+ * is started once, with its window hidden, until its browser is created; the outcome is remembered
+ * in {@code ~/.oauth2-useragent/probes.properties} for the environment, so a provider known to fail
+ * is passed over without launching anything.  Failures are probed again after a day.
+ * <p>
+ * The probe only runs when a request is about to launch the provider, synchronously in the requesting thread
+ * and without taking a slot from the {@link RequestScheduler}; queries such as
+ * {@link UserAgentImpl#getUnmetProviderRequirements()} only consult the remembered outcomes.
+ * A probe that doesn't answer in time is killed and remembered as a failure.
+ */
+class ProviderProbe {
+
+    private static final Logger logger = Logger.getLogger(ProviderProbe.class.getName());
+
+    static final String PROBE_PROVIDERS_PROPERTY_NAME = "userAgentProbeProviders";
+    /**
+     * The method name that asks a child process to only start its toolkit and create its browser.
+     */
+    static final String PROBE = "probe";
+    static final String SUCCEEDED = "browser_created";
+    static final int TIMEOUT_MILLISECONDS = 30000;
+    /**
+     * How much longer than {@link #TIMEOUT_MILLISECONDS} the parent waits for the probe, which could be stuck
+     * before it gets to enforce its own timeout, such as in the toolkit's native initialization.
+     */
+    static final int WATCHDOG_MARGIN_MILLISECONDS = 10000;
+    static final String TIMED_OUT_REASON = "The probe didn't finish in time.";
+    static final long RETRY_FAILED_MILLISECONDS = 24L * 60 * 60 * 1000;
+    static final String FAILED = "failed";
+    static final int MAXIMUM_REASON_LENGTH = 200;
+
+    private static final int STD_ERR_BUFFER_LENGTH = 16 * 1024;
+    private static final CountDownLatch BROWSER_CREATED = new CountDownLatch(1);
+
+    private final TestableProcessFactory processFactory;
+    private final File probeFile;
+    private final long watchdogMillis;
+
+    ProviderProbe(final TestableProcessFactory processFactory, final File probeFile) {
+        this(processFactory, probeFile, TIMEOUT_MILLISECONDS + WATCHDOG_MARGIN_MILLISECONDS);
+    }
+
+    ProviderProbe(final TestableProcessFactory processFactory, final File probeFile, final long watchdogMillis) {
+        if (processFactory == null)
+            throw new IllegalArgumentException("The 'processFactory' argument is null.");
+        if (probeFile == null)
+            throw new IllegalArgumentException("The 'probeFile' argument is null.");
+
+        this.processFactory = processFactory;
+        this.probeFile = probeFile;
+        this.watchdogMillis = watchdogMillis;
+    }
+
+    /**
+     * Creates a ProviderProbe if probing was requested.
+     *
+     * @param properties     the properties to consult, usually the System Properties
+     * @param processFactory how to launch the child processes
+     * @return a configured {@link ProviderProbe}; {@code null} if only the requirements should be checked
+     */
+    static ProviderProbe fromProperties(final Properties properties, final TestableProcessFactory processFactory) {
+        if (!Boolean.parseBoolean(properties.getProperty(PROBE_PROVIDERS_PROPERTY_NAME))) {
+            return null;
+        }
+        return new ProviderProbe(processFactory, new File(Provider.USER_AGENT_HOME, "probes.properties"));
+    }
+
+    /**
+     * Lets a child process started with the {@link #PROBE} method know that its browser was created.
+     * Meant to be called by the providers as soon as their browser exists.
+     */
+    static void browserCreated() {
+        BROWSER_CREATED.countDown();
+    }
+
+    /**
+     * Waits for the provider to call {@link #browserCreated()}.
+     *
+     * @return {@code true} if it did within {@link #TIMEOUT_MILLISECONDS}
+     */
+    static boolean awaitBrowserCreated() {
+        try {
+            return BROWSER_CREATED.await(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+        }
+        catch (final InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Identifies what the outcome of a probe depends on: the provider, the runtime hosting it,
+     * the operating system, the display and the toolkit JARs, including when they were last modified.
+     */
+    static String getEnvironment(final Provider provider, final PlatformInfo platform) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(provider.getClassName());
+        sb.append('|').append(platform.getJavaHome()).append('|').append(platform.getJavaRuntimeVersion());
+        sb.append('|').append(platform.getOsName()).append('|').append(platform.getOsVersionString());
+        sb.append('|').append(platform.getOsArch()).append('|').append(platform.getDisplayVariable());
+        appendStamp(sb, platform.getJavaFxJar());
+        appendStamp(sb, platform.getSwtRuntimeJar());
+        return sb.toString();
+    }
+
+    private static void appendStamp(final StringBuilder sb, final File file) {
+        sb.append('|');
+        if (file != null) {
+            sb.append(file.getAbsolutePath()).append(':').append(file.lastModified());
+        }
+    }
+
+    /**
+     * Determines whether the provider's toolkit starts in this environment, from the last probe
+     * or, if there was none (or it failed a while ago) and {@code launch} is {@code true}, by probing it now.
+     *
+     * @param provider the provider, which meets its requirements
+     * @param platform the facts about the platform that will host the provider
+     * @param launch   {@code true} to probe the provider if its outcome isn't known
+     * @return the reason the provider can't be used, if it failed; an empty list otherwise
+     */
+    List<String> check(final Provider provider, final PlatformInfo platform, final boolean launch) {
+        final String environment = getEnvironment(provider, platform);
+        String outcome = RuntimeSelector.loadProperties(probeFile).getProperty(environment);
+        if (launch && (outcome == null || isStale(outcome, System.currentTimeMillis()))) {
+            outcome = probe(provider, platform);
+            // re-read, in case another process probed something else in the meantime
+            final Properties probes = RuntimeSelector.loadProperties(probeFile);
+            probes.setProperty(environment, outcome);
+            RuntimeSelector.saveProperties(probeFile, probes, "Provider probe outcomes: start-up time in milliseconds, or failure");
+        }
+        return toUnmetRequirements(outcome);
+    }
+
+    static List<String> toUnmetRequirements(final String outcome) {
+        if (outcome == null || !outcome.startsWith(FAILED + ":")) {
+            return Collections.emptyList();
+        }
+        final int colon = outcome.indexOf(':', FAILED.length() + 1);
+        final String reason = colon == -1 ? "" : outcome.substring(colon + 1);
+        return Collections.singletonList("The toolkit failed to start when it was last probed: " + reason);
+    }
+
+    static boolean isStale(final String outcome, final long nowMillis) {
+        if (!outcome.startsWith(FAILED + ":")) {
+            return false;
+        }
+        final int colon = outcome.indexOf(':', FAILED.length() + 1);
+        try {
+            final long probedMillis = Long.parseLong(outcome.substring(FAILED.length() + 1, colon == -1 ? outcome.length() : colon));
+            return nowMillis - probedMillis >= RETRY_FAILED_MILLISECONDS;
+        }
+        catch (final NumberFormatException ignored) {
+            return true;
+        }
+    }
+
+    /**
+     * Starts the provider's child process until its browser is created, killing it if it takes too long
+     * and, in any case, once the outcome is known.
+     *
+     * @return how long that took, in milliseconds, or {@code failed:<when>:<why>}
+     */
+    String probe(final Provider provider, final PlatformInfo platform) {
+        final List<String> command = UserAgentImpl.createCommand(provider, platform, PROBE);
+        final long start = System.currentTimeMillis();
+        String reason;
+        try {
+            final TestableProcess process = processFactory.create(command.toArray(new String[command.size()]));
+            final ProcessWatchdog watchdog = ProcessWatchdog.start(process, watchdogMillis);
+            try {
+                final ProcessCoordinator coordinator = new ProcessCoordinator(process, STD_ERR_BUFFER_LENGTH, UserAgentImpl.STD_ERR_LOGGER);
+                final String response = coordinator.waitForLine(UserAgentImpl.RESPONSE_PREFIX);
+                final long elapsed = System.currentTimeMillis() - start;
+                if (SUCCEEDED.equals(response)) {
+                    logger.log(Level.FINE, "The ''{0}'' provider started in {1} ms", new Object[]{provider.getClassName(), elapsed});
+                    return Long.toString(elapsed);
+                }
+                if (response != null) {
+                    reason = response;
+                }
+                else {
+                    final int exitCode = coordinator.waitFor();
+                    reason = watchdog.hasFired() ? TIMED_OUT_REASON : findReason(coordinator.getStdErr(), exitCode);
+                }
+            }
+            finally {
+                watchdog.cancel();
+                process.destroy();
+            }
+        }
+        catch (final IOException e) {
+            reason = e.getMessage();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reason = e.getMessage();
+        }
+        logger.log(Level.FINE, "The ''{0}'' provider failed to start: {1}", new Object[]{provider.getClassName(), reason});
+        return FAILED + ":" + System.currentTimeMillis() + ":" + truncate(reason);
+    }
+
+    /**
+     * The first line of stderr is usually the exception or the toolkit's complaint.
+     */
+    static String findReason(final String stdErr, final int exitCode) {
+        for (final String line : stdErr.split("\r?\n")) {
+            if (!StringHelper.isNullOrWhiteSpace(line)) {
+                return line.trim();
+            }
+        }
+        return "The process exited with code " + exitCode + ".";
+    }
+
+    private static String truncate(final String reason) {
+        if (reason == null) {
+            return "";
+        }
+        return reason.length() > MAXIMUM_REASON_LENGTH ? reason.substring(0, MAXIMUM_REASON_LENGTH) : reason;
+    }
+}
@@ -0,0 +1,231 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How the JavaFX provider's browser process renders.  On virtual machines and remote desktops, JavaFX can
+ * spend seconds probing the graphics hardware (or failing to initialize it and falling back to software),
+ * during which the window stays white.  The {@code userAgentRenderingProfile} property names a profile,
+ * or {@code auto} to pick the one that started the fastest the last time it was used in the same environment,
+ * as recorded by the browser process itself in {@code ~/.oauth2-useragent/rendering.properties}.
+ */
+enum RenderingProfile {
+
+    /**
+     * Whatever JavaFX picks on its own.
+     */
+    HARDWARE(true),
+    /**
+     * The hardware pipeline with a smaller texture budget and without vsync,
+     * for graphics drivers that struggle with JavaFX's default allocations.
+     */
+    CAPPED_VRAM(true, "-Dprism.maxvram=64m", "-Dprism.vsync=false"),
+    /**
+     * The software pipeline, without vsync and with half as many animation pulses,
+     * for when there is no usable GPU or every frame has to cross the network.
+     */
+    SOFTWARE(false, "-Dprism.order=sw", "-Dprism.vsync=false", "-Djavafx.animation.pulse=30");
+
+    private static final Logger logger = Logger.getLogger(RenderingProfile.class.getName());
+
+    static final String RENDERING_PROFILE_PROPERTY_NAME = "userAgentRenderingProfile";
+    static final String AUTO = "auto";
+    /**
+     * Tells the browser process which profile it was started with and for which environment,
+     * so it can record how long it took to start.
+     */
+    static final String SELECTED_PROFILE_PROPERTY_NAME = "userAgentRenderingProfileSelected";
+    static final String ENVIRONMENT_PROPERTY_NAME = "userAgentRenderingEnvironment";
+    /**
+     * Asks the browser process to load the fonts in the background while the page loads,
+     * instead of when the page first needs to draw text.
+     */
+    static final String PREWARM_FONTS_PROPERTY_NAME = "userAgentPrewarmFonts";
+    /**
+     * A start-up this slow is worth trying another profile for.
+     */
+    static final long SLOW_STARTUP_MILLIS = 2000;
+    static final String FELL_BACK = "fellBack";
+    static final File PROBE_FILE = new File(Provider.USER_AGENT_HOME, "rendering.properties");
+
+    private static final List<RenderingProfile> LOCAL_PREFERENCE = Arrays.asList(HARDWARE, CAPPED_VRAM, SOFTWARE);
+    private static final List<RenderingProfile> REMOTE_PREFERENCE = Arrays.asList(SOFTWARE, CAPPED_VRAM, HARDWARE);
+
+    private final boolean usesHardware;
+    private final List<String> arguments;
+
+    RenderingProfile(final boolean usesHardware, final String... arguments) {
+        this.usesHardware = usesHardware;
+        this.arguments = Arrays.asList(arguments);
+    }
+
+    boolean usesHardware() {
+        return usesHardware;
+    }
+
+    /**
+     * Adds the JVM arguments that apply this profile to the browser process.
+     *
+     * @param command     the command line of the browser process
+     * @param environment the environment the profile was selected for
+     */
+    void addArguments(final List<String> command, final String environment) {
+        command.addAll(arguments);
+        if (this != HARDWARE) {
+            command.add("-D" + PREWARM_FONTS_PROPERTY_NAME + "=true");
+        }
+        command.add("-D" + SELECTED_PROFILE_PROPERTY_NAME + "=" + name());
+        command.add("-D" + ENVIRONMENT_PROPERTY_NAME + "=" + environment);
+    }
+
+    /**
+     * Determines the profile to use according to the {@code userAgentRenderingProfile} property.
+     *
+     * @param properties  the properties to consult, usually the System Properties
+     * @param environment the environment the browser process will run in, from {@link #getEnvironment(String, Map)}
+     * @param probeFile   where the start-up times of the profiles are recorded
+     * @return the profile to use; {@code null} to leave JavaFX alone
+     */
+    static RenderingProfile fromProperties(final Properties properties, final String environment, final File probeFile) {
+        final String value = properties.getProperty(RENDERING_PROFILE_PROPERTY_NAME);
+        if (StringHelper.isNullOrWhiteSpace(value)) {
+            return null;
+        }
+        final String trimmed = value.trim();
+        if (AUTO.equalsIgnoreCase(trimmed)) {
+            return select(RuntimeSelector.loadProperties(probeFile), environment);
+        }
+        final RenderingProfile result = parse(trimmed);
+        if (result == null) {
+            logger.log(Level.WARNING, "Ignoring unknown rendering profile ''{0}''", trimmed);
+        }
+        return result;
+    }
+
+    static RenderingProfile parse(final String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+        catch (final IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Identifies where the browser process will run: the same Java runtime behaves differently
+     * at the console and through a remote desktop.
+     *
+     * @param javaHome  the home of the Java runtime that will host the browser process
+     * @param variables the environment variables, usually those of the current process
+     * @return the environment, suitable as a key in the probe file
+     */
+    static String getEnvironment(final String javaHome, final Map<String, String> variables) {
+        return javaHome + (isRemoteSession(variables) ? "|remote" : "|local");
+    }
+
+    /**
+     * Guesses whether the desktop is being displayed on another machine.
+     *
+     * @param variables the environment variables, usually those of the current process
+     * @return {@code true} for a Remote Desktop session, an SSH connection or a remote X display
+     */
+    static boolean isRemoteSession(final Map<String, String> variables) {
+        final String sessionName = variables.get("SESSIONNAME");
+        if (sessionName != null && sessionName.toUpperCase(Locale.ENGLISH).startsWith("RDP-")) {
+            return true;
+        }
+        if (variables.containsKey("SSH_CONNECTION") || variables.containsKey("XRDP_SESSION")) {
+            return true;
+        }
+        // local displays look like ":0" on X11 or "/private/tmp/..." with XQuartz
+        final String display = variables.get("DISPLAY");
+        return !StringHelper.isNullOrWhiteSpace(display) && !display.startsWith(":") && !display.startsWith("/");
+    }
+
+    /**
+     * Picks the profile that started the fastest in the specified environment, trying the others
+     * (the software one first, for remote sessions) while none has been recorded or the fastest one was slow.
+     * Once a hardware profile has ended up falling back to software, the other hardware profiles aren't tried.
+     *
+     * @param probes      the start-up times recorded so far
+     * @param environment the environment the browser process will run in
+     * @return the profile to use
+     */
+    static RenderingProfile select(final Properties probes, final String environment) {
+        final boolean remote = environment.endsWith("|remote");
+        boolean hardwareFellBack = false;
+        for (final RenderingProfile profile : values()) {
+            if (FELL_BACK.equals(probes.getProperty(getProbeKey(environment, profile)))) {
+                hardwareFellBack = true;
+            }
+        }
+        RenderingProfile fastest = null;
+        long fastestMillis = Long.MAX_VALUE;
+        RenderingProfile untried = null;
+        for (final RenderingProfile profile : remote ? REMOTE_PREFERENCE : LOCAL_PREFERENCE) {
+            final String probe = probes.getProperty(getProbeKey(environment, profile));
+            if (probe == null) {
+                if (untried == null && !(hardwareFellBack && profile.usesHardware)) {
+                    untried = profile;
+                }
+                continue;
+            }
+            final long startupMillis = parseStartupMillis(probe);
+            if (startupMillis < fastestMillis) {
+                fastestMillis = startupMillis;
+                fastest = profile;
+            }
+        }
+        if (fastest == null) {
+            return untried == null ? SOFTWARE : untried;
+        }
+        if (fastestMillis >= SLOW_STARTUP_MILLIS && untried != null) {
+            return untried;
+        }
+        return fastest;
+    }
+
+    static long parseStartupMillis(final String probe) {
+        try {
+            return Long.parseLong(probe);
+        }
+        catch (final NumberFormatException ignored) {
+            // including FELL_BACK
+            return Long.MAX_VALUE;
+        }
+    }
+
+    static String getProbeKey(final String environment, final RenderingProfile profile) {
+        return environment + "." + profile.name();
+    }
+
+    /**
+     * Remembers how long the browser process took to start with this profile.  Meant to be called
+     * by the browser process once its toolkit is ready.
+     *
+     * @param probeFile     where the start-up times of the profiles are recorded
+     * @param environment   the environment the profile was selected for
+     * @param startupMillis how long it took for the toolkit to be ready, in milliseconds
+     * @param fellBack      {@code true} if the hardware pipeline couldn't be used and software was used instead
+     */
+    void recordStartup(final File probeFile, final String environment, final long startupMillis, final boolean fellBack) {
+        final Properties probes = RuntimeSelector.loadProperties(probeFile);
+        probes.setProperty(getProbeKey(environment, this), fellBack ? FELL_BACK : Long.toString(startupMillis));
+        RuntimeSelector.saveProperties(probeFile, probes, "JavaFX start-up times by rendering profile, in milliseconds");
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Makes concurrent authorization requests for the same endpoint, client, scope/resource
+ * and redirect URI share a single browser at a time (i.e. "single-flight").
+ * <p>
+ * A request that is identical to the one in flight (e.g. same {@code state}) receives
+ * the same response or error once it's available.  Keep in mind an authorization code
+ * can usually only be redeemed once.  A request that only differs in other parameters
+ * waits for the one in flight to complete, so that it can benefit from any sign-in
+ * that took place, and is then performed on its own.
+ */
+class RequestCoalescer {
+
+    static final String COALESCE_REQUESTS_PROPERTY_NAME = "userAgentCoalesceRequests";
+
+    private static final String[] KEY_PARAMETER_NAMES = {"client_id", "redirect_uri", "resource", "scope"};
+
+    interface Request {
+        AuthorizationResponse execute() throws AuthorizationException;
+    }
+
+    private static class Flight {
+        private final String requestString;
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private AuthorizationResponse response;
+        private AuthorizationException exception;
+
+        Flight(final String requestString) {
+            this.requestString = requestString;
+        }
+    }
+
+    private final Map<String, Flight> flightsByKey = new HashMap<String, Flight>();
+
+    static boolean isEnabled(final Properties properties) {
+        return Boolean.parseBoolean(properties.getProperty(COALESCE_REQUESTS_PROPERTY_NAME));
+    }
+
+    /**
+     * Computes what makes authorization requests equivalent, ignoring the parameters
+     * that are expected to be unique to each request, such as {@code state} or {@code nonce}.
+     */
+    static String toKey(final URI authorizationEndpoint, final URI redirectUri) {
+        final StringBuilder sb = new StringBuilder();
+        final String scheme = authorizationEndpoint.getScheme();
+        sb.append(scheme == null ? "" : scheme.toLowerCase(Locale.ENGLISH)).append("://");
+        final String authority = authorizationEndpoint.getRawAuthority();
+        sb.append(authority == null ? "" : authority.toLowerCase(Locale.ENGLISH));
+        final String path = authorizationEndpoint.getRawPath();
+        sb.append(path == null ? "" : path);
+
+        final Map<String, String> parameters = parseQuery(authorizationEndpoint.getRawQuery());
+        for (final String name : KEY_PARAMETER_NAMES) {
+            final String value = parameters.get(name);
+            if (value != null) {
+                sb.append('\n').append(name).append('=').append(value);
+            }
+        }
+        sb.append('\n').append(redirectUri);
+        return sb.toString();
+    }
+
+    static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> result = new TreeMap<String, String>();
+        if (rawQuery == null) {
+            return result;
+        }
+        try {
+            for (final String pair : rawQuery.split("&")) {
+                final String[] nameAndValue = pair.split("=", 2);
+                final String name = PercentEncoder.FORM.decode(nameAndValue[0]);
+                final String value = nameAndValue.length == 2 ? PercentEncoder.FORM.decode(nameAndValue[1]) : "";
+                if (!result.containsKey(name)) {
+                    result.put(name, value);
+                }
+            }
+        }
+        catch (final IllegalArgumentException ignored) {
+            // malformed escape sequence; the parameters parsed so far will have to do
+        }
+        return result;
+    }
+
+    AuthorizationResponse execute(final URI authorizationEndpoint, final URI redirectUri, final Request request)
+            throws AuthorizationException {
+        final String key = toKey(authorizationEndpoint, redirectUri);
+        final String requestString = authorizationEndpoint + "\n" + redirectUri;
+        while (true) {
+            final Flight flight;
+            boolean isLeader = false;
+            synchronized (flightsByKey) {
+                final Flight existing = flightsByKey.get(key);
+                if (existing == null) {
+                    flight = new Flight(requestString);
+                    flightsByKey.put(key, flight);
+                    isLeader = true;
+                }
+                else {
+                    flight = existing;
+                }
+            }
+
+            if (isLeader) {
+                try {
+                    flight.response = request.execute();
+                    return flight.response;
+                }
+                catch (final AuthorizationException e) {
+                    flight.exception = e;
+                    throw e;
+                }
+                finally {
+                    synchronized (flightsByKey) {
+                        flightsByKey.remove(key);
+                    }
+                    flight.completed.countDown();
+                }
+            }
+
+            try {
+                flight.completed.await();
+            }
+            catch (final InterruptedException e) {
+                throw new AuthorizationException("interrupted_exception", e.getMessage(), null, e);
+            }
+            if (flight.requestString.equals(requestString)) {
+                if (flight.response != null) {
+                    return flight.response;
+                }
+                if (flight.exception != null) {
+                    throw flight.exception;
+                }
+                // the flight ended abnormally; try again
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Decides which of the requests issued by a provider's browser are worth sending, so that the
+ * analytics, telemetry beacons and web fonts of a sign-in page don't compete with it for bandwidth.
+ * <p>
+ * The {@code userAgentRequestFilter} property is a list of rules separated by semicolons, such as
+ * {@code deny:*.google-analytics.com;deny:login.example.com/telemetry;allow:*}, where each rule is
+ * {@code allow:} or {@code deny:} followed by a host pattern and an optional path prefix.
+ * The host pattern is either {@code *} (any host), {@code *.example.com} (the domain and its sub-domains)
+ * or a host name.  The path prefix starts with a {@code /} and can end with a redundant {@code *}.
+ * The first rule that matches a request decides; a request no rule matches is allowed.
+ */
+class RequestFilter {
+
+    static final String REQUEST_FILTER_PROPERTY_NAME = "userAgentRequestFilter";
+
+    private static final Logger logger = Logger.getLogger(RequestFilter.class.getName());
+
+    static final class Rule {
+        final int index;
+        final boolean allow;
+        final String host;
+        final boolean includeSubdomains;
+        final String pathPrefix;
+
+        Rule(final int index, final boolean allow, final String host, final boolean includeSubdomains, final String pathPrefix) {
+            this.index = index;
+            this.allow = allow;
+            this.host = host;
+            this.includeSubdomains = includeSubdomains;
+            this.pathPrefix = pathPrefix;
+        }
+
+        boolean matchesPath(final String path) {
+            return pathPrefix == null || (path != null && path.startsWith(pathPrefix));
+        }
+    }
+
+    /**
+     * The rules for a host name, for a domain (including its sub-domains) and for any host, in the order
+     * they were configured, such that matching a request only costs a lookup per label of its host name.
+     */
+    private final Map<String, List<Rule>> rulesByHost = new HashMap<String, List<Rule>>();
+    private final Map<String, List<Rule>> rulesByDomain = new HashMap<String, List<Rule>>();
+    private final List<Rule> rulesForAnyHost = new ArrayList<Rule>();
+    private final int ruleCount;
+    private final AtomicInteger blockedCount = new AtomicInteger();
+    private final ConcurrentHashMap<String, AtomicInteger> blockedCountsByHost = new ConcurrentHashMap<String, AtomicInteger>();
+
+    RequestFilter(final List<Rule> rules) {
+        for (final Rule rule : rules) {
+            if (rule.host == null) {
+                rulesForAnyHost.add(rule);
+            }
+            else {
+                final Map<String, List<Rule>> map = rule.includeSubdomains ? rulesByDomain : rulesByHost;
+                List<Rule> list = map.get(rule.host);
+                if (list == null) {
+                    list = new ArrayList<Rule>();
+                    map.put(rule.host, list);
+                }
+                list.add(rule);
+            }
+        }
+        this.ruleCount = rules.size();
+    }
+
+    /**
+     * Creates a filter from the {@code userAgentRequestFilter} property.
+     *
+     * @param properties the properties to consult, usually the System Properties
+     * @return the filter; {@code null} if no rules were configured
+     */
+    static RequestFilter fromProperties(final Properties properties) {
+        final String value = properties.getProperty(REQUEST_FILTER_PROPERTY_NAME);
+        if (StringHelper.isNullOrWhiteSpace(value)) {
+            return null;
+        }
+        final List<Rule> rules = parseRules(value);
+        return rules.isEmpty() ? null : new RequestFilter(rules);
+    }
+
+    static List<Rule> parseRules(final String value) {
+        final List<Rule> result = new ArrayList<Rule>();
+        for (final String item : value.split(";")) {
+            final String trimmed = item.trim();
+            if (trimmed.length() == 0) {
+                continue;
+            }
+            final Rule rule = parseRule(result.size(), trimmed);
+            if (rule == null) {
+                logger.warning("Ignoring the malformed request filter rule '" + trimmed + "'.");
+            }
+            else {
+                result.add(rule);
+            }
+        }
+        return result;
+    }
+
+    static Rule parseRule(final int index, final String s) {
+        final boolean allow;
+        final String pattern;
+        if (s.startsWith("allow:")) {
+            allow = true;
+            pattern = s.substring("allow:".length()).trim();
+        }
+        else if (s.startsWith("deny:")) {
+            allow = false;
+            pattern = s.substring("deny:".length()).trim();
+        }
+        else {
+            return null;
+        }
+        final int slash = pattern.indexOf('/');
+        final String hostPattern = (slash == -1 ? pattern : pattern.substring(0, slash)).toLowerCase();
+        String pathPrefix = slash == -1 ? null : pattern.substring(slash);
+        if (pathPrefix != null) {
+            if (pathPrefix.endsWith("*")) {
+                pathPrefix = pathPrefix.substring(0, pathPrefix.length() - 1);
+            }
+            if (pathPrefix.indexOf('*') != -1) {
+                return null;
+            }
+            if ("/".equals(pathPrefix)) {
+                pathPrefix = null;
+            }
+        }
+        if ("*".equals(hostPattern)) {
+            return new Rule(index, allow, null, false, pathPrefix);
+        }
+        if (hostPattern.startsWith("*.")) {
+            final String domain = hostPattern.substring(2);
+            if (domain.length() == 0 || domain.indexOf('*') != -1) {
+                return null;
+            }
+            return new Rule(index, allow, domain, true, pathPrefix);
+        }
+        if (hostPattern.length() == 0 || hostPattern.indexOf('*') != -1) {
+            return null;
+        }
+        return new Rule(index, allow, hostPattern, false, pathPrefix);
+    }
+
+    int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Determines whether the specified request should be sent, without counting it.
+     *
+     * @param host the host name of the request, or {@code null} if it has none
+     * @param path the path of the request, or {@code null} if it has none
+     * @return {@code false} if the first rule to match the request is a {@code deny:} rule
+     */
+    boolean isAllowed(final String host, final String path) {
+        Rule best = null;
+        if (host != null) {
+            final String lowerHost = host.toLowerCase();
+            best = firstMatch(rulesByHost.get(lowerHost), path, best);
+            int dot = -1;
+            String domain = lowerHost;
+            while (true) {
+                best = firstMatch(rulesByDomain.get(domain), path, best);
+                dot = lowerHost.indexOf('.', dot + 1);
+                if (dot == -1) {
+                    break;
+                }
+                domain = lowerHost.substring(dot + 1);
+            }
+        }
+        best = firstMatch(rulesForAnyHost, path, best);
+        return best == null || best.allow;
+    }
+
+    private static Rule firstMatch(final List<Rule> rules, final String path, final Rule best) {
+        if (rules == null) {
+            return best;
+        }
+        for (final Rule rule : rules) {
+            if (best != null && rule.index > best.index) {
+                // the rules are in order, so none of the others can come first
+                break;
+            }
+            if (rule.matchesPath(path)) {
+                return rule;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Determines whether the specified request should be sent, counting it if it shouldn't.
+     *
+     * @param uri the request's URI; URIs that aren't HTTP(S) are always allowed
+     * @return {@code true} if the request should be sent
+     */
+    boolean allow(final URI uri) {
+        final String scheme = uri.getScheme();
+        if (!"https".equalsIgnoreCase(scheme) && !"http".equalsIgnoreCase(scheme)) {
+            return true;
+        }
+        final String host = uri.getHost();
+        if (isAllowed(host, uri.getRawPath())) {
+            return true;
+        }
+        blockedCount.incrementAndGet();
+        final String key = host == null ? "" : host.toLowerCase();
+        AtomicInteger counter = blockedCountsByHost.get(key);
+        if (counter == null) {
+            final AtomicInteger newCounter = new AtomicInteger();
+            counter = blockedCountsByHost.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+        ProgressReporter.report(ProgressEvent.Type.REQUEST_BLOCKED, uri.toString());
+        return false;
+    }
+
+    int getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    /**
+     * @return how many requests were blocked, by host name
+     */
+    Map<String, Integer> getBlockedCountsByHost() {
+        final Map<String, Integer> result = new HashMap<String, Integer>();
+        for (final Map.Entry<String, AtomicInteger> entry : blockedCountsByHost.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
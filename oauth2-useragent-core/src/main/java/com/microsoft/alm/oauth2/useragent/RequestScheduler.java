@@ -0,0 +1,228 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many browser child processes can run at the same time, queueing the
+ * other requests by priority (higher first) and then in the order they arrived.
+ * There is no limit unless one is configured, since a request holds its slot until
+ * its child process exits and the others would wait for it indefinitely.
+ */
+public class RequestScheduler {
+
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = Integer.MAX_VALUE;
+    static final String MAX_CONCURRENT_REQUESTS_PROPERTY_NAME = "userAgentMaxConcurrentRequests";
+
+    private static RequestScheduler defaultInstance = null;
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<Ticket>();
+    private int maxConcurrentRequests;
+    private long nextSequence = 0;
+    private int runningCount = 0;
+    private long startedCount = 0;
+    private long totalQueueTimeMillis = 0;
+    private long maxQueueTimeMillis = 0;
+
+    private static class Ticket implements Comparable<Ticket> {
+        private final int priority;
+        private final long sequence;
+
+        Ticket(final int priority, final long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Ticket other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
+    public RequestScheduler(final int maxConcurrentRequests) {
+        setMaxConcurrentRequests(maxConcurrentRequests);
+    }
+
+    /**
+     * Gets the scheduler shared by all the {@link UserAgentImpl} instances in this process,
+     * initially limited by the {@code userAgentMaxConcurrentRequests} system property, if set.
+     *
+     * @return the process-wide {@link RequestScheduler}
+     */
+    public static synchronized RequestScheduler getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new RequestScheduler(getMaxConcurrentRequests(System.getProperties()));
+        }
+        return defaultInstance;
+    }
+
+    static int getMaxConcurrentRequests(final Properties properties) {
+        final String value = properties.getProperty(MAX_CONCURRENT_REQUESTS_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(value)) {
+            try {
+                final int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            }
+            catch (final NumberFormatException ignored) {
+            }
+        }
+        return DEFAULT_MAX_CONCURRENT_REQUESTS;
+    }
+
+    public void setMaxConcurrentRequests(final int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1)
+            throw new IllegalArgumentException("The 'maxConcurrentRequests' argument must be at least 1.");
+
+        lock.lock();
+        try {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            slotReleased.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the caller can start a request, which must be followed by a call to
+     * {@link #release()} once the request is complete.
+     *
+     * @param priority requests with a higher priority are started before the others
+     * @return how long the caller waited, in milliseconds
+     * @throws InterruptedException if the current thread was interrupted while waiting,
+     *                              in which case {@link #release()} mustn't be called
+     */
+    long acquire(final int priority) throws InterruptedException {
+        final long queuedAt = System.currentTimeMillis();
+        lock.lock();
+        try {
+            final Ticket ticket = new Ticket(priority, nextSequence++);
+            queue.add(ticket);
+            try {
+                while (runningCount >= maxConcurrentRequests || queue.peek() != ticket) {
+                    slotReleased.await();
+                }
+            }
+            catch (final InterruptedException e) {
+                queue.remove(ticket);
+                // the head of the queue might have changed
+                slotReleased.signalAll();
+                throw e;
+            }
+            queue.poll();
+            runningCount++;
+            startedCount++;
+            final long queueTimeMillis = System.currentTimeMillis() - queuedAt;
+            totalQueueTimeMillis += queueTimeMillis;
+            maxQueueTimeMillis = Math.max(maxQueueTimeMillis, queueTimeMillis);
+            // the next ticket could also fit
+            slotReleased.signalAll();
+            return queueTimeMillis;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    void release() {
+        lock.lock();
+        try {
+            runningCount--;
+            slotReleased.signalAll();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxConcurrentRequests() {
+        lock.lock();
+        try {
+            return maxConcurrentRequests;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests currently running
+     */
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return runningCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests currently waiting for their turn
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests that were started so far
+     */
+    public long getStartedCount() {
+        lock.lock();
+        try {
+            return startedCount;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the total time the started requests spent waiting for their turn, in milliseconds
+     */
+    public long getTotalQueueTimeMillis() {
+        lock.lock();
+        try {
+            return totalQueueTimeMillis;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the longest time a started request spent waiting for its turn, in milliseconds
+     */
+    public long getMaxQueueTimeMillis() {
+        lock.lock();
+        try {
+            return maxQueueTimeMillis;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+}
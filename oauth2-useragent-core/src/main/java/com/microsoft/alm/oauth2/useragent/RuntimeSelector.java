@@ -0,0 +1,435 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory;
+import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the Java runtimes installed alongside the current one, so a provider the current runtime can't host
+ * (such as JavaFX from Java 11+) can still be used, and picks the one that starts the fastest,
+ * remembering how long each runtime took to start.
+ */
+class RuntimeSelector {
+
+    private static final Logger logger = Logger.getLogger(RuntimeSelector.class.getName());
+
+    /**
+     * A list of Java homes (separated like the class path) to consider in addition to the current one.
+     */
+    static final String JAVA_HOMES_PROPERTY_NAME = "userAgentJavaHomes";
+    /**
+     * Set to {@code true} to also consider the Java runtimes installed in the usual locations.
+     */
+    static final String DISCOVER_JAVA_RUNTIMES_PROPERTY_NAME = "userAgentDiscoverJavaRuntimes";
+    static final String RELEASE_FILE_NAME = "release";
+
+    private static final String PATH_SEPARATOR = System.getProperty("path.separator");
+    private static final String[] LINUX_JAVA_ROOTS = {"/usr/lib/jvm", "/usr/java", "/usr/local/java", "/opt/java"};
+    private static final String MAC_JAVA_ROOT = "/Library/Java/JavaVirtualMachines";
+    private static final String[] WINDOWS_PROGRAM_FILES_VARIABLES = {"ProgramFiles", "ProgramFiles(x86)", "ProgramW6432"};
+    /**
+     * How long {@code java -version} may take before the runtime is considered broken for this scan.
+     */
+    static final int STARTUP_TIMEOUT_MILLISECONDS = 20000;
+
+    private final TestableProcessFactory processFactory;
+    private final File rankingFile;
+    private final long startupTimeoutMillis;
+
+    RuntimeSelector(final TestableProcessFactory processFactory, final File rankingFile) {
+        this(processFactory, rankingFile, STARTUP_TIMEOUT_MILLISECONDS);
+    }
+
+    RuntimeSelector(final TestableProcessFactory processFactory, final File rankingFile, final long startupTimeoutMillis) {
+        if (processFactory == null)
+            throw new IllegalArgumentException("The 'processFactory' argument is null.");
+        if (rankingFile == null)
+            throw new IllegalArgumentException("The 'rankingFile' argument is null.");
+
+        this.processFactory = processFactory;
+        this.rankingFile = rankingFile;
+        this.startupTimeoutMillis = startupTimeoutMillis;
+    }
+
+    /**
+     * Creates a RuntimeSelector if other Java runtimes were configured or discovery was requested.
+     *
+     * @param properties     the properties to consult, usually the System Properties
+     * @param processFactory how to launch the runtimes to time them
+     * @return a configured {@link RuntimeSelector}; {@code null} if only the current runtime should be used
+     */
+    static RuntimeSelector fromProperties(final Properties properties, final TestableProcessFactory processFactory) {
+        final boolean hasJavaHomes = !StringHelper.isNullOrWhiteSpace(properties.getProperty(JAVA_HOMES_PROPERTY_NAME));
+        final boolean discover = Boolean.parseBoolean(properties.getProperty(DISCOVER_JAVA_RUNTIMES_PROPERTY_NAME));
+        if (!hasJavaHomes && !discover) {
+            return null;
+        }
+        return new RuntimeSelector(processFactory, new File(Provider.USER_AGENT_HOME, "runtimes.properties"));
+    }
+
+    /**
+     * Lists the current runtime, followed by the configured ones and, if requested, the discovered ones.
+     *
+     * @param current    the facts about the current platform
+     * @param properties the properties to consult, usually the System Properties
+     * @return the facts about the platform for each distinct runtime, the current one first
+     */
+    static List<PlatformInfo> findRuntimes(final PlatformInfo current, final Properties properties) {
+        final Map<File, PlatformInfo> runtimesByHome = new LinkedHashMap<File, PlatformInfo>();
+        runtimesByHome.put(canonicalize(new File(current.getJavaHome())), current);
+
+        final List<File> candidates = new ArrayList<File>();
+        final String javaHomes = properties.getProperty(JAVA_HOMES_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(javaHomes)) {
+            for (final String javaHome : javaHomes.split(PATH_SEPARATOR)) {
+                if (!StringHelper.isNullOrWhiteSpace(javaHome)) {
+                    candidates.add(new File(javaHome.trim()));
+                }
+            }
+        }
+        if (Boolean.parseBoolean(properties.getProperty(DISCOVER_JAVA_RUNTIMES_PROPERTY_NAME))) {
+            candidates.addAll(getStandardLocations(current));
+        }
+
+        for (final File candidate : candidates) {
+            final File javaHome = canonicalize(toJavaHome(candidate));
+            if (!runtimesByHome.containsKey(javaHome)) {
+                final PlatformInfo runtime = describe(javaHome, current);
+                if (runtime != null) {
+                    runtimesByHome.put(javaHome, runtime);
+                }
+            }
+        }
+        return new ArrayList<PlatformInfo>(runtimesByHome.values());
+    }
+
+    static List<File> getStandardLocations(final PlatformInfo current) {
+        final List<File> result = new ArrayList<File>();
+        if (current.isLinux()) {
+            for (final String root : LINUX_JAVA_ROOTS) {
+                addChildren(new File(root), null, result);
+            }
+        }
+        else if (current.isMac()) {
+            addChildren(new File(MAC_JAVA_ROOT), "Contents/Home", result);
+        }
+        else if (current.isWindows()) {
+            for (final String variable : WINDOWS_PROGRAM_FILES_VARIABLES) {
+                final String programFiles = System.getenv(variable);
+                if (!StringHelper.isNullOrWhiteSpace(programFiles)) {
+                    addChildren(new File(programFiles, "Java"), null, result);
+                }
+            }
+        }
+        final String javaHomeVariable = System.getenv("JAVA_HOME");
+        if (!StringHelper.isNullOrWhiteSpace(javaHomeVariable)) {
+            result.add(new File(javaHomeVariable));
+        }
+        return result;
+    }
+
+    private static void addChildren(final File root, final String suffix, final List<File> destination) {
+        final File[] children = root.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                if (child.isDirectory()) {
+                    destination.add(suffix == null ? child : new File(child, suffix));
+                }
+            }
+        }
+    }
+
+    /**
+     * A JDK 8 and earlier has its runtime in a {@code jre} sub-folder, which is what {@code java.home} points to.
+     */
+    static File toJavaHome(final File candidate) {
+        final File jre = new File(candidate, "jre");
+        if (getJavaExecutable(jre).isFile()) {
+            return jre;
+        }
+        return candidate;
+    }
+
+    static File getJavaExecutable(final File javaHome) {
+        final File java = new File(javaHome, "bin/java");
+        if (java.isFile()) {
+            return java;
+        }
+        final File javaExe = new File(javaHome, "bin/java.exe");
+        return javaExe.isFile() ? javaExe : java;
+    }
+
+    private static File canonicalize(final File file) {
+        try {
+            return file.getCanonicalFile();
+        }
+        catch (final IOException ignored) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    /**
+     * Determines the facts about the platform for the specified Java home, using its {@code release} file
+     * so that the runtime doesn't need to be launched.
+     *
+     * @param javaHome the value {@code java.home} would have for that runtime
+     * @param current  the facts about the current platform
+     * @return the facts about the platform for that runtime; {@code null} if it isn't a usable runtime
+     */
+    static PlatformInfo describe(final File javaHome, final PlatformInfo current) {
+        if (!getJavaExecutable(javaHome).isFile()) {
+            return null;
+        }
+        File releaseFile = new File(javaHome, RELEASE_FILE_NAME);
+        if (!releaseFile.isFile()) {
+            releaseFile = new File(javaHome.getParentFile(), RELEASE_FILE_NAME);
+        }
+        final Properties release = readRelease(releaseFile);
+        if (release == null) {
+            return null;
+        }
+        String version = release.getProperty("JAVA_RUNTIME_VERSION");
+        if (StringHelper.isNullOrWhiteSpace(version)) {
+            version = release.getProperty("JAVA_VERSION");
+        }
+        if (StringHelper.isNullOrWhiteSpace(version)) {
+            return null;
+        }
+        final String arch = release.getProperty("OS_ARCH");
+        return current.forJavaRuntime(version, javaHome.getAbsolutePath(), StringHelper.isNullOrWhiteSpace(arch) ? current.getOsArch() : arch);
+    }
+
+    static Properties readRelease(final File releaseFile) {
+        if (!releaseFile.isFile()) {
+            return null;
+        }
+        final Properties result = new Properties();
+        try {
+            final FileInputStream fis = new FileInputStream(releaseFile);
+            try {
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(fis, "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int equals = line.indexOf('=');
+                    if (equals > 0) {
+                        String value = line.substring(equals + 1).trim();
+                        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                            value = value.substring(1, value.length() - 1);
+                        }
+                        result.setProperty(line.substring(0, equals).trim(), value);
+                    }
+                }
+            }
+            finally {
+                fis.close();
+            }
+        }
+        catch (final IOException ignored) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Picks the runtime that starts the fastest, timing those that weren't timed before
+     * (or that were updated since) and remembering the results for next time.
+     * A runtime that failed to start is passed over, but timed again next time.
+     *
+     * @param runtimes the runtimes that can host the provider, in order of preference
+     * @return the fastest runtime; the first one if none of them could be timed
+     */
+    PlatformInfo selectFastest(final List<PlatformInfo> runtimes) {
+        if (runtimes.size() == 1) {
+            return runtimes.get(0);
+        }
+        final Properties ranking = loadProperties(rankingFile);
+        boolean changed = false;
+        PlatformInfo result = runtimes.get(0);
+        long fastest = Long.MAX_VALUE;
+        for (final PlatformInfo runtime : runtimes) {
+            final File java = getJavaExecutable(new File(runtime.getJavaHome()));
+            final String key = java.getAbsolutePath();
+            final String stamp = Long.toString(java.lastModified());
+            long startupMillis = parseStartupMillis(ranking.getProperty(key), stamp);
+            if (startupMillis < 0) {
+                startupMillis = measureStartupMillis(java);
+                if (startupMillis != Long.MAX_VALUE) {
+                    ranking.setProperty(key, stamp + ":" + startupMillis);
+                    changed = true;
+                }
+            }
+            if (startupMillis < fastest) {
+                fastest = startupMillis;
+                result = runtime;
+            }
+        }
+        if (changed) {
+            saveProperties(rankingFile, ranking, "Java runtime start-up times, in milliseconds");
+        }
+        return result;
+    }
+
+    static long parseStartupMillis(final String entry, final String expectedStamp) {
+        if (entry == null) {
+            return -1;
+        }
+        final int colon = entry.indexOf(':');
+        if (colon == -1 || !entry.substring(0, colon).equals(expectedStamp)) {
+            return -1;
+        }
+        try {
+            final long result = Long.parseLong(entry.substring(colon + 1));
+            // failures used to be remembered: time the runtime again
+            return result == Long.MAX_VALUE ? -1 : result;
+        }
+        catch (final NumberFormatException ignored) {
+            return -1;
+        }
+    }
+
+    /**
+     * Times {@code java -version}, which is dominated by the start-up of the runtime,
+     * destroying the process if it takes longer than the start-up timeout.
+     *
+     * @param java the Java executable
+     * @return how long it took, in milliseconds; {@link Long#MAX_VALUE} if it failed
+     */
+    long measureStartupMillis(final File java) {
+        final long start = System.currentTimeMillis();
+        try {
+            final TestableProcess process = processFactory.create(java.getAbsolutePath(), "-version");
+            final ProcessWatchdog watchdog = ProcessWatchdog.start(process, startupTimeoutMillis);
+            final int exitCode;
+            try {
+                process.getOutputStream().close();
+                drain(process.getErrorStream());
+                drain(process.getInputStream());
+                exitCode = process.waitFor();
+            }
+            finally {
+                watchdog.cancel();
+            }
+            final long elapsed = System.currentTimeMillis() - start;
+            if (watchdog.hasFired()) {
+                logger.log(Level.FINE, "''{0} -version'' didn''t finish within {1} ms", new Object[]{java, startupTimeoutMillis});
+                return Long.MAX_VALUE;
+            }
+            if (exitCode != 0) {
+                logger.log(Level.FINE, "''{0} -version'' exited with code {1}", new Object[]{java, exitCode});
+                return Long.MAX_VALUE;
+            }
+            logger.log(Level.FINE, "''{0} -version'' took {1} ms", new Object[]{java, elapsed});
+            return elapsed;
+        }
+        catch (final IOException e) {
+            logger.log(Level.FINE, "Unable to launch '" + java + "'", e);
+            return Long.MAX_VALUE;
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static void drain(final InputStream stream) throws IOException {
+        try {
+            final byte[] buffer = new byte[1024];
+            //noinspection StatementWithEmptyBody
+            while (stream.read(buffer) != -1) {
+            }
+        }
+        finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads a file of remembered measurements.
+     *
+     * @param file the file to read
+     * @return its properties; empty if it doesn't exist or can't be read
+     */
+    static Properties loadProperties(final File file) {
+        final Properties result = new Properties();
+        if (file.isFile()) {
+            try {
+                final FileInputStream fis = new FileInputStream(file);
+                try {
+                    result.load(fis);
+                }
+                finally {
+                    fis.close();
+                }
+            }
+            catch (final IOException e) {
+                logger.log(Level.FINE, "Unable to read " + file, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces a file of remembered measurements, through a uniquely-named temporary file so that
+     * processes saving at the same time don't write over each other's temporary file (the last one wins)
+     * and readers never see it half-written.  Where renaming can't replace a file (i.e. on Windows),
+     * it is deleted first, so readers might briefly find no measurements at all.
+     *
+     * @param file       the file to replace
+     * @param properties the measurements
+     * @param comments   a description of the measurements
+     */
+    static void saveProperties(final File file, final Properties properties, final String comments) {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            return;
+        }
+        try {
+            final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+            try {
+                final FileOutputStream fos = new FileOutputStream(temp);
+                try {
+                    properties.store(fos, comments);
+                }
+                finally {
+                    fos.close();
+                }
+            }
+            catch (final IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw e;
+            }
+            if (!temp.renameTo(file)) {
+                // File.renameTo() won't replace an existing file on Windows
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    logger.log(Level.FINE, "Unable to rename {0} to {1}", new Object[]{temp, file});
+                    //noinspection ResultOfMethodCallIgnored
+                    temp.delete();
+                }
+            }
+        }
+        catch (final IOException e) {
+            logger.log(Level.FINE, "Unable to write " + file, e);
+        }
+    }
+}
@@ -19,7 +19,7 @@ public class StandardWidgetToolkitProvider extends Provider {
     private static final File SWT_HOME = new File(USER_HOME, ".swt");
     private static final String SWT_JAR_NAME = getSwtRuntimeJarName();
 
-    private static final File DEFAULT_SWT_RUNTIME_JAR = new File(SWT_HOME, SWT_JAR_NAME);
+    static final File DEFAULT_SWT_RUNTIME_JAR = new File(SWT_HOME, SWT_JAR_NAME);
 
     private static final String JAVA_VERSION_REQUIREMENT = "Oracle Java SE or OpenJDK, version 6 and higher";
     private static final String ECLIPSE_SWT_RUNTIME_REQUIREMENT = "Standard Widget Toolkit Runtime at " +
@@ -32,11 +32,28 @@ public class StandardWidgetToolkitProvider extends Provider {
     static PackageLocator PACKAGE_LOCATOR_OVERRIDE = null;
 
     static String getSwtRuntimeJarName() {
+        return getSwtRuntimeJarName(OS_ARCH);
+    }
+
+    static String getSwtRuntimeJarName(final String osArch) {
         final String swtRuntimeFormatter = "swt-%s.jar";
-        final String swtArch = OS_ARCH.contains("64") ? "x86_64" : "x86";
+        final String swtArch = osArch != null && osArch.contains("64") ? "x86_64" : "x86";
         return String.format(swtRuntimeFormatter, swtArch);
     }
 
+    /**
+     * Finds the SWT runtime for a Java runtime with another {@code os.arch}, as SWT's native libraries
+     * must match it: only the default location is considered, since the override and the class path
+     * are meant for the current runtime.
+     *
+     * @param osArch the {@code os.arch} of the other runtime
+     * @return the SWT runtime jar; {@code null} if there is none for that architecture
+     */
+    static File getSwtRuntimeJarForArch(final String osArch) {
+        final File result = new File(SWT_HOME, getSwtRuntimeJarName(osArch));
+        return result.isFile() ? result : null;
+    }
+
     protected StandardWidgetToolkitProvider() {
         super("StandardWidgetToolkit");
     }
@@ -47,17 +64,22 @@ public class StandardWidgetToolkitProvider extends Provider {
 
     @Override
     public List<String> checkRequirements() {
+        return checkRequirements(PlatformInfo.getCurrent());
+    }
+
+    @Override
+    public List<String> checkRequirements(final PlatformInfo platform) {
         final List<String> requirements = new ArrayList<String>();
-        final Version javaVersion = Version.parseJavaRuntimeVersion(JAVA_RUNTIME_VERSION);
-        if (!isJavaVersion6AndUp(javaVersion)) {
+        final Version javaVersion = platform.getJavaVersion();
+        if (javaVersion == null || !isJavaVersion6AndUp(javaVersion)) {
             requirements.add(JAVA_VERSION_REQUIREMENT);
         }
 
-        if (getSwtRuntimeJar(DEFAULT_SWT_RUNTIME_JAR) == null) {
+        if (platform.getSwtRuntimeJar() == null) {
             requirements.add(ECLIPSE_SWT_RUNTIME_REQUIREMENT);
         }
 
-        if (!hasDesktop(OS_NAME, ENV_DISPLAY)) {
+        if (!platform.hasDesktop()) {
             requirements.add(GUI_DESKTOP_ENVIRONMENT_REQUIREMENT);
         }
 
@@ -66,14 +88,24 @@ public class StandardWidgetToolkitProvider extends Provider {
 
     @Override
     public void augmentProcessParameters(final List<String> command, final List<String> classPath) {
-        final File swtJar = getSwtRuntimeJar(DEFAULT_SWT_RUNTIME_JAR);
+        augmentProcessParameters(command, classPath, PlatformInfo.getCurrent());
+    }
+
+    @Override
+    public void augmentProcessParameters(final List<String> command, final List<String> classPath, final PlatformInfo platform) {
+        final File swtJar = platform.getSwtRuntimeJar();
         if (swtJar != null) {
             classPath.add(swtJar.getAbsolutePath());
         }
 
-        relayProperties(command);
+        relayProperties(command, platform.isLinux());
 
-        if (isMac(OS_NAME)) {
+        final BrowserEngine browserEngine = BrowserEngine.fromProperties(System.getProperties(), platform, BrowserEngine.BENCHMARK_FILE);
+        if (browserEngine != null) {
+            browserEngine.addArguments(command, BrowserEngine.getEnvironment(swtJar));
+        }
+
+        if (platform.isMac()) {
             command.add("-XstartOnFirstThread");
         }
     }
@@ -119,8 +151,12 @@ public class StandardWidgetToolkitProvider extends Provider {
     }
 
     static void relayProperties(final List<String> command) {
+        relayProperties(command, isLinux(OS_NAME));
+    }
+
+    static void relayProperties(final List<String> command, final boolean isLinux) {
         // https://www.eclipse.org/swt/faq.php#browserproxy
-        if (isLinux(OS_NAME)) {
+        if (isLinux) {
             relayNetworkProperties(command);
         }
 
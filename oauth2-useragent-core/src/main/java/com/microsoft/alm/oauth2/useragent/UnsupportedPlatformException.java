@@ -0,0 +1,77 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thrown when none of the providers can run on this platform.
+ * The (rather large) diagnostic message, which includes all the System Properties and
+ * Environment Variables, is only generated if it is requested, so callers that intend
+ * to fall back to another mechanism don't pay for it.  It therefore reflects the
+ * System Properties as they are when the message is first requested (or when the
+ * exception is serialized), not necessarily as they were when the exception was thrown.
+ * The unmet requirements aren't serialized, since providers aren't serializable.
+ */
+public class UnsupportedPlatformException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient Map<Provider, List<String>> unmetRequirements;
+    private String message = null;
+
+    public UnsupportedPlatformException(final Map<Provider, List<String>> unmetRequirements) {
+        final Map<Provider, List<String>> copy = new LinkedHashMap<Provider, List<String>>();
+        for (final Map.Entry<Provider, List<String>> entry : unmetRequirements.entrySet()) {
+            final List<String> requirements = new ArrayList<String>(entry.getValue());
+            copy.put(entry.getKey(), Collections.unmodifiableList(requirements));
+        }
+        this.unmetRequirements = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * @return the unmet requirements of each provider, which will be empty if this
+     * exception was deserialized
+     */
+    public Map<Provider, List<String>> getUnmetRequirements() {
+        if (unmetRequirements == null) {
+            return Collections.emptyMap();
+        }
+        return unmetRequirements;
+    }
+
+    /**
+     * Writes the diagnostic message to the specified destination, without retaining it.
+     *
+     * @param destination where to write the message
+     * @throws IOException if the destination couldn't be written to
+     */
+    public void appendMessage(final Appendable destination) throws IOException {
+        if (unmetRequirements == null) {
+            destination.append(getMessage());
+            return;
+        }
+        UserAgentImpl.appendUnsupportedMessage(unmetRequirements, destination);
+    }
+
+    @Override
+    public synchronized String getMessage() {
+        if (message == null) {
+            message = UserAgentImpl.buildUnsupportedMessage(getUnmetRequirements()).toString();
+        }
+        return message;
+    }
+
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+        // the requirements won't survive, so the message has to be generated while they are known
+        getMessage();
+        out.defaultWriteObject();
+    }
+}
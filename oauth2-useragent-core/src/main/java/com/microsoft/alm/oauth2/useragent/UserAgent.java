@@ -4,8 +4,21 @@
 package com.microsoft.alm.oauth2.useragent;
 
 import java.net.URI;
+import java.util.List;
 
 public interface UserAgent {
     AuthorizationResponse requestAuthorizationCode(final URI authorizationEndpoint, final URI redirectUri)
             throws AuthorizationException;
+
+    /**
+     * Performs the specified authorization requests back-to-back in the same browser session,
+     * such that the later ones can benefit from the cookies set during the earlier ones.
+     *
+     * @param requests the authorization requests to perform, in order
+     * @return the responses, in the same order as the requests
+     * @throws AuthorizationException the error returned by the first request that failed,
+     *                                after which the remaining requests aren't attempted
+     */
+    List<AuthorizationResponse> requestAuthorizationCodes(final List<AuthorizationRequest> requests)
+            throws AuthorizationException;
 }
@@ -4,10 +4,12 @@
 package com.microsoft.alm.oauth2.useragent;
 
 import com.microsoft.alm.oauth2.useragent.subprocess.DefaultProcessFactory;
+import com.microsoft.alm.oauth2.useragent.subprocess.LineListener;
 import com.microsoft.alm.oauth2.useragent.subprocess.ProcessCoordinator;
 import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
 import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory;
 import com.microsoft.alm.oauth2.useragent.utils.PackageLocator;
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
 import com.microsoft.alm.oauth2.useragent.utils.StringHelper;
 
 import java.io.BufferedReader;
@@ -17,36 +19,84 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class UserAgentImpl implements UserAgent, ProviderScanner {
 
     static final String REQUEST_AUTHORIZATION_CODE = "requestAuthorizationCode";
+    static final String REQUEST_AUTHORIZATION_CODES = "requestAuthorizationCodes";
     static final String JAVA_VERSION_STRING = System.getProperty("java.version");
-    static final String JAVA_HOME = System.getProperty("java.home");
     static final String PATH_SEPARATOR = System.getProperty("path.separator");
     static final String NEW_LINE = System.getProperty("line.separator");
     static final String UTF_8 = "UTF-8";
     static final String USER_AGENT_PROVIDER_PROPERTY_NAME = "userAgentProvider";
+    /**
+     * Marks the line the child process writes to its stdout with the response,
+     * so it can be told apart from any other output and acted upon right away.
+     */
+    static final String RESPONSE_PREFIX = "oauth2-useragent-response:";
+    /**
+     * Marks the lines of the child process's stdout that are {@link ProgressEvent}s.
+     */
+    static final String EVENT_PREFIX = "oauth2-useragent-event:";
+    /**
+     * Marks the line of the child process's stdout with the {@link NetworkRecorder} capture for the next response.
+     */
+    static final String CAPTURE_PREFIX = "oauth2-useragent-capture:";
+    /**
+     * How much of the child process's stderr to retain, in thousands of characters (1024 each, not bytes);
+     * {@code 0} or less retains all of it.
+     */
+    static final String STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME = "userAgentStdErrBufferKilobytes";
+    static final int DEFAULT_STD_ERR_BUFFER_KILOBYTES = 64;
+    static final int MAXIMUM_STD_ERR_BUFFER_KILOBYTES = Integer.MAX_VALUE / 1024;
+    /**
+     * How long the browser is kept hidden, in the hope that the authorization server
+     * redirects right away (i.e. without needing the user), before it is shown.
+     */
+    static final String SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME = "userAgentSilentBudgetMilliseconds";
+
+    private static final Logger logger = Logger.getLogger(UserAgentImpl.class.getName());
+
+    /**
+     * Forwards the child process's stderr to the {@link Logger} as it arrives,
+     * so toolkit diagnostics can be observed while the browser is still open.
+     */
+    static final LineListener STD_ERR_LOGGER = new LineListener() {
+        @Override
+        public void lineRead(final String line) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(line);
+            }
+        }
+    };
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
+    private static final Map<Provider, List<String>> NO_REQUIREMENTS = Collections.emptyMap();
+    private static final RequestCoalescer REQUEST_COALESCER = new RequestCoalescer();
     private static final Set<String> NETWORKING_PROPERTY_NAMES;
-    private static final Map<String, String> SAFE_REPLACEMENTS;
+    private static final Set<String> BROWSER_PROPERTY_NAMES;
+    /**
+     * Leaves alone the characters left alone by {@link PercentEncoder#FORM}
+     * plus some common ones, for easier raw inspection.
+     */
+    private static final PercentEncoder DIAGNOSTIC_ENCODER = new PercentEncoder(".-*_ ()/:;\\|", false);
 
     static {
         // https://docs.oracle.com/javase/7/docs/api/java/net/doc-files/net-properties.html
@@ -73,33 +123,71 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         networkingPropertyNames.add("http.auth.ntlm.domain");
         NETWORKING_PROPERTY_NAMES = Collections.unmodifiableSet(networkingPropertyNames);
 
-        final HashMap<String, String> map = new HashMap<String, String>();
-        map.put("+", " ");
-        map.put("%28", "(");
-        map.put("%29", ")");
-        map.put("%2F", "/");
-        map.put("%3A", ":");
-        map.put("%3B", ";");
-        map.put("%5C", "\\");
-        map.put("%7C", "|");
-        SAFE_REPLACEMENTS = Collections.unmodifiableMap(map);
+        final Set<String> browserPropertyNames = new HashSet<String>();
+        browserPropertyNames.add(SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME);
+        browserPropertyNames.add(RequestFilter.REQUEST_FILTER_PROPERTY_NAME);
+        browserPropertyNames.add(NetworkRecorder.RECORD_NETWORK_PROPERTY_NAME);
+        BROWSER_PROPERTY_NAMES = Collections.unmodifiableSet(browserPropertyNames);
     }
 
     private final TestableProcessFactory processFactory;
     private final List<Provider> candidateProviders;
-    private final LinkedHashMap<Provider, List<String>> requirementsByProvider = new LinkedHashMap<Provider, List<String>>();
-    private Provider provider;
-    private boolean hasScannedAtLeastOnce = false;
-    private String userAgentProvider = null;
+    private final RequestScheduler scheduler;
+    /**
+     * The outcome of the latest scan, replaced as a whole so that concurrent callers never see a partial one.
+     */
+    private final AtomicReference<ScanSnapshot> snapshot;
+    private final List<ProgressListener> progressListeners = new CopyOnWriteArrayList<ProgressListener>();
 
     public UserAgentImpl() {
         this(new DefaultProcessFactory(), null, Provider.PROVIDERS);
     }
 
     UserAgentImpl(final TestableProcessFactory processFactory, final Provider provider, final List<Provider> candidateProviders) {
+        this(processFactory, provider, candidateProviders, RequestScheduler.getDefault());
+    }
+
+    UserAgentImpl(final TestableProcessFactory processFactory, final Provider provider, final List<Provider> candidateProviders, final RequestScheduler scheduler) {
         this.processFactory = processFactory;
         this.candidateProviders = candidateProviders;
-        this.provider = provider;
+        this.snapshot = new AtomicReference<ScanSnapshot>(new ScanSnapshot(null, provider, null, NO_REQUIREMENTS, false));
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * An immutable record of which provider (if any) was found, for which {@code userAgentProvider} override,
+     * on which runtime and why the other providers can't be used.
+     */
+    static final class ScanSnapshot {
+        final String userAgentProvider;
+        final Provider provider;
+        /**
+         * The facts about the platform, as seen from the Java runtime that will host the provider.
+         */
+        final PlatformInfo platform;
+        final Map<Provider, List<String>> requirementsByProvider;
+        final boolean hasScanned;
+        /**
+         * {@code false} if the provider might not have been probed yet, as the scan wasn't allowed to launch probes.
+         */
+        final boolean hasProbed;
+
+        ScanSnapshot(final String userAgentProvider, final Provider provider, final PlatformInfo platform, final Map<Provider, List<String>> requirementsByProvider, final boolean hasScanned) {
+            this(userAgentProvider, provider, platform, requirementsByProvider, hasScanned, true);
+        }
+
+        ScanSnapshot(final String userAgentProvider, final Provider provider, final PlatformInfo platform, final Map<Provider, List<String>> requirementsByProvider, final boolean hasScanned, final boolean hasProbed) {
+            this.userAgentProvider = userAgentProvider;
+            this.provider = provider;
+            this.platform = platform;
+            this.requirementsByProvider = requirementsByProvider;
+            this.hasScanned = hasScanned;
+            this.hasProbed = hasProbed;
+        }
+
+        ScanSnapshot withProvider(final Provider provider, final PlatformInfo platform) {
+            return new ScanSnapshot(userAgentProvider, provider, platform, requirementsByProvider, hasScanned, hasProbed);
+        }
     }
 
     @Override
@@ -113,62 +201,239 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         return findCompatibleProvider(userAgentProvider, true);
     }
 
+    /**
+     * Queries never launch a {@link ProviderProbe}: they rely on the outcomes remembered from earlier probes.
+     */
     Provider findCompatibleProvider(final String userAgentProvider, final boolean checkOverrideIsCompatible) {
-        if (provider == null || !StringHelper.equal(this.userAgentProvider, userAgentProvider)) {
-            requirementsByProvider.clear();
-            provider = scanProviders(userAgentProvider, candidateProviders, requirementsByProvider, checkOverrideIsCompatible);
-            hasScannedAtLeastOnce = true;
-            this.userAgentProvider = userAgentProvider;
+        return getSnapshot(userAgentProvider, checkOverrideIsCompatible, false).provider;
+    }
+
+    /**
+     * Returns the latest scan if it found a provider for the same override (and probed it, if asked to),
+     * otherwise scans again and publishes the result.  Concurrent scans are harmless: they reach the same
+     * conclusion and the last one to finish is kept.
+     */
+    ScanSnapshot getSnapshot(final String userAgentProvider, final boolean checkOverrideIsCompatible, final boolean launchProbes) {
+        final ScanSnapshot existing = snapshot.get();
+        if (existing.provider != null && StringHelper.equal(existing.userAgentProvider, userAgentProvider)
+                && (existing.hasProbed || !launchProbes)) {
+            return existing;
+        }
+        final ScanSnapshot result = scan(userAgentProvider, checkOverrideIsCompatible, launchProbes);
+        snapshot.set(result);
+        return result;
+    }
+
+    ScanSnapshot scan(final String userAgentProvider, final boolean checkOverrideIsCompatible, final boolean launchProbes) {
+        final LinkedHashMap<Provider, List<String>> requirementsByProvider = new LinkedHashMap<Provider, List<String>>();
+        final PlatformInfo current = PlatformInfo.getCurrent();
+        final ProviderProbe probe = ProviderProbe.fromProperties(System.getProperties(), processFactory);
+        final Provider provider = scanProviders(userAgentProvider, candidateProviders, requirementsByProvider, checkOverrideIsCompatible, current, probe, launchProbes);
+        final Map<Provider, List<String>> unmodifiableRequirements = Collections.unmodifiableMap(requirementsByProvider);
+        final ScanSnapshot result = new ScanSnapshot(userAgentProvider, provider, current, unmodifiableRequirements, true, probe == null || launchProbes);
+        final RuntimeSelector runtimeSelector = RuntimeSelector.fromProperties(System.getProperties(), processFactory);
+        if (runtimeSelector != null) {
+            final List<PlatformInfo> runtimes = RuntimeSelector.findRuntimes(current, System.getProperties());
+            return selectRuntime(result, checkOverrideIsCompatible, runtimeSelector, runtimes);
+        }
+        return result;
+    }
+
+    /**
+     * Looks for the provider in the other runtimes if the current one can't host any,
+     * then picks the fastest of the runtimes that can host the provider.
+     */
+    ScanSnapshot selectRuntime(final ScanSnapshot scanned, final boolean checkOverrideIsCompatible, final RuntimeSelector runtimeSelector, final List<PlatformInfo> runtimes) {
+        Provider provider = scanned.provider;
+        if (provider == null) {
+            for (final PlatformInfo runtime : runtimes) {
+                final Map<Provider, List<String>> ignored = new LinkedHashMap<Provider, List<String>>();
+                final Provider candidate = scanProviders(scanned.userAgentProvider, candidateProviders, ignored, checkOverrideIsCompatible, runtime);
+                if (candidate != null) {
+                    logger.log(Level.FINE, "The ''{0}'' provider can be hosted by the runtime at {1}", new Object[]{candidate.getClassName(), runtime.getJavaHome()});
+                    provider = candidate;
+                    break;
+                }
+            }
+        }
+        if (provider == null) {
+            return scanned;
         }
-        return provider;
+        final List<PlatformInfo> compatibleRuntimes = new ArrayList<PlatformInfo>();
+        for (final PlatformInfo runtime : runtimes) {
+            final List<String> requirements = provider.checkRequirements(runtime);
+            if (requirements == null || requirements.size() == 0) {
+                compatibleRuntimes.add(runtime);
+            }
+        }
+        if (compatibleRuntimes.size() > 0) {
+            return scanned.withProvider(provider, runtimeSelector.selectFastest(compatibleRuntimes));
+        }
+        return scanned.withProvider(provider, scanned.platform);
+    }
+
+    /**
+     * Registers a listener to be notified of what happens in the child processes started by this instance,
+     * such as the pages being loaded, as it happens.  A request that is merged with one already in progress
+     * (see {@code userAgentCoalesceRequests}) only notifies the listeners of the instance that started it.
+     *
+     * @param listener the listener to add
+     */
+    public void addProgressListener(final ProgressListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("The 'listener' argument is null.");
+
+        progressListeners.add(listener);
+    }
+
+    public void removeProgressListener(final ProgressListener listener) {
+        progressListeners.remove(listener);
+    }
+
+    void fireProgressReported(final ProgressEvent event) {
+        for (final ProgressListener listener : progressListeners) {
+            try {
+                listener.progressReported(event);
+            }
+            catch (final RuntimeException e) {
+                logger.log(Level.WARNING, "A ProgressListener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Removes the progress events and network captures from the output of a child process
+     * that didn't frame its response.
+     */
+    static String removeFramedLines(final String stdOut) {
+        if (stdOut.indexOf(EVENT_PREFIX) == -1 && stdOut.indexOf(CAPTURE_PREFIX) == -1) {
+            return stdOut;
+        }
+        final StringBuilder sb = new StringBuilder(stdOut.length());
+        int start = 0;
+        while (start < stdOut.length()) {
+            int end = stdOut.indexOf('\n', start);
+            end = end == -1 ? stdOut.length() : end + 1;
+            if (!stdOut.startsWith(EVENT_PREFIX, start) && !stdOut.startsWith(CAPTURE_PREFIX, start)) {
+                sb.append(stdOut, start, end);
+            }
+            start = end;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Parses a response, attaching the network capture that came with it, if any.
+     */
+    static AuthorizationResponse parseResponse(final String response, final String errorContents, final String networkCapture)
+            throws AuthorizationException {
+        final AuthorizationResponse result;
+        try {
+            result = AuthorizationResponse.fromString(response, errorContents);
+        }
+        catch (final AuthorizationException e) {
+            e.setNetworkCapture(networkCapture);
+            throw e;
+        }
+        return networkCapture == null ? result : new AuthorizationResponse(result.getCode(), result.getState(), networkCapture);
     }
 
     @Override
     public Map<Provider, List<String>> getUnmetProviderRequirements() {
-        if (!hasScannedAtLeastOnce) {
+        if (!snapshot.get().hasScanned) {
             findCompatibleProvider();
         }
 
-        final Map<Provider, List<String>> copy = new LinkedHashMap<Provider, List<String>>(requirementsByProvider);
-        final Map<Provider, List<String>> result = Collections.unmodifiableMap(copy);
-        return result;
+        return snapshot.get().requirementsByProvider;
     }
 
     @Override
     public boolean hasCompatibleProvider() {
-        findCompatibleProvider();
-        return provider != null;
+        return findCompatibleProvider() != null;
     }
 
     @Override
     public boolean hasCompatibleProvider(final String userAgentProvider) {
-        findCompatibleProvider(userAgentProvider);
-        return provider != null;
+        return findCompatibleProvider(userAgentProvider) != null;
     }
 
     @Override
     public AuthorizationResponse requestAuthorizationCode(final URI authorizationEndpoint, final URI redirectUri)
             throws AuthorizationException {
-        return encode(REQUEST_AUTHORIZATION_CODE, authorizationEndpoint.toString(), redirectUri.toString());
+        return requestAuthorizationCode(authorizationEndpoint, redirectUri, RequestScheduler.DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Like {@link #requestAuthorizationCode(URI, URI)}, but if the {@link RequestScheduler} makes
+     * this request wait for its turn, requests with a higher priority will be started first.
+     *
+     * @param authorizationEndpoint the authorization endpoint, including its parameters
+     * @param redirectUri           the redirect URI to intercept
+     * @param priority              the priority of the request; {@link RequestScheduler#DEFAULT_PRIORITY} by default
+     * @return the {@link AuthorizationResponse}
+     * @throws AuthorizationException if the authorization server or the browser returned an error
+     */
+    public AuthorizationResponse requestAuthorizationCode(final URI authorizationEndpoint, final URI redirectUri, final int priority)
+            throws AuthorizationException {
+        // coalesced requests wait for the one in flight without taking a slot from the scheduler
+        final RequestCoalescer.Request request = new RequestCoalescer.Request() {
+            @Override
+            public AuthorizationResponse execute() throws AuthorizationException {
+                return encodeAll(REQUEST_AUTHORIZATION_CODE, 1, priority, authorizationEndpoint.toString(), redirectUri.toString()).get(0);
+            }
+        };
+        if (RequestCoalescer.isEnabled(System.getProperties())) {
+            return REQUEST_COALESCER.execute(authorizationEndpoint, redirectUri, request);
+        }
+        return request.execute();
+    }
+
+    @Override
+    public List<AuthorizationResponse> requestAuthorizationCodes(final List<AuthorizationRequest> requests)
+            throws AuthorizationException {
+        if (requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final String[] parameters = new String[1 + requests.size() * 2];
+        parameters[0] = Integer.toString(requests.size());
+        int i = 1;
+        for (final AuthorizationRequest request : requests) {
+            parameters[i++] = request.getAuthorizationEndpoint().toString();
+            parameters[i++] = request.getRedirectUri().toString();
+        }
+        return encodeAll(REQUEST_AUTHORIZATION_CODES, requests.size(), RequestScheduler.DEFAULT_PRIORITY, parameters);
     }
 
     AuthorizationResponse encode(final String methodName, final String... parameters)
             throws AuthorizationException {
+        return encodeAll(methodName, 1, RequestScheduler.DEFAULT_PRIORITY, parameters).get(0);
+    }
+
+    /**
+     * Builds the command line that starts the provider's child process on the specified runtime.
+     */
+    static List<String> createCommand(final Provider provider, final PlatformInfo hostPlatform, final String methodName, final String... parameters) {
         final ArrayList<String> command = new ArrayList<String>();
         final ArrayList<String> classPath = new ArrayList<String>();
         // TODO: should we append ".exe" on Windows?
-        command.add(new File(JAVA_HOME, "bin/java").getAbsolutePath());
+        command.add(new File(hostPlatform.getJavaHome(), "bin/java").getAbsolutePath());
 
         command.add("-Djava.protocol.handler.pkgs=com.microsoft.alm.oauth2.useragent");
 
-        final String userAgentProvider = System.getProperty(USER_AGENT_PROVIDER_PROPERTY_NAME);
-        findCompatibleProvider(userAgentProvider, false);
-        if (provider == null) {
-            throwUnsupported(requirementsByProvider);
-        }
-        provider.augmentProcessParameters(command, classPath);
+        provider.augmentProcessParameters(command, classPath, hostPlatform);
 
         relayProperties(System.getProperties(), NETWORKING_PROPERTY_NAMES, command);
+        relayProperties(System.getProperties(), DiskResponseCache.PROPERTY_NAMES, command);
+        relayProperties(System.getProperties(), BROWSER_PROPERTY_NAMES, command);
+        if (provider instanceof JavaFxProvider) {
+            // the native engines behind SWT have their own DNS and connection caches
+            addPreconnectProperty(System.getProperties(), methodName, parameters, command);
+        }
+        addProfileProperty(System.getProperties(), methodName, parameters, command);
+        if (ProviderProbe.PROBE.equals(methodName)) {
+            // keep the window hidden: the process ends as soon as its browser is created
+            command.add("-D" + SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME + "=" + ProviderProbe.TIMEOUT_MILLISECONDS);
+        }
 
         // Locate our class to add it to the classPath
         final PackageLocator locator = new PackageLocator();
@@ -179,20 +444,73 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         addClassPathToCommand(classPath, command, PATH_SEPARATOR);
         command.add("com.microsoft.alm.oauth2.useragent." + provider.getClassName());
         command.add(methodName);
+        return command;
+    }
+
+    List<AuthorizationResponse> encodeAll(final String methodName, final int responseCount, final int priority, final String... parameters)
+            throws AuthorizationException {
+        final String userAgentProvider = System.getProperty(USER_AGENT_PROVIDER_PROPERTY_NAME);
+        final ScanSnapshot scanned = getSnapshot(userAgentProvider, false, true);
+        final Provider provider = scanned.provider;
+        if (provider == null) {
+            throwUnsupported(scanned.requirementsByProvider);
+        }
+        final PlatformInfo hostPlatform = scanned.platform == null ? PlatformInfo.getCurrent() : scanned.platform;
+        final List<String> command = createCommand(provider, hostPlatform, methodName, parameters);
         //noinspection ToArrayCallWithZeroLengthArrayArgument
         final String[] args = command.toArray(EMPTY_STRING_ARRAY);
 
+        try {
+            final long queueTimeMillis = scheduler.acquire(priority);
+            if (queueTimeMillis > 0 && logger.isLoggable(Level.FINE)) {
+                logger.fine("Waited " + queueTimeMillis + " ms for another request to complete.");
+            }
+        }
+        catch (final InterruptedException e) {
+            throw new AuthorizationException("interrupted_exception", e.getMessage(), null, e);
+        }
+        ProcessCoordinator running = null;
         try {
             final TestableProcess process = processFactory.create(args);
-            final ProcessCoordinator coordinator = new ProcessCoordinator(process);
+            final int stdErrBufferLength = getStdErrBufferLength(System.getProperties());
+            final AtomicReference<String> pendingCapture = new AtomicReference<String>();
+            final LineListener stdOutListener = new LineListener() {
+                @Override public void lineRead(final String line) {
+                    if (line.startsWith(CAPTURE_PREFIX)) {
+                        pendingCapture.set(line.substring(CAPTURE_PREFIX.length()));
+                    }
+                    else if (line.startsWith(EVENT_PREFIX)) {
+                        final ProgressEvent event = ProgressEvent.fromString(line.substring(EVENT_PREFIX.length()));
+                        if (event != null) {
+                            fireProgressReported(event);
+                        }
+                    }
+                }
+            };
+            // the listener consumes the captures and events, so only the responses need to be retained
+            final ProcessCoordinator coordinator = new ProcessCoordinator(process, stdErrBufferLength, STD_ERR_LOGGER, stdOutListener, CAPTURE_PREFIX, EVENT_PREFIX);
+            running = coordinator;
             for (final String parameter : parameters) {
                 coordinator.println(parameter);
             }
-            coordinator.waitFor();
+            final List<AuthorizationResponse> responses = new ArrayList<AuthorizationResponse>(responseCount);
+            while (responses.size() < responseCount) {
+                // don't wait for the toolkit to tear down if the child already sent its response
+                // (the child stops at the first error, which fromString() throws)
+                final String framedResponse = coordinator.waitForLine(RESPONSE_PREFIX);
+                if (framedResponse != null) {
+                    // the capture is written before the response, so it has already been read
+                    responses.add(parseResponse(framedResponse, coordinator.getStdErr(), pendingCapture.getAndSet(null)));
+                    continue;
+                }
+                coordinator.waitFor();
+                running = null;
 
-            final String response = coordinator.getStdOut();
-            final String errorContents = coordinator.getStdErr();
-            return AuthorizationResponse.fromString(response, errorContents);
+                final String response = responses.isEmpty() ? removeFramedLines(coordinator.getStdOut()) : null;
+                final String errorContents = coordinator.getStdErr();
+                responses.add(parseResponse(response, errorContents, pendingCapture.getAndSet(null)));
+            }
+            return responses;
         }
         catch (final IOException e) {
             throw new AuthorizationException("io_exception", e.getMessage(), null, e);
@@ -200,6 +518,78 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         catch (final InterruptedException e) {
             throw new AuthorizationException("interrupted_exception", e.getMessage(), null, e);
         }
+        finally {
+            if (running == null) {
+                scheduler.release();
+            }
+            else {
+                releaseWhenExited(running);
+            }
+        }
+    }
+
+    /**
+     * Keeps the scheduler's slot until the child process exits, without making the caller wait,
+     * as a child that sent its response framed still has its toolkit to tear down.
+     */
+    private void releaseWhenExited(final ProcessCoordinator coordinator) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    coordinator.waitFor();
+                }
+                catch (final InterruptedException ignored) {
+                }
+                finally {
+                    scheduler.release();
+                }
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Determines how many characters of the child process's stderr to retain
+     * for the error description, from the {@code userAgentStdErrBufferKilobytes} property,
+     * which counts characters in units of 1024, not bytes.
+     *
+     * @param properties the properties to consult, usually the System Properties
+     * @return the number of characters to retain; {@code 0} means all of them
+     */
+    static int getStdErrBufferLength(final Properties properties) {
+        int kilobytes = DEFAULT_STD_ERR_BUFFER_KILOBYTES;
+        final String value = properties.getProperty(STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(value)) {
+            try {
+                kilobytes = Integer.parseInt(value.trim());
+            }
+            catch (final NumberFormatException ignored) {
+            }
+        }
+        if (kilobytes <= 0) {
+            return 0;
+        }
+        return Math.min(kilobytes, MAXIMUM_STD_ERR_BUFFER_KILOBYTES) * 1024;
+    }
+
+    /**
+     * Determines how long a provider should keep its window hidden, from the
+     * {@code userAgentSilentBudgetMilliseconds} property.
+     *
+     * @param properties the properties to consult, usually the System Properties
+     * @return the number of milliseconds; {@code 0} means the window is shown right away
+     */
+    static int getSilentBudgetMilliseconds(final Properties properties) {
+        final String value = properties.getProperty(SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME);
+        if (!StringHelper.isNullOrWhiteSpace(value)) {
+            try {
+                return Math.max(0, Integer.parseInt(value.trim()));
+            }
+            catch (final NumberFormatException ignored) {
+            }
+        }
+        return 0;
     }
 
     static void relayProperties(final Properties properties, final Set<String> propertyNames, final List<String> destinationCommand) {
@@ -211,7 +601,66 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         }
     }
 
-    void addClassPathToCommand(final List<String> classPath, final List<String> command, final String pathSeparator) {
+    /**
+     * If the {@code userAgentPreconnect} property is {@code true}, tells the child process
+     * which server to connect to while its browser is starting.  Only the JavaFX provider
+     * benefits, since its browser shares the JVM's DNS, keep-alive and TLS session caches.
+     */
+    static void addPreconnectProperty(final Properties properties, final String methodName, final String[] parameters, final List<String> destinationCommand) {
+        if (!Boolean.parseBoolean(properties.getProperty(Preconnector.PRECONNECT_PROPERTY_NAME))) {
+            return;
+        }
+        final String authorizationEndpoint = getFirstAuthorizationEndpoint(methodName, parameters);
+        if (authorizationEndpoint == null) {
+            return;
+        }
+        try {
+            final URI origin = Preconnector.toOrigin(new URI(authorizationEndpoint));
+            if (origin != null) {
+                destinationCommand.add("-D" + Preconnector.PRECONNECT_URI_PROPERTY_NAME + "=" + origin);
+            }
+        }
+        catch (final URISyntaxException ignored) {
+            // the child process will report it
+        }
+    }
+
+    /**
+     * If the {@code userAgentPersistentProfile} property is {@code true}, tells the child process
+     * where to keep the browser profile for the authorization endpoint's authority,
+     * so that cookies and cached resources survive from one request to the next.
+     */
+    static void addProfileProperty(final Properties properties, final String methodName, final String[] parameters, final List<String> destinationCommand) {
+        final ProfileStore profileStore = ProfileStore.fromProperties(properties);
+        if (profileStore == null) {
+            return;
+        }
+        final String authorizationEndpoint = getFirstAuthorizationEndpoint(methodName, parameters);
+        if (authorizationEndpoint == null) {
+            return;
+        }
+        try {
+            final File profile = profileStore.acquire(new URI(authorizationEndpoint));
+            if (profile != null) {
+                destinationCommand.add("-D" + ProfileStore.PROFILE_PATH_PROPERTY_NAME + "=" + profile.getAbsolutePath());
+            }
+        }
+        catch (final URISyntaxException ignored) {
+            // the child process will report it
+        }
+    }
+
+    static String getFirstAuthorizationEndpoint(final String methodName, final String[] parameters) {
+        if (REQUEST_AUTHORIZATION_CODE.equals(methodName) && parameters.length >= 1) {
+            return parameters[0];
+        }
+        if (REQUEST_AUTHORIZATION_CODES.equals(methodName) && parameters.length >= 2) {
+            return parameters[1];
+        }
+        return null;
+    }
+
+    static void addClassPathToCommand(final List<String> classPath, final List<String> command, final String pathSeparator) {
         command.add("-classpath");
         //noinspection ToArrayCallWithZeroLengthArrayArgument
         final String[] classPathComponents = classPath.toArray(EMPTY_STRING_ARRAY);
@@ -220,30 +669,66 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
     }
 
     static void throwUnsupported(final Map<Provider, List<String>> unmetRequirements) {
-        final StringBuilder sb = buildUnsupportedMessage(unmetRequirements);
-
-        throw new IllegalStateException(sb.toString());
+        // the message will only be built if it's needed
+        throw new UnsupportedPlatformException(unmetRequirements);
     }
 
     public static StringBuilder buildUnsupportedMessage(Map<Provider, List<String>> unmetRequirements) {
-        final StringBuilder sb = new StringBuilder("I don't support your platform yet.");
-        describeUnmetRequirements(unmetRequirements, sb);
-        sb.append(NEW_LINE);
-        sb.append("Please send details about your operating system version, Java version, 32- vs. 64-bit, etc.");
-        sb.append(NEW_LINE);
-        sb.append("The following System Properties and Environment Variables would be very useful.");
-        sb.append(NEW_LINE);
+        final StringBuilder sb = new StringBuilder();
+        try {
+            appendUnsupportedMessage(unmetRequirements, sb);
+        }
+        catch (final IOException e) {
+            // StringBuilder doesn't throw
+            throw new Error(e);
+        }
+        return sb;
+    }
+
+    /**
+     * Writes the diagnostic message describing why no provider could be used
+     * to the specified destination, as it is generated.
+     *
+     * @param unmetRequirements the unmet requirements of each provider
+     * @param destination       where to write the message
+     * @throws IOException if the destination couldn't be written to
+     */
+    public static void appendUnsupportedMessage(final Map<Provider, List<String>> unmetRequirements, final Appendable destination) throws IOException {
+        destination.append("I don't support your platform yet.");
+        describeUnmetRequirements(unmetRequirements, destination);
+        destination.append(NEW_LINE);
+        destination.append("Please send details about your operating system version, Java version, 32- vs. 64-bit, etc.");
+        destination.append(NEW_LINE);
+        destination.append("The following System Properties and Environment Variables would be very useful.");
+        destination.append(NEW_LINE);
 
         final Properties properties = System.getProperties();
-        appendProperties(properties, sb);
-        sb.append(NEW_LINE);
+        appendProperties(properties, destination);
+        destination.append(NEW_LINE);
 
         final Map<String, String> variables = System.getenv();
-        appendVariables(variables, sb);
-        return sb;
+        appendVariables(variables, destination);
     }
 
     static Provider scanProviders(final String userAgentProvider, final List<Provider> providers, final Map<Provider, List<String>> destinationUnmetRequirements, final boolean checkOverrideIsCompatible) {
+        return scanProviders(userAgentProvider, providers, destinationUnmetRequirements, checkOverrideIsCompatible, PlatformInfo.getCurrent());
+    }
+
+    static Provider scanProviders(final String userAgentProvider, final List<Provider> providers, final Map<Provider, List<String>> destinationUnmetRequirements, final boolean checkOverrideIsCompatible, final PlatformInfo platform) {
+        return scanProviders(userAgentProvider, providers, destinationUnmetRequirements, checkOverrideIsCompatible, platform, null);
+    }
+
+    static Provider scanProviders(final String userAgentProvider, final List<Provider> providers, final Map<Provider, List<String>> destinationUnmetRequirements, final boolean checkOverrideIsCompatible, final PlatformInfo platform, final ProviderProbe probe) {
+        return scanProviders(userAgentProvider, providers, destinationUnmetRequirements, checkOverrideIsCompatible, platform, probe, true);
+    }
+
+    /**
+     * Finds the first provider that meets its requirements, unless another one was requested.
+     * With a {@link ProviderProbe}, the provider that would be picked must also have started in this
+     * environment (it is probed if that isn't known yet and {@code launchProbes} is {@code true}),
+     * and the others must not be known to fail.
+     */
+    static Provider scanProviders(final String userAgentProvider, final List<Provider> providers, final Map<Provider, List<String>> destinationUnmetRequirements, final boolean checkOverrideIsCompatible, final PlatformInfo platform, final ProviderProbe probe, final boolean launchProbes) {
 
         Provider result = null;
 
@@ -251,7 +736,10 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
             for (final Provider provider : providers) {
                 if (provider.getClassName().equals(userAgentProvider)) {
                     if (checkOverrideIsCompatible) {
-                        final List<String> requirements = provider.checkRequirements();
+                        List<String> requirements = provider.checkRequirements(platform);
+                        if (probe != null && (requirements == null || requirements.size() == 0)) {
+                            requirements = probe.check(provider, platform, launchProbes);
+                        }
                         if (requirements == null || requirements.size() == 0) {
                             result = provider;
                         }
@@ -265,7 +753,10 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         }
 
         for (final Provider provider : providers) {
-            final List<String> requirements = provider.checkRequirements();
+            List<String> requirements = provider.checkRequirements(platform);
+            if (probe != null && (requirements == null || requirements.size() == 0)) {
+                requirements = probe.check(provider, platform, launchProbes && result == null);
+            }
             if (requirements == null || requirements.size() == 0) {
                 if (result == null) {
                     result = provider;
@@ -280,6 +771,16 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
     }
 
     public static void describeUnmetRequirements(final Map<Provider, List<String>> unmetRequirements, final StringBuilder destination) {
+        try {
+            describeUnmetRequirements(unmetRequirements, (Appendable) destination);
+        }
+        catch (final IOException e) {
+            // StringBuilder doesn't throw
+            throw new Error(e);
+        }
+    }
+
+    static void describeUnmetRequirements(final Map<Provider, List<String>> unmetRequirements, final Appendable destination) throws IOException {
         for (final Map.Entry<Provider, List<String>> pair: unmetRequirements.entrySet()) {
             final Provider provider = pair.getKey();
             final List<String> requirements = pair.getValue();
@@ -293,7 +794,7 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         }
     }
 
-    static void appendProperties(final Properties properties, final StringBuilder destination) {
+    static void appendProperties(final Properties properties, final Appendable destination) throws IOException {
         final String header = "# --- BEGIN SYSTEM PROPERTIES ---";
         final String footer = "# ---- END SYSTEM PROPERTIES ----";
         final Set<String> keys = properties.stringPropertyNames();
@@ -301,7 +802,7 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         appendPairs(keys, properties, destination, header, footer);
     }
 
-    static void appendVariables(final Map<String, String> variables, final StringBuilder destination) {
+    static void appendVariables(final Map<String, String> variables, final Appendable destination) throws IOException {
         final String header = "# --- BEGIN ENVIRONMENT VARIABLES ---";
         final String footer = "# ---- END ENVIRONMENT VARIABLES ----";
         final Set<String> keys = variables.keySet();
@@ -309,42 +810,33 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
         appendPairs(keys, variables, destination, header, footer);
     }
 
-    static void appendPairs(final Set<String> keys, final Map pairs, final StringBuilder destination, final String header, final String footer) {
+    static void appendPairs(final Set<String> keys, final Map pairs, final Appendable destination, final String header, final String footer) throws IOException {
         destination.append(header).append(NEW_LINE).append(NEW_LINE);
         final String[] keyArray = new String[keys.size()];
         keys.toArray(keyArray);
         Arrays.sort(keyArray);
         for (final String key : keyArray) {
-            final String encodedKey = sortOfUrlEncode(key);
+            DIAGNOSTIC_ENCODER.encode(key, destination);
+            destination.append('=');
 
             final String value = (String) pairs.get(key);
-            final String encodedValue = value == null ? "" : sortOfUrlEncode(value);
-
-            destination.append(encodedKey).append('=').append(encodedValue).append(NEW_LINE);
+            if (value != null) {
+                DIAGNOSTIC_ENCODER.encode(value, destination);
+            }
+            destination.append(NEW_LINE);
         }
         destination.append(NEW_LINE).append(footer).append(NEW_LINE);
     }
 
     static String sortOfUrlEncode(final String s) {
-        try {
-            //noinspection UnnecessaryLocalVariable
-            final String encoded = URLEncoder.encode(s, UTF_8);
-            // encode() goes too far for our purposes, so undo some common ones for easier raw inspection
-            String result = encoded;
-            for (final Map.Entry<String, String> entry : SAFE_REPLACEMENTS.entrySet()) {
-                result = result.replace(entry.getKey(), entry.getValue());
-            }
-            return result;
-        }
-        catch (final UnsupportedEncodingException e) {
-            throw new Error(e);
-        }
+        return DIAGNOSTIC_ENCODER.encode(s);
     }
 
     static void decode(final UserAgent target, final String[] args, final InputStream inputStream, final OutputStream outputStream) {
         final PrintStream printStream = new PrintStream(outputStream);
         final InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
         final BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+        ProgressReporter.attach(printStream);
         try {
             final String methodName = args[0];
 
@@ -354,30 +846,85 @@ public class UserAgentImpl implements UserAgent, ProviderScanner {
 
                 final AuthorizationResponse result = target.requestAuthorizationCode(authorizationEndpoint, redirectUri);
 
-                printStream.println(result.toString());
+                printResponse(printStream, result.toString());
+            }
+            else if (REQUEST_AUTHORIZATION_CODES.equals(methodName)) {
+                final int count = Integer.parseInt(bufferedReader.readLine());
+                final List<AuthorizationRequest> requests = new ArrayList<AuthorizationRequest>(count);
+                for (int i = 0; i < count; i++) {
+                    final URI authorizationEndpoint = new URI(bufferedReader.readLine());
+                    final URI redirectUri = new URI(bufferedReader.readLine());
+                    requests.add(new AuthorizationRequest(authorizationEndpoint, redirectUri));
+                }
+
+                for (final AuthorizationRequest request : requests) {
+                    final AuthorizationResponse result = target.requestAuthorizationCode(request.getAuthorizationEndpoint(), request.getRedirectUri());
+
+                    // each response is sent as soon as it's available; the first error ends the batch
+                    printResponse(printStream, result.toString());
+                    printStream.flush();
+                }
+            }
+            else if (ProviderProbe.PROBE.equals(methodName)) {
+                if (ProviderProbe.awaitBrowserCreated()) {
+                    printResponse(printStream, ProviderProbe.SUCCEEDED);
+                }
+                else {
+                    printResponse(printStream, AuthorizationException.toString("probe_timeout", "The browser wasn't created in time.", null));
+                }
             }
         }
         catch (final AuthorizationException e) {
-            printStream.println(AuthorizationException.toString(e.getCode(), e.getDescription(), e.getUri()));
+            printResponse(printStream, AuthorizationException.toString(e.getCode(), e.getDescription(), e.getUri()));
         }
         catch (final IOException e) {
-            printStream.println(AuthorizationException.toString("io_exception", e.getMessage(), null));
+            printResponse(printStream, AuthorizationException.toString("io_exception", e.getMessage(), null));
         }
         catch (final URISyntaxException e) {
-            printStream.println(AuthorizationException.toString("uri_syntax_exception", e.getMessage(), null));
+            printResponse(printStream, AuthorizationException.toString("uri_syntax_exception", e.getMessage(), null));
+        }
+        catch (final NumberFormatException e) {
+            printResponse(printStream, AuthorizationException.toString("number_format_exception", e.getMessage(), null));
+        }
+        finally {
+            ProgressReporter.detach();
         }
         printStream.flush();
     }
 
+    /**
+     * Sends a response to the parent process, preceded by the requests recorded for it, if recording.
+     */
+    static void printResponse(final PrintStream printStream, final String response) {
+        final NetworkRecorder recorder = NetworkRecorder.getInstalled();
+        if (recorder != null) {
+            final String har = recorder.drainHar();
+            if (har != null) {
+                printStream.println(CAPTURE_PREFIX + har);
+            }
+        }
+        printStream.println(RESPONSE_PREFIX + response);
+    }
+
+    /**
+     * Extracts the response (i.e. the query) from the URI the browser was redirected to.
+     *
+     * @param redirectedUri the URI that matched the redirect URI
+     * @return the response; an {@code invalid_response} error if there was none, but never {@code null},
+     *          as the browsers wait until they have a response
+     */
     static String extractResponseFromRedirectUri(final String redirectedUri) {
         final URL uri;
         try {
             uri = new URL(redirectedUri);
-            return uri.getQuery();
+            final String query = uri.getQuery();
+            if (query != null) {
+                return query;
+            }
         } catch (MalformedURLException e) {
             //ignored
         }
 
-        return null;
+        return AuthorizationException.toString("invalid_response", "The redirect URI had no response in its query.", null);
     }
 }
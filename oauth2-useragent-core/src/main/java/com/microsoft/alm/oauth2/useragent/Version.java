@@ -3,40 +3,21 @@
 
 package com.microsoft.alm.oauth2.useragent;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Version
 {
-    private final static Pattern JAVA_LEGACY_RUNTIME_VERSION =
-            Pattern.compile("(\\d+)\\.(\\d+)(?:\\.(\\d+))?(?:_(\\d+))?(?:-(?:.*-)?b(\\d+))?.*");
     private final static Pattern GENERIC_VERSION =
             Pattern.compile("[^0-9]*(\\d+)\\.(\\d+)(?:\\.(\\d+))?.*");
 
     /**
-     * Java 9 and later: Version can be a single integer or in the format of x.x.x
+     * Runtime versions are usually parsed over and over for the same few JDKs,
+     * so the results are kept, up to a point.
      */
-    private final static String VNUM = "(?<VNUM>[1-9][0-9]*(?:(?:\\.0)*\\.[1-9][0-9]*)*)";
-
-    /**
-     * Java 9 and later: Pre-release identifier can be string or integer
-     */
-    private final static String PRE = "(?:-(?<PRE>[a-zA-Z0-9]+))?";
-
-    /**
-     * Java 9 and later: Promoted build number as an integer.
-     */
-    private final static String BUILD = "(?:(?<PLUS>\\+)(?<BUILD>0|[1-9][0-9]*)?)?";
-
-    /**
-     * Java 9 and later: Optional build information as a string or integer.
-     */
-    private final static String OPT = "(?:-(?<OPT>[-a-zA-Z0-9.]+))?";
-
-    /**
-     * Pattern used for Java versions 9 and later.
-     */
-    private final static Pattern JAVA_9_PLUS_VERSION = Pattern.compile(VNUM + PRE + BUILD + OPT);
+    private final static int MAXIMUM_CACHED_JAVA_RUNTIME_VERSIONS = 256;
+    private final static ConcurrentHashMap<String, Version> JAVA_RUNTIME_VERSION_CACHE = new ConcurrentHashMap<String, Version>();
 
     private final int major;
     private final int minor;
@@ -61,34 +42,234 @@ public class Version
      */
     public static Version parseJavaRuntimeVersion(final String javaRuntimeVersion)
     {
-        Matcher matcher = JAVA_9_PLUS_VERSION.matcher(javaRuntimeVersion);
+        Version result = JAVA_RUNTIME_VERSION_CACHE.get(javaRuntimeVersion);
+        if (result == null) {
+            result = parseJava9PlusVersion(javaRuntimeVersion);
+            if (result == null) {
+                result = parseJavaLegacyRuntimeVersion(javaRuntimeVersion);
+            }
+            if (result == null) {
+                throw new IllegalArgumentException(getUnrecognizedVersionErrorMessage(javaRuntimeVersion));
+            }
+            if (JAVA_RUNTIME_VERSION_CACHE.size() >= MAXIMUM_CACHED_JAVA_RUNTIME_VERSIONS) {
+                JAVA_RUNTIME_VERSION_CACHE.clear();
+            }
+            JAVA_RUNTIME_VERSION_CACHE.put(javaRuntimeVersion, result);
+        }
+        return result;
+    }
 
-        if (matcher.matches()) {
-            String[] version = matcher.group(1).split("\\.");
+    /**
+     * Java 9 and later (JEP 223): {@code $VNUM(-$PRE)?(\+$BUILD)?(-$OPT)?}, where
+     * {@code $VNUM} is dot-separated numbers without leading zeroes that doesn't end with a zero,
+     * {@code $PRE} is alphanumeric, {@code $BUILD} is a number and {@code $OPT} is alphanumeric plus {@code -} and {@code .}
+     *
+     * @param s the version string
+     * @return the version, or {@code null} if {@code s} isn't in that format
+     */
+    static Version parseJava9PlusVersion(final String s)
+    {
+        final int length = s.length();
+        // the start and end of the first 4 components of $VNUM
+        final int[] bounds = new int[8];
+        int componentCount = 0;
+        boolean lastComponentIsZero;
+        int position = 0;
+        while (true) {
+            final int start = position;
+            position = skipDigits(s, start);
+            if (position == start) {
+                return null;
+            }
+            lastComponentIsZero = s.charAt(start) == '0';
+            if (lastComponentIsZero && (componentCount == 0 || position - start > 1)) {
+                return null;
+            }
+            if (componentCount < 4) {
+                bounds[componentCount * 2] = start;
+                bounds[componentCount * 2 + 1] = position;
+            }
+            componentCount++;
+            if (position < length && s.charAt(position) == '.') {
+                position++;
+            }
+            else {
+                break;
+            }
+        }
+        if (lastComponentIsZero) {
+            return null;
+        }
+
+        if (position < length && s.charAt(position) == '-') {
+            final int preEnd = skipAlphanumerics(s, position + 1);
+            if (preEnd > position + 1 && (preEnd == length || s.charAt(preEnd) == '+' || isOptional(s, preEnd))) {
+                position = preEnd;
+            }
+            else if (isOptional(s, position)) {
+                return toJava9PlusVersion(s, bounds, componentCount, -1, -1);
+            }
+            else {
+                return null;
+            }
+        }
 
-            int feature = Integer.parseInt(version[0]);
-            int interim = (version.length > 1 ? Integer.parseInt(version[1]) : 0);
-            int update = (version.length > 2 ? Integer.parseInt(version[2]) : 0);
-            int patch = (version.length > 3 ? Integer.parseInt(version[3]) : 0);
+        int buildStart = -1;
+        int buildEnd = -1;
+        if (position < length && s.charAt(position) == '+') {
+            buildStart = position + 1;
+            buildEnd = skipDigits(s, buildStart);
+            if (buildEnd - buildStart > 1 && s.charAt(buildStart) == '0') {
+                return null;
+            }
+            position = buildEnd;
+        }
 
-            int build = integerOrZero(matcher.group(4));
+        if (position == length || isOptional(s, position)) {
+            return toJava9PlusVersion(s, bounds, componentCount, buildStart, buildEnd);
+        }
+        return null;
+    }
 
-            return new Version(feature, interim, update, patch, build);
-        } else {
-            matcher = JAVA_LEGACY_RUNTIME_VERSION.matcher(javaRuntimeVersion);
+    private static Version toJava9PlusVersion(final String s, final int[] bounds, final int componentCount, final int buildStart, final int buildEnd)
+    {
+        final int feature = parseInt(s, bounds[0], bounds[1]);
+        final int interim = componentCount > 1 ? parseInt(s, bounds[2], bounds[3]) : 0;
+        final int update = componentCount > 2 ? parseInt(s, bounds[4], bounds[5]) : 0;
+        final int patch = componentCount > 3 ? parseInt(s, bounds[6], bounds[7]) : 0;
+        final int build = buildEnd > buildStart ? parseInt(s, buildStart, buildEnd) : 0;
 
-            if (matcher.matches()) {
-                int major = Integer.parseInt(matcher.group(1));
-                int minor = Integer.parseInt(matcher.group(2));
-                int patch = integerOrZero(matcher.group(3));
-                int update = integerOrZero(matcher.group(4));
-                int build = integerOrZero(matcher.group(5));
+        return new Version(feature, interim, update, patch, build);
+    }
 
-                return new Version(major, minor, patch, update, build);
-            } else {
-                throw new IllegalArgumentException(getUnrecognizedVersionErrorMessage(javaRuntimeVersion));
+    /**
+     * Java 8 and earlier: {@code major.minor[.patch][_update][-...b<build>]...},
+     * where the last {@code -b<build>} wins.
+     *
+     * @param s the version string
+     * @return the version, or {@code null} if {@code s} isn't in that format
+     */
+    static Version parseJavaLegacyRuntimeVersion(final String s)
+    {
+        final int length = s.length();
+        // the trailing wildcard doesn't match line terminators
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return null;
+            }
+        }
+
+        final int majorEnd = skipDigits(s, 0);
+        if (majorEnd == 0 || majorEnd == length || s.charAt(majorEnd) != '.') {
+            return null;
+        }
+        final int minorStart = majorEnd + 1;
+        final int minorEnd = skipDigits(s, minorStart);
+        if (minorEnd == minorStart) {
+            return null;
+        }
+        int position = minorEnd;
+
+        int patch = 0;
+        if (isDigitAfter(s, position, '.')) {
+            final int end = skipDigits(s, position + 1);
+            patch = parseInt(s, position + 1, end);
+            position = end;
+        }
+
+        int update = 0;
+        if (isDigitAfter(s, position, '_')) {
+            final int end = skipDigits(s, position + 1);
+            update = parseInt(s, position + 1, end);
+            position = end;
+        }
+
+        int build = 0;
+        if (position < length && s.charAt(position) == '-') {
+            int buildStart = -1;
+            for (int k = length - 3; k > position; k--) {
+                if (s.charAt(k) == '-' && isDigitAfter(s, k + 1, 'b')) {
+                    buildStart = k + 2;
+                    break;
+                }
+            }
+            if (buildStart == -1 && isDigitAfter(s, position + 1, 'b')) {
+                buildStart = position + 2;
+            }
+            if (buildStart != -1) {
+                build = parseInt(s, buildStart, skipDigits(s, buildStart));
+            }
+        }
+
+        final int major = parseInt(s, 0, majorEnd);
+        final int minor = parseInt(s, minorStart, minorEnd);
+        return new Version(major, minor, patch, update, build);
+    }
+
+    private static boolean isDigitAfter(final String s, final int index, final char prefix)
+    {
+        return index + 1 < s.length() && s.charAt(index) == prefix && isDigit(s.charAt(index + 1));
+    }
+
+    private static boolean isOptional(final String s, final int index)
+    {
+        final int length = s.length();
+        if (index + 1 >= length || s.charAt(index) != '-') {
+            return false;
+        }
+        for (int i = index + 1; i < length; i++) {
+            final char c = s.charAt(i);
+            if (!isAlphanumeric(c) && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(final char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlphanumeric(final char c)
+    {
+        return isDigit(c) || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int skipDigits(final String s, final int start)
+    {
+        int i = start;
+        while (i < s.length() && isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipAlphanumerics(final String s, final int start)
+    {
+        int i = start;
+        while (i < s.length() && isAlphanumeric(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Parses the ASCII digits between {@code start} and {@code end}
+     * like {@link Integer#parseInt(String)} would, without extracting them first.
+     */
+    static int parseInt(final String s, final int start, final int end)
+    {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (result > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + s.substring(start, end) + "\"");
             }
+            result = result * 10 + digit;
         }
+        return result;
     }
 
     /**
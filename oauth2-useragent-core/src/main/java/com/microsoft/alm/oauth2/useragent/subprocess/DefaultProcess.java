@@ -33,4 +33,9 @@ public class DefaultProcess implements TestableProcess {
     public int waitFor() throws InterruptedException {
         return process.waitFor();
     }
+
+    @Override
+    public void destroy() {
+        process.destroy();
+    }
 }
@@ -0,0 +1,20 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent.subprocess;
+
+/**
+ * Receives the lines of a child process's output stream as they are read,
+ * rather than after the process has terminated.
+ */
+public interface LineListener {
+
+    /**
+     * Called from the thread consuming the stream, once for every line read.
+     * Implementations should return quickly, as the child process could block
+     * while its output is not being consumed.
+     *
+     * @param line the line that was read, without its line terminator
+     */
+    void lineRead(final String line);
+}
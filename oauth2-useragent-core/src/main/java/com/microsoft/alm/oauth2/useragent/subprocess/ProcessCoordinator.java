@@ -26,13 +26,70 @@ public class ProcessCoordinator {
      * @param process a process which has already been started
      */
     public ProcessCoordinator(final TestableProcess process) {
+        this(process, StreamConsumer.UNBOUNDED, null);
+    }
+
+    /**
+     * Initializes the ProcessCoordinator with an instance of {@link TestableProcess},
+     * retaining only the tail of the child process's stderr stream and
+     * optionally forwarding each of its lines as it arrives.
+     *
+     * @param process               a process which has already been started
+     * @param stdErrMaximumLength   the maximum number of characters of stderr to retain,
+     *                              or {@code 0} to retain all of it
+     * @param stdErrListener        a {@link LineListener} to notify of every line written to stderr,
+     *                              or {@code null}
+     */
+    public ProcessCoordinator(final TestableProcess process, final int stdErrMaximumLength, final LineListener stdErrListener) {
+        this(process, stdErrMaximumLength, stdErrListener, null);
+    }
+
+    /**
+     * Initializes the ProcessCoordinator with an instance of {@link TestableProcess},
+     * retaining only the tail of the child process's stderr stream and
+     * optionally forwarding each line of either stream as it arrives.
+     *
+     * @param process               a process which has already been started
+     * @param stdErrMaximumLength   the maximum number of characters of stderr to retain,
+     *                              or {@code 0} to retain all of it
+     * @param stdErrListener        a {@link LineListener} to notify of every line written to stderr,
+     *                              or {@code null}
+     * @param stdOutListener        a {@link LineListener} to notify of every line written to stdout,
+     *                              or {@code null}
+     */
+    public ProcessCoordinator(final TestableProcess process, final int stdErrMaximumLength, final LineListener stdErrListener, final LineListener stdOutListener) {
+        this(process, stdErrMaximumLength, stdErrListener, stdOutListener, new String[0]);
+    }
+
+    /**
+     * Initializes the ProcessCoordinator with an instance of {@link TestableProcess},
+     * retaining only the tail of the child process's stderr stream,
+     * optionally forwarding each line of either stream as it arrives and
+     * not retaining the stdout lines that start with one of the specified prefixes,
+     * so that the lines the listener consumes don't accumulate.
+     *
+     * @param process                     a process which has already been started
+     * @param stdErrMaximumLength         the maximum number of characters of stderr to retain,
+     *                                    or {@code 0} to retain all of it
+     * @param stdErrListener              a {@link LineListener} to notify of every line written to stderr,
+     *                                    or {@code null}
+     * @param stdOutListener              a {@link LineListener} to notify of every line written to stdout,
+     *                                    or {@code null}
+     * @param stdOutUnretainedPrefixes    the starts of the stdout lines to only forward to the
+     *                                    {@code stdOutListener}, which neither {@link #getStdOut()}
+     *                                    nor {@link #waitForLine(String)} will see
+     */
+    public ProcessCoordinator(final TestableProcess process, final int stdErrMaximumLength, final LineListener stdErrListener, final LineListener stdOutListener, final String... stdOutUnretainedPrefixes) {
         this.process = process;
         this.stdIn = new PrintStream(process.getOutputStream());
-        this.stdOut = new StreamConsumer(process.getInputStream());
+        this.stdOut = new StreamConsumer(process.getInputStream(), StreamConsumer.UNBOUNDED, stdOutListener, stdOutUnretainedPrefixes);
         this.stdOutThread = new Thread(stdOut);
+        // the streams might still be draining after the caller has obtained its response
+        stdOutThread.setDaemon(true);
         stdOutThread.start();
-        this.stdErr = new StreamConsumer(process.getErrorStream());
+        this.stdErr = new StreamConsumer(process.getErrorStream(), stdErrMaximumLength, stdErrListener);
         this.stdErrThread = new Thread(stdErr);
+        stdErrThread.setDaemon(true);
         stdErrThread.start();
     }
 
@@ -66,8 +123,7 @@ public class ProcessCoordinator {
      *                              and an InterruptedException is thrown.
      */
     public int waitFor() throws InterruptedException {
-        stdIn.flush();
-        stdIn.close();
+        closeStdIn();
 
         stdOutThread.join();
         stdErrThread.join();
@@ -75,6 +131,30 @@ public class ProcessCoordinator {
         return process.waitFor();
     }
 
+    /**
+     * Causes the current thread to wait until the child process writes a line
+     * starting with the specified prefix to its stdout stream, without waiting
+     * for the child process to terminate.  Subsequent calls will return subsequent
+     * such lines.
+     *
+     * @param prefix the start of the line to wait for
+     * @return the remainder of the line after the prefix;
+     *          {@code null} if the child process closed its stdout stream without
+     *          writing such a line, in which case {@link #waitFor()} should be called.
+     * @throws InterruptedException if the current thread is interrupted by another
+     *                              thread while it is waiting, then the wait is ended
+     *                              and an InterruptedException is thrown.
+     */
+    public String waitForLine(final String prefix) throws InterruptedException {
+        closeStdIn();
+        return stdOut.awaitLine(prefix);
+    }
+
+    private void closeStdIn() {
+        stdIn.flush();
+        stdIn.close();
+    }
+
     /**
      * Gets the contents of the child process's standard output stream.
      * @return a string representing stdout
@@ -84,7 +164,8 @@ public class ProcessCoordinator {
     }
 
     /**
-     * Gets the contents of the child process's standard error stream.
+     * Gets the contents of the child process's standard error stream,
+     * which could have been truncated to its most recent lines.
      * @return a string representing stderr
      */
     public String getStdErr() {
@@ -7,25 +7,71 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayDeque;
 
 class StreamConsumer implements Runnable {
 
     static final String NEW_LINE = System.getProperty("line.separator");
+    static final int UNBOUNDED = 0;
+    private static final String[] NO_PREFIXES = new String[0];
 
     private final InputStream source;
-    private final StringBuilder contents;
+    private final int maximumLength;
+    private final LineListener lineListener;
+    private final String[] unretainedPrefixes;
+    private final ArrayDeque<String> lines = new ArrayDeque<String>();
+    private int length = 0;
+    private long linesRead = 0;
+    private long nextLineToScan = 0;
+    private boolean finished = false;
 
     public StreamConsumer(final InputStream source) {
+        this(source, UNBOUNDED, null);
+    }
+
+    /**
+     * Initializes a StreamConsumer which, if {@code maximumLength} is positive,
+     * only retains the most recent output, like a ring buffer.
+     *
+     * @param source        the stream to consume
+     * @param maximumLength the maximum number of characters to retain or
+     *                      {@link #UNBOUNDED} to retain everything
+     * @param lineListener  an optional {@link LineListener} to notify as lines are read
+     */
+    public StreamConsumer(final InputStream source, final int maximumLength, final LineListener lineListener) {
+        this(source, maximumLength, lineListener, NO_PREFIXES);
+    }
+
+    /**
+     * Initializes a StreamConsumer like {@link #StreamConsumer(InputStream, int, LineListener)},
+     * except that the lines starting with one of the specified prefixes are only passed to
+     * the {@code lineListener}, without being retained.
+     *
+     * @param source             the stream to consume
+     * @param maximumLength      the maximum number of characters to retain or
+     *                           {@link #UNBOUNDED} to retain everything
+     * @param lineListener       an optional {@link LineListener} to notify as lines are read
+     * @param unretainedPrefixes the starts of the lines not to retain
+     */
+    public StreamConsumer(final InputStream source, final int maximumLength, final LineListener lineListener, final String... unretainedPrefixes) {
         if (source == null)
             throw new IllegalArgumentException("The 'source' argument is null.");
+        if (unretainedPrefixes == null)
+            throw new IllegalArgumentException("The 'unretainedPrefixes' argument is null.");
 
         this.source = source;
-        this.contents = new StringBuilder();
+        this.maximumLength = maximumLength;
+        this.lineListener = lineListener;
+        this.unretainedPrefixes = unretainedPrefixes;
     }
 
     @Override
-    public String toString() {
-        return contents.toString();
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder(length);
+        for (final String line : lines) {
+            sb.append(line).append(NEW_LINE);
+        }
+        return sb.toString();
     }
 
     @Override
@@ -35,7 +81,17 @@ class StreamConsumer implements Runnable {
             final BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
             String line;
             while ((line = bufferedReader.readLine()) != null) {
-                contents.append(line).append(NEW_LINE);
+                if (!isUnretained(line)) {
+                    append(line);
+                }
+                if (lineListener != null) {
+                    try {
+                        lineListener.lineRead(line);
+                    }
+                    catch (final RuntimeException ignored) {
+                        // a misbehaving listener must not prevent the stream from being drained
+                    }
+                }
             }
         }
         catch (final IOException ignored) {
@@ -46,6 +102,68 @@ class StreamConsumer implements Runnable {
             }
             catch (final IOException ignored) {
             }
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    boolean isUnretained(final String line) {
+        for (final String prefix : unretainedPrefixes) {
+            if (line.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits until a line starting with the specified prefix is read, skipping any lines
+     * returned by previous calls, or until the end of the stream is reached.
+     *
+     * @param prefix the start of the line to wait for
+     * @return the remainder of the line after the prefix;
+     *         {@code null} if the stream ended without such a line
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     */
+    synchronized String awaitLine(final String prefix) throws InterruptedException {
+        while (true) {
+            final long firstRetainedLine = linesRead - lines.size();
+            long lineNumber = firstRetainedLine;
+            for (final String line : lines) {
+                if (lineNumber >= nextLineToScan && line.startsWith(prefix)) {
+                    nextLineToScan = lineNumber + 1;
+                    return line.substring(prefix.length());
+                }
+                lineNumber++;
+            }
+            nextLineToScan = linesRead;
+            if (finished) {
+                return null;
+            }
+            wait();
+        }
+    }
+
+    synchronized void append(final String line) {
+        lines.addLast(line);
+        linesRead++;
+        length += line.length() + NEW_LINE.length();
+        if (maximumLength > UNBOUNDED) {
+            while (length > maximumLength && lines.size() > 1) {
+                final String oldest = lines.removeFirst();
+                length -= oldest.length() + NEW_LINE.length();
+            }
+            if (length > maximumLength) {
+                // a single line longer than the buffer: keep its tail
+                final String only = lines.removeFirst();
+                final int keep = Math.max(0, maximumLength - NEW_LINE.length());
+                final String tail = only.substring(only.length() - Math.min(keep, only.length()));
+                lines.addLast(tail);
+                length = tail.length() + NEW_LINE.length();
+            }
         }
+        notifyAll();
     }
 }
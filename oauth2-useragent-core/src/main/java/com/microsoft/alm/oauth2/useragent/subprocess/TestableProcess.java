@@ -69,4 +69,11 @@ public interface TestableProcess {
      *             an {@link InterruptedException} is thrown.
      */
     int waitFor() throws InterruptedException;
+
+    /**
+     * Kills the subprocess. Whether the subprocess represented by this
+     * <code>TestableProcess</code> object is forcibly terminated or not is
+     * implementation dependent.
+     */
+    void destroy();
 }
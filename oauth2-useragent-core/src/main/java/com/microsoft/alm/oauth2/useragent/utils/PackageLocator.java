@@ -9,20 +9,31 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.CodeSource;
 import java.security.ProtectionDomain;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 public class PackageLocator {
 
-    private static final Pattern PATTERN_DOT = Pattern.compile("\\.");
+    /**
+     * The packages located so far, shared by all the instances that use the real {@link Class} properties.
+     * A {@link Class} is unique to its {@link ClassLoader} and the keys are weak, so classes can still be unloaded.
+     */
+    private static final Map<Class<?>, File> LOCATION_CACHE = new WeakHashMap<Class<?>, File>();
 
     private final ClassPropertyAccessor classPropertyAccessor;
+    private final boolean cacheable;
 
     public PackageLocator() {
-        this(new ClassPropertyAccessor());
+        this(new ClassPropertyAccessor(), true);
     }
 
     PackageLocator(final ClassPropertyAccessor classPropertyAccessor) {
+        this(classPropertyAccessor, false);
+    }
+
+    private PackageLocator(final ClassPropertyAccessor classPropertyAccessor, final boolean cacheable) {
         this.classPropertyAccessor = classPropertyAccessor;
+        this.cacheable = cacheable;
     }
 
     /**
@@ -31,20 +42,41 @@ public class PackageLocator {
      * @param  clazz the class to be located
      * @return a {@link File} representing the archive (jar or zip) or folder that contains this class
      */
-    public File locatePackage(final Class clazz) {
+    public File locatePackage(final Class<?> clazz) {
         if (clazz == null) {
             throw new IllegalArgumentException("clazz was null");
         }
 
+        if (cacheable) {
+            synchronized (LOCATION_CACHE) {
+                final File cached = LOCATION_CACHE.get(clazz);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
         // Inspired by https://stackoverflow.com/a/12733172
         File classFilePath = getClasspathFromProtectionDomain(clazz);
         if (classFilePath == null) {
             classFilePath = getClasspathFromResource(clazz);
         }
+
+        if (cacheable) {
+            synchronized (LOCATION_CACHE) {
+                LOCATION_CACHE.put(clazz, classFilePath);
+            }
+        }
         return classFilePath;
     }
 
-    private File getClasspathFromProtectionDomain(final Class clazz) throws SecurityException {
+    static void clearCache() {
+        synchronized (LOCATION_CACHE) {
+            LOCATION_CACHE.clear();
+        }
+    }
+
+    private File getClasspathFromProtectionDomain(final Class<?> clazz) throws SecurityException {
         ProtectionDomain protectionDomain;
         try {
             protectionDomain = classPropertyAccessor.getProtectionDomain(clazz);
@@ -71,7 +103,7 @@ public class PackageLocator {
         return result;
     }
 
-    private File getClasspathFromResource(final Class clazz) {
+    private File getClasspathFromResource(final Class<?> clazz) {
 
         final String name = classPropertyAccessor.getSimpleName(clazz) + ".class";
         final URL resourceUrl = classPropertyAccessor.getResource(clazz, name);
@@ -95,20 +127,33 @@ public class PackageLocator {
         }
 
         String resourcePath;
-        try {
-            final URI resourceUri = resourceUrl.toURI();
-            final URI schemeStrippedUri = stripSchemes(resourceUri);
-            resourcePath = schemeStrippedUri.getPath();
+        final String urlPath = resourceUrl.getPath();
+        if ("file".equals(resourceUrl.getProtocol()) && urlPath.indexOf('%') == -1) {
+            // the common case: there is only one scheme and nothing to decode
+            resourcePath = urlPath;
         }
-        catch (final URISyntaxException ignored) {
-            // inspired by Kohsuke's blog post:
-            // https://community.oracle.com/blogs/kohsuke/2007/04/25/how-convert-javaneturl-javaiofile
-            resourcePath = resourceUrl.getPath();
+        else {
+            try {
+                final URI resourceUri = resourceUrl.toURI();
+                final URI schemeStrippedUri = stripSchemes(resourceUri);
+                resourcePath = schemeStrippedUri.getPath();
+            }
+            catch (final URISyntaxException ignored) {
+                // inspired by Kohsuke's blog post:
+                // https://community.oracle.com/blogs/kohsuke/2007/04/25/how-convert-javaneturl-javaiofile
+                resourcePath = urlPath;
+            }
+        }
+
+        final int lastIndexOfClassName;
+        if (!resourcePath.endsWith(".class")) {
+            // the usual CodeSource location: the jar or folder itself
+            lastIndexOfClassName = -1;
+        }
+        else {
+            final String pathToClassFile = "/" + canonicalName.replace('.', '/') + ".class";
+            lastIndexOfClassName = resourcePath.lastIndexOf(pathToClassFile);
         }
-
-        final String slashedName = PATTERN_DOT.matcher(canonicalName).replaceAll("/");
-        final String pathToClassFile = "/" + slashedName + ".class";
-        final int lastIndexOfClassName = resourcePath.lastIndexOf(pathToClassFile);
 
         final File result;
         if (lastIndexOfClassName > 0) {
@@ -144,19 +189,19 @@ public class PackageLocator {
     }
 
     static class ClassPropertyAccessor {
-        public ProtectionDomain getProtectionDomain(final Class clazz) throws SecurityException {
+        public ProtectionDomain getProtectionDomain(final Class<?> clazz) throws SecurityException {
             return clazz.getProtectionDomain();
         }
 
-        public URL getResource(final Class clazz, final String resourceName) {
+        public URL getResource(final Class<?> clazz, final String resourceName) {
             return clazz.getResource(resourceName);
         }
 
-        public String getCanonicalName(final Class clazz) {
+        public String getCanonicalName(final Class<?> clazz) {
             return clazz.getCanonicalName();
         }
 
-        public String getSimpleName(final Class clazz) {
+        public String getSimpleName(final Class<?> clazz) {
             return clazz.getSimpleName();
         }
     }
@@ -0,0 +1,165 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent.utils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Percent-encodes and decodes strings as UTF-8, in a single pass and without
+ * looking up the charset by name every time.
+ * {@link #FORM} behaves like {@link java.net.URLEncoder} and {@link java.net.URLDecoder};
+ * other instances can leave more (ASCII) characters alone.
+ */
+public class PercentEncoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Encodes like {@link java.net.URLEncoder#encode(String, String)} with UTF-8:
+     * alphanumerics and {@code .-*_} are left alone and spaces become {@code +}.
+     */
+    public static final PercentEncoder FORM = new PercentEncoder(".-*_", true);
+
+    private final boolean[] safeCharacters = new boolean[128];
+    private final boolean spaceAsPlus;
+
+    /**
+     * Creates an encoder that leaves alphanumerics and the specified characters alone.
+     *
+     * @param safeCharacters additional ASCII characters to leave alone
+     * @param spaceAsPlus    {@code true} to encode spaces as (and decode {@code +} to) spaces,
+     *                       as in {@code application/x-www-form-urlencoded}
+     */
+    public PercentEncoder(final String safeCharacters, final boolean spaceAsPlus) {
+        if (safeCharacters == null)
+            throw new IllegalArgumentException("The 'safeCharacters' argument is null.");
+        for (char c = 'a'; c <= 'z'; c++) {
+            this.safeCharacters[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            this.safeCharacters[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            this.safeCharacters[c] = true;
+        }
+        for (final char c : safeCharacters.toCharArray()) {
+            if (c >= 128 || c == '%' || (spaceAsPlus && (c == ' ' || c == '+')))
+                throw new IllegalArgumentException("The character '" + c + "' can't be left alone.");
+            this.safeCharacters[c] = true;
+        }
+        this.spaceAsPlus = spaceAsPlus;
+    }
+
+    public String encode(final CharSequence s) {
+        final StringBuilder sb = new StringBuilder(s.length() + 16);
+        encode(s, sb);
+        return sb.toString();
+    }
+
+    public void encode(final CharSequence s, final StringBuilder destination) {
+        try {
+            encode(s, (Appendable) destination);
+        }
+        catch (final IOException e) {
+            // StringBuilder doesn't throw
+            throw new Error(e);
+        }
+    }
+
+    public void encode(final CharSequence s, final Appendable destination) throws IOException {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 128 && safeCharacters[c]) {
+                destination.append(c);
+            }
+            else if (c == ' ' && spaceAsPlus) {
+                destination.append('+');
+            }
+            else if (c < 0x80) {
+                appendEncodedByte(c, destination);
+            }
+            else if (c < 0x800) {
+                appendEncodedByte(0xC0 | (c >> 6), destination);
+                appendEncodedByte(0x80 | (c & 0x3F), destination);
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+                i++;
+                appendEncodedByte(0xF0 | (codePoint >> 18), destination);
+                appendEncodedByte(0x80 | ((codePoint >> 12) & 0x3F), destination);
+                appendEncodedByte(0x80 | ((codePoint >> 6) & 0x3F), destination);
+                appendEncodedByte(0x80 | (codePoint & 0x3F), destination);
+            }
+            else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                // an unpaired surrogate can't be encoded: URLEncoder substitutes '?'
+                appendEncodedByte('?', destination);
+            }
+            else {
+                appendEncodedByte(0xE0 | (c >> 12), destination);
+                appendEncodedByte(0x80 | ((c >> 6) & 0x3F), destination);
+                appendEncodedByte(0x80 | (c & 0x3F), destination);
+            }
+        }
+    }
+
+    private static void appendEncodedByte(final int b, final Appendable destination) throws IOException {
+        destination.append('%');
+        destination.append(HEX_DIGITS[(b >> 4) & 0xF]);
+        destination.append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Decodes like {@link java.net.URLDecoder#decode(String, String)} with UTF-8,
+     * except {@code +} is only decoded to a space if this encoder encodes spaces that way.
+     *
+     * @param s the string to decode
+     * @return the decoded string, or {@code s} itself if there was nothing to decode
+     * @throws IllegalArgumentException if {@code s} contains a malformed escape sequence
+     */
+    public String decode(final String s) {
+        final int length = s.length();
+        StringBuilder sb = null;
+        byte[] bytes = null;
+        int i = 0;
+        while (i < length) {
+            final char c = s.charAt(i);
+            if (c == '%') {
+                if (sb == null) {
+                    sb = new StringBuilder(length);
+                    sb.append(s, 0, i);
+                }
+                if (bytes == null) {
+                    bytes = new byte[(length - i) / 3];
+                }
+                int count = 0;
+                while (i + 2 < length && s.charAt(i) == '%') {
+                    final int high = Character.digit(s.charAt(i + 1), 16);
+                    final int low = Character.digit(s.charAt(i + 2), 16);
+                    if (high == -1 || low == -1)
+                        throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern at index " + i + ".");
+                    bytes[count++] = (byte) ((high << 4) | low);
+                    i += 3;
+                }
+                if (i < length && s.charAt(i) == '%')
+                    throw new IllegalArgumentException("Incomplete trailing escape (%) pattern at index " + i + ".");
+                sb.append(new String(bytes, 0, count, UTF_8));
+            }
+            else {
+                final char decoded = (c == '+' && spaceAsPlus) ? ' ' : c;
+                if (sb != null) {
+                    sb.append(decoded);
+                }
+                else if (decoded != c) {
+                    sb = new StringBuilder(length);
+                    sb.append(s, 0, i).append(decoded);
+                }
+                i++;
+            }
+        }
+        return sb == null ? s : sb.toString();
+    }
+}
@@ -0,0 +1,133 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class BrowserEngineTest {
+
+    private static final PlatformInfo LINUX = new PlatformInfo("1.8.0_60-b27", "/usr/lib/jvm/java-8", "Linux", "4.2.3", "amd64", ":0", null, null);
+    private static final PlatformInfo WINDOWS = new PlatformInfo("1.8.0_60-b27", null, "Windows 10", "10.0", "amd64", null, null, null);
+    private static final String ENVIRONMENT = "/home/user/.swt/swt-x86_64.jar|1000000000000";
+
+    private File benchmarkFile;
+    private File swtJar;
+
+    @Before public void createTemporaryFiles() throws IOException {
+        benchmarkFile = File.createTempFile("engines", ".properties");
+        //noinspection ResultOfMethodCallIgnored
+        benchmarkFile.delete();
+        swtJar = File.createTempFile("swt", ".jar");
+    }
+
+    @After public void deleteTemporaryFiles() {
+        //noinspection ResultOfMethodCallIgnored
+        benchmarkFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        swtJar.delete();
+    }
+
+    private static Properties createBenchmarks(final String... enginesAndBenchmarks) {
+        final Properties result = new Properties();
+        for (int i = 0; i < enginesAndBenchmarks.length; i += 2) {
+            result.setProperty(ENVIRONMENT + "." + enginesAndBenchmarks[i], enginesAndBenchmarks[i + 1]);
+        }
+        return result;
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final BrowserEngine actual = BrowserEngine.fromProperties(properties, LINUX, benchmarkFile);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void fromProperties_explicitAndUnknown() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(BrowserEngine.BROWSER_ENGINE_PROPERTY_NAME, "WebKit");
+        Assert.assertEquals(BrowserEngine.WEBKIT, BrowserEngine.fromProperties(properties, LINUX, benchmarkFile));
+
+        properties.setProperty(BrowserEngine.BROWSER_ENGINE_PROPERTY_NAME, "trident");
+        Assert.assertEquals(null, BrowserEngine.fromProperties(properties, LINUX, benchmarkFile));
+    }
+
+    @Test public void fromProperties_explicitButUnavailable() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(BrowserEngine.BROWSER_ENGINE_PROPERTY_NAME, "edge");
+
+        final BrowserEngine actual = BrowserEngine.fromProperties(properties, LINUX, benchmarkFile);
+
+        Assert.assertEquals(BrowserEngine.DEFAULT, actual);
+    }
+
+    @Test public void fromProperties_autoUsesRecordedStartups() throws Exception {
+        final PlatformInfo platform = new PlatformInfo("1.8.0_60-b27", null, "Windows 10", "10.0", "amd64", null, null, swtJar);
+        final String environment = BrowserEngine.getEnvironment(swtJar);
+        final Properties properties = new Properties();
+        properties.setProperty(BrowserEngine.BROWSER_ENGINE_PROPERTY_NAME, "auto");
+        BrowserEngine.DEFAULT.recordStartup(benchmarkFile, environment, 1800);
+        BrowserEngine.MOZILLA.recordStartup(benchmarkFile, environment, -1);
+        BrowserEngine.EDGE.recordStartup(benchmarkFile, environment, 900);
+
+        final BrowserEngine actual = BrowserEngine.fromProperties(properties, platform, benchmarkFile);
+
+        Assert.assertEquals(BrowserEngine.EDGE, actual);
+    }
+
+    @Test public void select_benchmarksEachAvailableEngineOnce() throws Exception {
+        Assert.assertEquals(BrowserEngine.DEFAULT, BrowserEngine.select(createBenchmarks(), ENVIRONMENT, LINUX));
+        Assert.assertEquals(BrowserEngine.MOZILLA, BrowserEngine.select(createBenchmarks("DEFAULT", "2000"), ENVIRONMENT, LINUX));
+        Assert.assertEquals(BrowserEngine.WEBKIT, BrowserEngine.select(createBenchmarks("DEFAULT", "2000", "MOZILLA", "3000"), ENVIRONMENT, LINUX));
+        Assert.assertEquals(BrowserEngine.EDGE, BrowserEngine.select(createBenchmarks("DEFAULT", "2000", "MOZILLA", "3000"), ENVIRONMENT, WINDOWS));
+    }
+
+    @Test public void select_fastestOnceBenchmarked() throws Exception {
+        final Properties benchmarks = createBenchmarks("DEFAULT", "2000", "MOZILLA", "3000", "WEBKIT", "700");
+
+        final BrowserEngine actual = BrowserEngine.select(benchmarks, ENVIRONMENT, LINUX);
+
+        Assert.assertEquals(BrowserEngine.WEBKIT, actual);
+    }
+
+    @Test public void select_failedEnginesArePassedOver() throws Exception {
+        final Properties benchmarks = createBenchmarks("DEFAULT", BrowserEngine.FAILED, "MOZILLA", BrowserEngine.FAILED, "WEBKIT", BrowserEngine.FAILED);
+
+        final BrowserEngine actual = BrowserEngine.select(benchmarks, ENVIRONMENT, LINUX);
+
+        Assert.assertEquals(BrowserEngine.DEFAULT, actual);
+    }
+
+    @Test public void getEnvironment_changesWithTheRuntime() throws Exception {
+        final String before = BrowserEngine.getEnvironment(swtJar);
+        //noinspection ResultOfMethodCallIgnored
+        swtJar.setLastModified(1000000000000L);
+
+        final String after = BrowserEngine.getEnvironment(swtJar);
+
+        Assert.assertNotEquals(before, after);
+        Assert.assertEquals("none", BrowserEngine.getEnvironment(null));
+    }
+
+    @Test public void addArguments_typical() throws Exception {
+        final List<String> command = new ArrayList<String>();
+
+        BrowserEngine.MOZILLA.addArguments(command, ENVIRONMENT);
+
+        Assert.assertEquals(Arrays.asList(
+            "-DuserAgentSwtBrowserEngineSelected=MOZILLA",
+            "-DuserAgentSwtBrowserEnvironment=" + ENVIRONMENT
+        ), command);
+    }
+}
@@ -0,0 +1,268 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CacheRequest;
+import java.net.CacheResponse;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DiskResponseCacheTest {
+
+    private static final URI SCRIPT_URI = URI.create("http://login.example.com/scripts/login.js");
+    private static final Map<String, List<String>> NO_HEADERS = Collections.emptyMap();
+
+    private File root;
+
+    @Before public void createTemporaryFolder() throws IOException {
+        root = File.createTempFile("cache", "");
+        //noinspection ResultOfMethodCallIgnored
+        root.delete();
+    }
+
+    @After public void deleteTemporaryFolder() {
+        ProfileStore.delete(root);
+    }
+
+    private static HttpURLConnection createConnection(final String cacheControl, final String vary) throws IOException {
+        final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        headers.put(null, Collections.singletonList("HTTP/1.1 200 OK"));
+        headers.put("Content-Type", Collections.singletonList("application/javascript"));
+        headers.put("Cache-Control", Collections.singletonList(cacheControl));
+        final HttpURLConnection result = mock(HttpURLConnection.class);
+        when(result.getRequestMethod()).thenReturn("GET");
+        when(result.getResponseCode()).thenReturn(200);
+        when(result.getHeaderField("Cache-Control")).thenReturn(cacheControl);
+        if (vary != null) {
+            headers.put("Vary", Collections.singletonList(vary));
+            when(result.getHeaderField("Vary")).thenReturn(vary);
+        }
+        when(result.getHeaderFields()).thenReturn(headers);
+        return result;
+    }
+
+    /**
+     * Stores the response like {@link HttpURLConnection} does: after consulting the cache for its request.
+     */
+    private static CacheRequest store(final DiskResponseCache cache, final URI uri, final HttpURLConnection connection) throws IOException {
+        return store(cache, uri, NO_HEADERS, connection);
+    }
+
+    private static CacheRequest store(final DiskResponseCache cache, final URI uri, final Map<String, List<String>> requestHeaders, final HttpURLConnection connection) throws IOException {
+        final CacheResponse cached = cache.get(uri, "GET", requestHeaders);
+        if (cached != null) {
+            cached.getBody().close();
+        }
+        return cache.put(uri, connection);
+    }
+
+    private static void writeBody(final CacheRequest cacheRequest, final String body) throws IOException {
+        final OutputStream output = cacheRequest.getBody();
+        output.write(body.getBytes("UTF-8"));
+        output.close();
+    }
+
+    private static String readBody(final CacheResponse cacheResponse) throws IOException {
+        final InputStream input = cacheResponse.getBody();
+        try {
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toString("UTF-8");
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    @Test public void parseCacheControl_typical() throws Exception {
+        final Map<String, String> actual = DiskResponseCache.parseCacheControl("public, Max-Age=\"3600\", no-transform");
+
+        Assert.assertEquals(3, actual.size());
+        Assert.assertTrue(actual.containsKey("public"));
+        Assert.assertEquals("3600", actual.get("max-age"));
+        Assert.assertTrue(actual.containsKey("no-transform"));
+    }
+
+    @Test public void determineExpiration_maxAge() throws Exception {
+        final HttpURLConnection connection = createConnection("public, max-age=60", null);
+
+        final long actual = DiskResponseCache.determineExpiration(connection, 1000000L);
+
+        Assert.assertEquals(1060000L, actual);
+    }
+
+    @Test public void determineExpiration_expiresRelativeToServerDate() throws Exception {
+        final HttpURLConnection connection = createConnection(null, null);
+        when(connection.getDate()).thenReturn(5000000L);
+        when(connection.getExpiration()).thenReturn(5060000L);
+
+        final long actual = DiskResponseCache.determineExpiration(connection, 1000000L);
+
+        Assert.assertEquals(1060000L, actual);
+    }
+
+    @Test public void determineExpiration_noStore() throws Exception {
+        final HttpURLConnection connection = createConnection("no-store, max-age=60", null);
+
+        final long actual = DiskResponseCache.determineExpiration(connection, 1000000L);
+
+        Assert.assertEquals(0L, actual);
+    }
+
+    @Test public void determineExpiration_noFreshnessInformation() throws Exception {
+        final HttpURLConnection connection = createConnection(null, null);
+
+        final long actual = DiskResponseCache.determineExpiration(connection, 1000000L);
+
+        Assert.assertEquals(0L, actual);
+    }
+
+    @Test public void putThenGet_roundTrip() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        final HttpURLConnection connection = createConnection("max-age=3600", null);
+
+        writeBody(store(cut, SCRIPT_URI, connection), "alert('hello');");
+        final CacheResponse actual = cut.get(SCRIPT_URI, "GET", NO_HEADERS);
+
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(Arrays.asList("HTTP/1.1 200 OK"), actual.getHeaders().get(null));
+        Assert.assertEquals(Arrays.asList("application/javascript"), actual.getHeaders().get("Content-Type"));
+        Assert.assertEquals("alert('hello');", readBody(actual));
+    }
+
+    @Test public void put_setCookieIsNotStored() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        final HttpURLConnection connection = createConnection("max-age=3600", null);
+        when(connection.getHeaderField("Set-Cookie")).thenReturn("session=secret");
+
+        final CacheRequest actual = store(cut, SCRIPT_URI, connection);
+
+        Assert.assertNull(actual);
+    }
+
+    @Test public void put_requestWithCredentialsIsNotStored() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        final Map<String, List<String>> requestHeaders = new LinkedHashMap<String, List<String>>();
+        requestHeaders.put("Authorization", Collections.singletonList("Bearer secret"));
+
+        final CacheRequest actual = store(cut, SCRIPT_URI, requestHeaders, createConnection("max-age=3600", null));
+
+        Assert.assertNull(actual);
+    }
+
+    @Test public void put_unseenRequestIsNotStored() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        cut.get(URI.create("http://login.example.com/other.js"), "GET", NO_HEADERS);
+
+        final CacheRequest actual = cut.put(SCRIPT_URI, createConnection("max-age=3600", null));
+
+        Assert.assertNull(actual);
+    }
+
+    @Test public void put_abortedIsNotStored() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        final HttpURLConnection connection = createConnection("max-age=3600", null);
+
+        final CacheRequest cacheRequest = store(cut, SCRIPT_URI, connection);
+        cacheRequest.getBody().write(42);
+        cacheRequest.abort();
+
+        Assert.assertNull(cut.get(SCRIPT_URI, "GET", NO_HEADERS));
+        //noinspection ConstantConditions
+        Assert.assertEquals(0, root.listFiles().length);
+    }
+
+    @Test public void get_withCredentialsIsAMiss() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        writeBody(store(cut, SCRIPT_URI, createConnection("max-age=3600", null)), "alert('hello');");
+        final Map<String, List<String>> requestHeaders = new LinkedHashMap<String, List<String>>();
+        requestHeaders.put("authorization", Collections.singletonList("Bearer secret"));
+
+        final CacheResponse actual = cut.get(SCRIPT_URI, "GET", requestHeaders);
+
+        Assert.assertNull(actual);
+    }
+
+    @Test public void get_varyMismatchIsAMiss() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        final HttpURLConnection connection = createConnection("max-age=3600", "Accept-Language");
+        final Map<String, List<String>> english = new LinkedHashMap<String, List<String>>();
+        english.put("Accept-Language", Collections.singletonList("en-US"));
+        writeBody(store(cut, SCRIPT_URI, english, connection), "alert('hello');");
+        final Map<String, List<String>> french = new LinkedHashMap<String, List<String>>();
+        french.put("Accept-Language", Collections.singletonList("fr-CA"));
+
+        final CacheResponse hit = cut.get(SCRIPT_URI, "GET", english);
+        final CacheResponse miss = cut.get(SCRIPT_URI, "GET", french);
+
+        Assert.assertNotNull(hit);
+        readBody(hit);
+        Assert.assertNull(miss);
+    }
+
+    @Test public void put_evictsLeastRecentlyUsed() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 3000);
+        final URI oldUri = URI.create("http://login.example.com/old.js");
+        final URI newUri = URI.create("http://login.example.com/new.js");
+        final char[] body = new char[700];
+        Arrays.fill(body, 'x');
+        writeBody(store(cut, oldUri, createConnection("max-age=3600", null)), new String(body));
+        final File[] files = root.listFiles();
+        //noinspection ConstantConditions
+        Assert.assertEquals(1, files.length);
+        //noinspection ResultOfMethodCallIgnored
+        files[0].setLastModified(1000000000000L);
+
+        writeBody(store(cut, newUri, createConnection("max-age=3600", null)), new String(body));
+        writeBody(store(cut, newUri, createConnection("max-age=3600", null)), new String(body));
+        writeBody(store(cut, URI.create("http://login.example.com/newer.js"), createConnection("max-age=3600", null)), new String(body));
+        writeBody(store(cut, URI.create("http://login.example.com/newest.js"), createConnection("max-age=3600", null)), new String(body));
+
+        Assert.assertNull(cut.get(oldUri, "GET", NO_HEADERS));
+        final CacheResponse actual = cut.get(newUri, "GET", NO_HEADERS);
+        Assert.assertNotNull(actual);
+        readBody(actual);
+    }
+
+    @Test public void evict_staleTemporaryFilesAreDeleted() throws Exception {
+        final DiskResponseCache cut = new DiskResponseCache(root, 1024 * 1024);
+        writeBody(store(cut, SCRIPT_URI, createConnection("max-age=3600", null)), "alert('hello');");
+        final File stale = new File(root, "stale.tmp");
+        final File current = new File(root, "current.tmp");
+        Assert.assertTrue(stale.createNewFile());
+        Assert.assertTrue(current.createNewFile());
+        //noinspection ResultOfMethodCallIgnored
+        stale.setLastModified(System.currentTimeMillis() - DiskResponseCache.STALE_TEMPORARY_MILLISECONDS - 60000);
+
+        cut.evict(null);
+
+        Assert.assertFalse(stale.exists());
+        Assert.assertTrue(current.exists());
+        final CacheResponse actual = cut.get(SCRIPT_URI, "GET", NO_HEADERS);
+        Assert.assertNotNull(actual);
+        readBody(actual);
+    }
+}
@@ -0,0 +1,107 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class NetworkRecorderTest {
+
+    @Test public void toHar_typical() throws Exception {
+        final NetworkRecorder.Entry entry = new NetworkRecorder.Entry(0L, "https://login.example.com/authorize");
+        entry.status = 302;
+        entry.statusText = "Found";
+        entry.redirectUrl = "https://redirect.example.com/?code=red";
+        entry.dnsNanos = 1500000L;
+        entry.connectNanos = 20000000L;
+        entry.waitNanos = 100250000L;
+        entry.receiveNanos = 0L;
+        entry.bodySize = 0L;
+
+        final String actual = NetworkRecorder.toHar(Arrays.asList(entry), 0);
+
+        Assert.assertTrue(actual, actual.startsWith("{\"log\":{\"version\":\"1.2\","));
+        Assert.assertTrue(actual, actual.contains("\"startedDateTime\":\"1970-01-01T00:00:00.000Z\",\"time\":121.750,"));
+        Assert.assertTrue(actual, actual.contains("\"url\":\"https://login.example.com/authorize\""));
+        Assert.assertTrue(actual, actual.contains("\"status\":302,\"statusText\":\"Found\""));
+        Assert.assertTrue(actual, actual.contains("\"redirectURL\":\"https://redirect.example.com/?code=red\""));
+        Assert.assertTrue(actual, actual.contains("\"dns\":1.500,\"connect\":20.000,\"ssl\":-1,\"send\":0,\"wait\":100.250,\"receive\":0.000}"));
+        Assert.assertFalse(actual, actual.contains("\n"));
+    }
+
+    @Test public void toHar_unmeasuredAndDropped() throws Exception {
+        final NetworkRecorder.Entry entry = new NetworkRecorder.Entry(0L, "https://login.example.com/blocked");
+        entry.comment = "The request was blocked.";
+
+        final String actual = NetworkRecorder.toHar(Collections.singletonList(entry), 3);
+
+        Assert.assertTrue(actual, actual.contains("\"comment\":\"3 more entries were not recorded.\""));
+        Assert.assertTrue(actual, actual.contains("\"time\":0.000,"));
+        Assert.assertTrue(actual, actual.contains("\"dns\":-1,\"connect\":-1,"));
+        Assert.assertTrue(actual, actual.endsWith(",\"comment\":\"The request was blocked.\"}]}}"));
+    }
+
+    @Test public void appendJsonString_escapes() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+
+        NetworkRecorder.appendJsonString(sb, "a\"b\\c\r\nd\u0001e\u2028f");
+
+        Assert.assertEquals("\"a\\\"b\\\\c\\r\\nd\\u0001e\\u2028f\"", sb.toString());
+    }
+
+    @Test public void redact_onlyUrlsToTheRedirectUri() throws Exception {
+        final String redirectUri = "https://redirect.example.com/";
+
+        Assert.assertEquals("https://redirect.example.com?redacted", NetworkRecorder.redact("https://redirect.example.com?code=red&state=blue", redirectUri));
+        Assert.assertEquals("https://Redirect.example.com/callback?redacted", NetworkRecorder.redact("https://Redirect.example.com/callback#code=red", redirectUri));
+        Assert.assertEquals("https://redirect.example.com/", NetworkRecorder.redact("https://redirect.example.com/", redirectUri));
+        Assert.assertEquals("https://login.example.com/authorize?redirect_uri=https%3A%2F%2Fredirect.example.com%2F", NetworkRecorder.redact("https://login.example.com/authorize?redirect_uri=https%3A%2F%2Fredirect.example.com%2F", redirectUri));
+        Assert.assertEquals("", NetworkRecorder.redact("", redirectUri));
+    }
+
+    @Test public void record_redactsResponseToTheRedirectUri() throws Exception {
+        final NetworkRecorder cut = new NetworkRecorder();
+        cut.setRedirectUri("https://redirect.example.com");
+        final NetworkRecorder.Entry redirect = new NetworkRecorder.Entry(0L, "https://login.example.com/authorize?client_id=bar");
+        redirect.redirectUrl = "https://redirect.example.com/?code=red&state=blue";
+        final NetworkRecorder.Entry intercepted = new NetworkRecorder.Entry(0L, "https://redirect.example.com/?code=red&state=blue");
+
+        cut.record(redirect);
+        cut.record(intercepted);
+
+        final String actual = cut.drainHar();
+        Assert.assertFalse(actual, actual.contains("code=red"));
+        Assert.assertFalse(actual, actual.contains("blue"));
+        Assert.assertTrue(actual, actual.contains("\"url\":\"https://login.example.com/authorize?client_id=bar\""));
+        Assert.assertTrue(actual, actual.contains("\"redirectURL\":\"https://redirect.example.com/?redacted\""));
+    }
+
+    @Test public void drainHar_onlyOnce() throws Exception {
+        final NetworkRecorder cut = new NetworkRecorder();
+        cut.record(new NetworkRecorder.Entry(0L, "https://login.example.com/"));
+
+        final String first = cut.drainHar();
+        final String second = cut.drainHar();
+
+        Assert.assertNotNull(first);
+        Assert.assertTrue(first, first.contains("https://login.example.com/"));
+        Assert.assertNull(second);
+    }
+
+    @Test public void record_dropsBeyondMaximum() throws Exception {
+        final NetworkRecorder cut = new NetworkRecorder();
+        for (int i = 0; i < NetworkRecorder.MAXIMUM_ENTRIES + 2; i++) {
+            cut.record(new NetworkRecorder.Entry(0L, "https://login.example.com/" + i));
+        }
+
+        final String actual = cut.drainHar();
+
+        Assert.assertTrue(actual.contains("\"comment\":\"2 more entries were not recorded.\""));
+        Assert.assertTrue(actual.contains("https://login.example.com/999\""));
+        Assert.assertFalse(actual.contains("https://login.example.com/1000\""));
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PlatformInfoTest {
+
+    private static final File FAKE_JAR = new File("/opt/toolkit/toolkit.jar");
+
+    @Test public void constructor_linuxWithoutDisplay() throws Exception {
+        final PlatformInfo actual = new PlatformInfo("1.8.0_60-b27", "/usr/lib/jvm/java-8", "Linux", "4.2.3", "amd64", null, null, null);
+
+        Assert.assertTrue(actual.isLinux());
+        Assert.assertFalse(actual.isMac());
+        Assert.assertFalse(actual.isWindows());
+        Assert.assertFalse(actual.hasDesktop());
+        Assert.assertEquals(8, actual.getJavaVersion().getMinor());
+        Assert.assertEquals(60, actual.getJavaVersion().getUpdate());
+        Assert.assertEquals(4, actual.getOsVersion().getMajor());
+    }
+
+    @Test public void constructor_unrecognizedVersions() throws Exception {
+        final PlatformInfo actual = new PlatformInfo("unknown", null, "Windows 10", "ten", "x86", null, null, null);
+
+        Assert.assertEquals(null, actual.getJavaVersion());
+        Assert.assertEquals(null, actual.getOsVersion());
+        Assert.assertEquals("ten", actual.getOsVersionString());
+        Assert.assertTrue(actual.hasDesktop());
+    }
+
+    @Test public void forJavaRuntime_sameArchitectureKeepsSwtRuntime() throws Exception {
+        final PlatformInfo current = new PlatformInfo("1.8.0_60-b27", null, "Linux", "4.2.3", "amd64", ":0", null, FAKE_JAR);
+
+        final PlatformInfo actual = current.forJavaRuntime("11.0.8+10", "/usr/lib/jvm/java-11", "x86_64");
+
+        Assert.assertEquals(FAKE_JAR, actual.getSwtRuntimeJar());
+        Assert.assertEquals("x86_64", actual.getOsArch());
+    }
+
+    @Test public void forJavaRuntime_otherArchitectureDoesNotReuseSwtRuntime() throws Exception {
+        final PlatformInfo current = new PlatformInfo("1.8.0_60-b27", null, "Linux", "4.2.3", "amd64", ":0", null, FAKE_JAR);
+
+        final PlatformInfo actual = current.forJavaRuntime("1.8.0_60-b27", "/usr/lib/jvm/java-8-i386", "i386");
+
+        Assert.assertEquals(StandardWidgetToolkitProvider.getSwtRuntimeJarForArch("i386"), actual.getSwtRuntimeJar());
+        Assert.assertNotEquals(FAKE_JAR, actual.getSwtRuntimeJar());
+    }
+
+    @Test public void getCurrent_isReusedUntilRefreshed() throws Exception {
+        final PlatformInfo first = PlatformInfo.getCurrent();
+
+        final PlatformInfo second = PlatformInfo.getCurrent();
+        final PlatformInfo refreshed = PlatformInfo.refresh();
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, refreshed);
+        Assert.assertSame(refreshed, PlatformInfo.getCurrent());
+        Assert.assertEquals(System.getProperty("os.name"), refreshed.getOsName());
+    }
+
+    @Test public void javaFxProvider_usesSnapshot() throws Exception {
+        final PlatformInfo macWithJava7 = new PlatformInfo("1.7.0_71-b14", null, "Mac OS X", "10.11.0", "x86_64", null, FAKE_JAR, null);
+
+        final List<String> actual = Provider.JAVA_FX.checkRequirements(macWithJava7);
+
+        Assert.assertEquals(1, actual.size());
+        Assert.assertTrue(actual.get(0).contains("10.11"));
+    }
+
+    @Test public void javaFxProvider_augmentProcessParameters() throws Exception {
+        final PlatformInfo platform = new PlatformInfo("1.8.0_60-b27", null, "Windows 10", "10.0", "amd64", null, FAKE_JAR, null);
+        final ArrayList<String> command = new ArrayList<String>();
+        final ArrayList<String> classPath = new ArrayList<String>();
+
+        Provider.JAVA_FX.augmentProcessParameters(command, classPath, platform);
+
+        Assert.assertEquals(0, command.size());
+        Assert.assertEquals(1, classPath.size());
+        Assert.assertEquals(FAKE_JAR.getAbsolutePath(), classPath.get(0));
+    }
+
+    @Test public void standardWidgetToolkitProvider_usesSnapshot() throws Exception {
+        final PlatformInfo headlessWithoutSwt = new PlatformInfo("unknown", null, "Linux", "4.2.3", "amd64", null, null, null);
+        final PlatformInfo desktopWithSwt = new PlatformInfo("9.0.4+11", null, "Linux", "4.2.3", "amd64", ":0", null, FAKE_JAR);
+
+        final List<String> unmet = Provider.STANDARD_WIDGET_TOOLKIT.checkRequirements(headlessWithoutSwt);
+        final List<String> met = Provider.STANDARD_WIDGET_TOOLKIT.checkRequirements(desktopWithSwt);
+
+        Assert.assertEquals(3, unmet.size());
+        Assert.assertEquals(0, met.size());
+    }
+}
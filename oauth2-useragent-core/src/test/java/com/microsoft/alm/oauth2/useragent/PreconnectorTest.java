@@ -0,0 +1,36 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+public class PreconnectorTest {
+
+    @Test public void toOrigin_https() throws Exception {
+        final URI endpoint = URI.create("https://login.microsoftonline.com/common/oauth2/authorize?resource=foo&client_id=bar");
+
+        final URI actual = Preconnector.toOrigin(endpoint);
+
+        Assert.assertEquals(URI.create("https://login.microsoftonline.com/"), actual);
+    }
+
+    @Test public void toOrigin_keepsPortDropsUserInfo() throws Exception {
+        final URI endpoint = URI.create("http://user@localhost:8080/oauth2/authorize");
+
+        final URI actual = Preconnector.toOrigin(endpoint);
+
+        Assert.assertEquals(URI.create("http://localhost:8080/"), actual);
+    }
+
+    @Test public void toOrigin_notHttp() throws Exception {
+        final URI endpoint = URI.create("urn:ietf:wg:oauth:2.0:oob");
+
+        final URI actual = Preconnector.toOrigin(endpoint);
+
+        Assert.assertNull(actual);
+    }
+}
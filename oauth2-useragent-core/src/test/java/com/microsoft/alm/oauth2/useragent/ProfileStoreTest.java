@@ -0,0 +1,184 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+
+public class ProfileStoreTest {
+
+    private File root;
+
+    @Before public void createTemporaryFolder() throws IOException {
+        root = File.createTempFile("profiles", "");
+        //noinspection ResultOfMethodCallIgnored
+        root.delete();
+        //noinspection ResultOfMethodCallIgnored
+        root.mkdirs();
+    }
+
+    @After public void deleteTemporaryFolder() {
+        ProfileStore.delete(root);
+    }
+
+    private static void writeFile(final File file, final int length) throws IOException {
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(new byte[length]);
+        }
+        finally {
+            fos.close();
+        }
+    }
+
+    @Test public void toProfileName_hostOnly() throws Exception {
+        final URI endpoint = URI.create("https://Login.MicrosoftOnline.com/common/oauth2/authorize?client_id=bar");
+
+        final String actual = ProfileStore.toProfileName(endpoint);
+
+        Assert.assertEquals("login.microsoftonline.com", actual);
+    }
+
+    @Test public void toProfileName_withPortAndUserInfo() throws Exception {
+        final URI endpoint = URI.create("http://user@localhost:8080/oauth2/authorize");
+
+        final String actual = ProfileStore.toProfileName(endpoint);
+
+        Assert.assertEquals("localhost_8080", actual);
+    }
+
+    @Test public void toProfileName_ipv6() throws Exception {
+        final URI endpoint = URI.create("http://[::1]:8080/oauth2/authorize");
+
+        final String actual = ProfileStore.toProfileName(endpoint);
+
+        Assert.assertEquals("___1__8080", actual);
+    }
+
+    @Test public void toProfileName_noHost() throws Exception {
+        final URI endpoint = URI.create("urn:ietf:wg:oauth:2.0:oob");
+
+        final String actual = ProfileStore.toProfileName(endpoint);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final ProfileStore actual = ProfileStore.fromProperties(properties);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void fromProperties_negativeMaximumIgnored() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(ProfileStore.PERSISTENT_PROFILE_PROPERTY_NAME, "true");
+        properties.setProperty(ProfileStore.PROFILE_DIRECTORY_PROPERTY_NAME, root.getAbsolutePath());
+        properties.setProperty(ProfileStore.PROFILE_MAXIMUM_MEGABYTES_PROPERTY_NAME, "-1");
+
+        final ProfileStore actual = ProfileStore.fromProperties(properties);
+
+        Assert.assertEquals(ProfileStore.DEFAULT_MAXIMUM_MEGABYTES * 1024L * 1024L, actual.getMaximumBytes());
+    }
+
+    @Test public void acquire_createsDirectoryPerAuthority() throws Exception {
+        final ProfileStore cut = new ProfileStore(root, 1024);
+
+        final File first = cut.acquire(URI.create("https://login.example.com/authorize?state=1"));
+        final File second = cut.acquire(URI.create("https://login.example.com/authorize?state=2"));
+        final File third = cut.acquire(URI.create("https://other.example.com/authorize"));
+
+        Assert.assertEquals(new File(root, "login.example.com"), first);
+        Assert.assertTrue(first.isDirectory());
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(new File(root, "other.example.com"), third);
+    }
+
+    @Test public void acquire_evictsLeastRecentlyUsed() throws Exception {
+        final ProfileStore cut = new ProfileStore(root, 1000);
+        final File oldest = cut.acquire(URI.create("https://oldest.example.com/"));
+        writeFile(new File(oldest, "data"), 400);
+        //noinspection ResultOfMethodCallIgnored
+        oldest.setLastModified(1000000000000L);
+        final File older = cut.acquire(URI.create("https://older.example.com/"));
+        writeFile(new File(older, "data"), 400);
+        //noinspection ResultOfMethodCallIgnored
+        older.setLastModified(1000000001000L);
+        final File current = new File(root, "current.example.com");
+        //noinspection ResultOfMethodCallIgnored
+        current.mkdirs();
+        writeFile(new File(current, "data"), 400);
+
+        final File actual = cut.acquire(URI.create("https://current.example.com/"));
+
+        Assert.assertEquals(current, actual);
+        Assert.assertFalse(new File(oldest, "data").exists());
+        Assert.assertTrue(new File(oldest, ProfileStore.LOCK_FILE_NAME).isFile());
+        Assert.assertTrue(new File(older, "data").isFile());
+        Assert.assertTrue(current.isDirectory());
+    }
+
+    @Test public void acquire_neverEvictsTheAcquiredProfile() throws Exception {
+        final ProfileStore cut = new ProfileStore(root, 100);
+        final File current = new File(root, "current.example.com");
+        //noinspection ResultOfMethodCallIgnored
+        current.mkdirs();
+        writeFile(new File(current, "data"), 400);
+
+        final File actual = cut.acquire(URI.create("https://current.example.com/"));
+
+        Assert.assertEquals(current, actual);
+        Assert.assertTrue(new File(current, "data").isFile());
+    }
+
+    @Test public void acquire_skipsProfilesInUse() throws Exception {
+        final ProfileStore cut = new ProfileStore(root, 500);
+        final File inUse = cut.acquire(URI.create("https://inuse.example.com/"));
+        writeFile(new File(inUse, "data"), 400);
+        //noinspection ResultOfMethodCallIgnored
+        inUse.setLastModified(1000000000000L);
+        final File unused = cut.acquire(URI.create("https://unused.example.com/"));
+        writeFile(new File(unused, "data"), 400);
+        //noinspection ResultOfMethodCallIgnored
+        unused.setLastModified(1000000001000L);
+        final FileLock lock = ProfileStore.lockInUse(inUse);
+        try {
+            final File actual = cut.acquire(URI.create("https://current.example.com/"));
+
+            Assert.assertNotNull(actual);
+            Assert.assertTrue(new File(inUse, "data").isFile());
+            Assert.assertFalse(new File(unused, "data").exists());
+        }
+        finally {
+            lock.release();
+            lock.channel().close();
+        }
+    }
+
+    @Test public void acquire_skipsRecentlyAcquiredProfiles() throws Exception {
+        final ProfileStore cut = new ProfileStore(root, 500);
+        final File recent = cut.acquire(URI.create("https://recent.example.com/"));
+        writeFile(new File(recent, "data"), 400);
+        //noinspection ResultOfMethodCallIgnored
+        recent.setLastModified(System.currentTimeMillis());
+        final File current = new File(root, "current.example.com");
+        //noinspection ResultOfMethodCallIgnored
+        current.mkdirs();
+        writeFile(new File(current, "data"), 400);
+
+        cut.acquire(URI.create("https://current.example.com/"));
+
+        Assert.assertTrue(new File(recent, "data").isFile());
+    }
+}
@@ -0,0 +1,41 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProgressEventTest {
+
+    @Test public void toStringThenFromString_roundTrip() throws Exception {
+        final ProgressEvent original = new ProgressEvent(ProgressEvent.Type.LOCATION_CHANGED, 1234567890123L, "https://login.example.com/a b?c=d&e=%20");
+
+        final String framed = original.toString();
+        final ProgressEvent actual = ProgressEvent.fromString(framed);
+
+        Assert.assertEquals(-1, framed.indexOf('\n'));
+        Assert.assertEquals(ProgressEvent.Type.LOCATION_CHANGED, actual.getType());
+        Assert.assertEquals(1234567890123L, actual.getTimeMillis());
+        Assert.assertEquals("https://login.example.com/a b?c=d&e=%20", actual.getDetail());
+    }
+
+    @Test public void toStringThenFromString_noDetail() throws Exception {
+        final ProgressEvent original = new ProgressEvent(ProgressEvent.Type.WINDOW_SHOWN, 42L, null);
+
+        final ProgressEvent actual = ProgressEvent.fromString(original.toString());
+
+        Assert.assertEquals("WINDOW_SHOWN 42", original.toString());
+        Assert.assertEquals(ProgressEvent.Type.WINDOW_SHOWN, actual.getType());
+        Assert.assertEquals(42L, actual.getTimeMillis());
+        Assert.assertEquals(null, actual.getDetail());
+    }
+
+    @Test public void fromString_unknownOrMalformed() throws Exception {
+        Assert.assertNull(ProgressEvent.fromString(null));
+        Assert.assertNull(ProgressEvent.fromString("TOOLKIT_READY"));
+        Assert.assertNull(ProgressEvent.fromString("FROM_THE_FUTURE 42"));
+        Assert.assertNull(ProgressEvent.fromString("PAGE_LOADED soon"));
+        Assert.assertNull(ProgressEvent.fromString("PAGE_LOADED 42 100%"));
+    }
+}
@@ -0,0 +1,203 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+public class ProviderProbeTest {
+
+    private static final PlatformInfo PLATFORM = new PlatformInfo("1.8.0_60-b27", "/usr/lib/jvm/java-8", "Linux", "4.2.3", "amd64", ":0", null, null);
+
+    private File probeFile;
+
+    @Before public void createTemporaryFile() throws IOException {
+        probeFile = File.createTempFile("probes", ".properties");
+        //noinspection ResultOfMethodCallIgnored
+        probeFile.delete();
+    }
+
+    @After public void deleteTemporaryFile() {
+        //noinspection ResultOfMethodCallIgnored
+        probeFile.delete();
+    }
+
+    static class RecordingProcessFactory implements TestableProcessFactory {
+        private final String stdOut;
+        private final String stdErr;
+        private int launchCount = 0;
+        private List<String> lastCommand = null;
+
+        RecordingProcessFactory(final String stdOut, final String stdErr) {
+            this.stdOut = stdOut;
+            this.stdErr = stdErr;
+        }
+
+        @Override public TestableProcess create(final String... command) throws IOException {
+            launchCount++;
+            lastCommand = Arrays.asList(command);
+            return new TestProcess(stdOut, stdErr);
+        }
+    }
+
+    private static Provider createProvider(final String className) {
+        return new Provider(className) {
+            @Override public List<String> checkRequirements() {
+                return Collections.emptyList();
+            }
+
+            @Override public void augmentProcessParameters(final List<String> command, final List<String> classPath) {
+                // do nothing on purpose
+            }
+        };
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final ProviderProbe actual = ProviderProbe.fromProperties(properties, new RecordingProcessFactory("", ""));
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void check_succeededIsRemembered() throws Exception {
+        final RecordingProcessFactory processFactory = new RecordingProcessFactory(UserAgentImpl.RESPONSE_PREFIX + ProviderProbe.SUCCEEDED + "\n", "");
+        final ProviderProbe cut = new ProviderProbe(processFactory, probeFile);
+
+        final List<String> first = cut.check(TestProvider.INSTANCE, PLATFORM, true);
+        final List<String> second = cut.check(TestProvider.INSTANCE, PLATFORM, true);
+
+        Assert.assertEquals(0, first.size());
+        Assert.assertEquals(0, second.size());
+        Assert.assertEquals(1, processFactory.launchCount);
+        final List<String> command = processFactory.lastCommand;
+        Assert.assertEquals(ProviderProbe.PROBE, command.get(command.size() - 1));
+        Assert.assertTrue(command.contains("-DuserAgentSilentBudgetMilliseconds=" + ProviderProbe.TIMEOUT_MILLISECONDS));
+        final String outcome = RuntimeSelector.loadProperties(probeFile).getProperty(ProviderProbe.getEnvironment(TestProvider.INSTANCE, PLATFORM));
+        Assert.assertTrue(outcome, outcome.matches("\\d+"));
+    }
+
+    @Test public void check_crashIsRememberedWithItsReason() throws Exception {
+        final String stdErr = "\nException in thread \"main\" java.lang.UnsatisfiedLinkError: Could not load SWT library.\n\tat org.eclipse.swt.internal.Library.loadLibrary(Library.java:331)\n";
+        final RecordingProcessFactory processFactory = new RecordingProcessFactory("", stdErr);
+        final ProviderProbe cut = new ProviderProbe(processFactory, probeFile);
+
+        final List<String> first = cut.check(TestProvider.INSTANCE, PLATFORM, true);
+        final List<String> second = cut.check(TestProvider.INSTANCE, PLATFORM, true);
+
+        Assert.assertEquals(1, processFactory.launchCount);
+        Assert.assertEquals(Collections.singletonList("The toolkit failed to start when it was last probed: Exception in thread \"main\" java.lang.UnsatisfiedLinkError: Could not load SWT library."), first);
+        Assert.assertEquals(first, second);
+    }
+
+    @Test public void check_hungProbeIsKilledAndRemembered() throws Exception {
+        final PipedOutputStream stdOut = new PipedOutputStream();
+        final PipedInputStream stdOutReader = new PipedInputStream(stdOut);
+        final CountDownLatch destroyed = new CountDownLatch(1);
+        final TestProcess process = new TestProcess("") {
+            @Override public InputStream getInputStream() {
+                return stdOutReader;
+            }
+
+            @Override public int waitFor() throws InterruptedException {
+                destroyed.await();
+                return 143;
+            }
+
+            @Override public void destroy() {
+                try {
+                    stdOut.close();
+                }
+                catch (final IOException ignored) {
+                }
+                destroyed.countDown();
+            }
+        };
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final ProviderProbe cut = new ProviderProbe(processFactory, probeFile, 100);
+
+        final List<String> actual = cut.check(TestProvider.INSTANCE, PLATFORM, true);
+
+        Assert.assertEquals(Collections.singletonList("The toolkit failed to start when it was last probed: " + ProviderProbe.TIMED_OUT_REASON), actual);
+        Assert.assertEquals(0, destroyed.getCount());
+    }
+
+    @Test public void check_unknownIsNotProbedUnlessAsked() throws Exception {
+        final RecordingProcessFactory processFactory = new RecordingProcessFactory("", "crash");
+        final ProviderProbe cut = new ProviderProbe(processFactory, probeFile);
+
+        final List<String> actual = cut.check(TestProvider.INSTANCE, PLATFORM, false);
+
+        Assert.assertEquals(0, actual.size());
+        Assert.assertEquals(0, processFactory.launchCount);
+    }
+
+    @Test public void isStale_failuresAreRetriedAfterADay() throws Exception {
+        Assert.assertFalse(ProviderProbe.isStale("1234", 5000000000000L));
+        Assert.assertFalse(ProviderProbe.isStale("failed:4999999999000:crash", 5000000000000L));
+        Assert.assertTrue(ProviderProbe.isStale("failed:4900000000000:crash", 5000000000000L));
+        Assert.assertTrue(ProviderProbe.isStale("failed:garbage", 5000000000000L));
+    }
+
+    @Test public void findReason_noStdErr() throws Exception {
+        final String actual = ProviderProbe.findReason(" \r\n", 134);
+
+        Assert.assertEquals("The process exited with code 134.", actual);
+    }
+
+    @Test public void scanProviders_knownBadProviderIsSkipped() throws Exception {
+        final Provider broken = createProvider("Broken");
+        final Provider working = createProvider("Working");
+        final Properties probes = new Properties();
+        probes.setProperty(ProviderProbe.getEnvironment(broken, PLATFORM), "failed:" + System.currentTimeMillis() + ":no GTK");
+        RuntimeSelector.saveProperties(probeFile, probes, null);
+        final RecordingProcessFactory processFactory = new RecordingProcessFactory(UserAgentImpl.RESPONSE_PREFIX + ProviderProbe.SUCCEEDED + "\n", "");
+        final ProviderProbe probe = new ProviderProbe(processFactory, probeFile);
+        final Map<Provider, List<String>> unmetRequirements = new LinkedHashMap<Provider, List<String>>();
+
+        final Provider actual = UserAgentImpl.scanProviders(null, Arrays.asList(broken, working), unmetRequirements, true, PLATFORM, probe);
+
+        Assert.assertEquals(working, actual);
+        Assert.assertEquals(1, processFactory.launchCount);
+        Assert.assertEquals(Collections.singletonList("The toolkit failed to start when it was last probed: no GTK"), unmetRequirements.get(broken));
+    }
+
+    @Test public void scanProviders_queryDoesNotLaunchProbes() throws Exception {
+        final Provider broken = createProvider("Broken");
+        final Provider working = createProvider("Working");
+        final Properties probes = new Properties();
+        probes.setProperty(ProviderProbe.getEnvironment(broken, PLATFORM), "failed:" + System.currentTimeMillis() + ":no GTK");
+        RuntimeSelector.saveProperties(probeFile, probes, null);
+        final RecordingProcessFactory processFactory = new RecordingProcessFactory("", "crash");
+        final ProviderProbe probe = new ProviderProbe(processFactory, probeFile);
+        final Map<Provider, List<String>> unmetRequirements = new LinkedHashMap<Provider, List<String>>();
+
+        final Provider actual = UserAgentImpl.scanProviders(null, Arrays.asList(broken, working), unmetRequirements, true, PLATFORM, probe, false);
+
+        Assert.assertEquals(working, actual);
+        Assert.assertEquals(0, processFactory.launchCount);
+        Assert.assertEquals(Collections.singletonList("The toolkit failed to start when it was last probed: no GTK"), unmetRequirements.get(broken));
+    }
+}
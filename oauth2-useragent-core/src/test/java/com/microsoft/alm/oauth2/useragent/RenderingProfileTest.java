@@ -0,0 +1,165 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class RenderingProfileTest {
+
+    private static final String LOCAL = "/usr/lib/jvm/java-8|local";
+    private static final String REMOTE = "/usr/lib/jvm/java-8|remote";
+
+    private File probeFile;
+
+    @Before public void createTemporaryFile() throws IOException {
+        probeFile = File.createTempFile("rendering", ".properties");
+        //noinspection ResultOfMethodCallIgnored
+        probeFile.delete();
+    }
+
+    @After public void deleteTemporaryFile() {
+        //noinspection ResultOfMethodCallIgnored
+        probeFile.delete();
+    }
+
+    private static Properties createProbes(final String environment, final String... profilesAndProbes) {
+        final Properties result = new Properties();
+        for (int i = 0; i < profilesAndProbes.length; i += 2) {
+            result.setProperty(environment + "." + profilesAndProbes[i], profilesAndProbes[i + 1]);
+        }
+        return result;
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final RenderingProfile actual = RenderingProfile.fromProperties(properties, LOCAL, probeFile);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void fromProperties_explicitAndUnknown() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(RenderingProfile.RENDERING_PROFILE_PROPERTY_NAME, " capped_vram ");
+        Assert.assertEquals(RenderingProfile.CAPPED_VRAM, RenderingProfile.fromProperties(properties, LOCAL, probeFile));
+
+        properties.setProperty(RenderingProfile.RENDERING_PROFILE_PROPERTY_NAME, "turbo");
+        Assert.assertEquals(null, RenderingProfile.fromProperties(properties, LOCAL, probeFile));
+    }
+
+    @Test public void fromProperties_autoUsesRecordedStartups() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(RenderingProfile.RENDERING_PROFILE_PROPERTY_NAME, "AUTO");
+        RenderingProfile.HARDWARE.recordStartup(probeFile, LOCAL, 0, true);
+        RenderingProfile.SOFTWARE.recordStartup(probeFile, LOCAL, 900, false);
+
+        final RenderingProfile actual = RenderingProfile.fromProperties(properties, LOCAL, probeFile);
+
+        Assert.assertEquals(RenderingProfile.SOFTWARE, actual);
+    }
+
+    @Test public void select_nothingRecorded() throws Exception {
+        final Properties probes = new Properties();
+
+        Assert.assertEquals(RenderingProfile.HARDWARE, RenderingProfile.select(probes, LOCAL));
+        Assert.assertEquals(RenderingProfile.SOFTWARE, RenderingProfile.select(probes, REMOTE));
+    }
+
+    @Test public void select_fastEnoughIsKept() throws Exception {
+        final Properties probes = createProbes(LOCAL, "HARDWARE", "1200");
+
+        final RenderingProfile actual = RenderingProfile.select(probes, LOCAL);
+
+        Assert.assertEquals(RenderingProfile.HARDWARE, actual);
+    }
+
+    @Test public void select_slowTriesTheNextOne() throws Exception {
+        final Properties probes = createProbes(LOCAL, "HARDWARE", "4500");
+
+        final RenderingProfile actual = RenderingProfile.select(probes, LOCAL);
+
+        Assert.assertEquals(RenderingProfile.CAPPED_VRAM, actual);
+    }
+
+    @Test public void select_allSlowPicksTheFastest() throws Exception {
+        final Properties probes = createProbes(REMOTE, "SOFTWARE", "3000", "CAPPED_VRAM", "2500", "HARDWARE", "6000");
+
+        final RenderingProfile actual = RenderingProfile.select(probes, REMOTE);
+
+        Assert.assertEquals(RenderingProfile.CAPPED_VRAM, actual);
+    }
+
+    @Test public void select_fallbackSkipsTheOtherHardwareProfiles() throws Exception {
+        final Properties probes = createProbes(LOCAL, "HARDWARE", RenderingProfile.FELL_BACK);
+
+        final RenderingProfile actual = RenderingProfile.select(probes, LOCAL);
+
+        Assert.assertEquals(RenderingProfile.SOFTWARE, actual);
+    }
+
+    @Test public void select_otherEnvironmentsAreIgnored() throws Exception {
+        final Properties probes = createProbes(LOCAL, "HARDWARE", RenderingProfile.FELL_BACK);
+
+        final RenderingProfile actual = RenderingProfile.select(probes, "/opt/java/jdk-8|local");
+
+        Assert.assertEquals(RenderingProfile.HARDWARE, actual);
+    }
+
+    @Test public void isRemoteSession_typical() throws Exception {
+        final Map<String, String> variables = new HashMap<String, String>();
+        Assert.assertFalse(RenderingProfile.isRemoteSession(variables));
+
+        variables.put("DISPLAY", ":0");
+        variables.put("SESSIONNAME", "Console");
+        Assert.assertFalse(RenderingProfile.isRemoteSession(variables));
+
+        variables.put("DISPLAY", "/private/tmp/com.apple.launchd.X5no1ibGbp/org.macosforge.xquartz:0");
+        Assert.assertFalse(RenderingProfile.isRemoteSession(variables));
+
+        variables.put("SESSIONNAME", "RDP-Tcp#3");
+        Assert.assertTrue(RenderingProfile.isRemoteSession(variables));
+        variables.remove("SESSIONNAME");
+
+        variables.put("DISPLAY", "localhost:10.0");
+        Assert.assertTrue(RenderingProfile.isRemoteSession(variables));
+    }
+
+    @Test public void addArguments_software() throws Exception {
+        final List<String> command = new ArrayList<String>();
+
+        RenderingProfile.SOFTWARE.addArguments(command, REMOTE);
+
+        Assert.assertEquals(Arrays.asList(
+            "-Dprism.order=sw",
+            "-Dprism.vsync=false",
+            "-Djavafx.animation.pulse=30",
+            "-DuserAgentPrewarmFonts=true",
+            "-DuserAgentRenderingProfileSelected=SOFTWARE",
+            "-DuserAgentRenderingEnvironment=" + REMOTE
+        ), command);
+    }
+
+    @Test public void addArguments_hardwareLeavesJavaFxAlone() throws Exception {
+        final List<String> command = new ArrayList<String>();
+
+        RenderingProfile.HARDWARE.addArguments(command, LOCAL);
+
+        Assert.assertEquals(Arrays.asList(
+            "-DuserAgentRenderingProfileSelected=HARDWARE",
+            "-DuserAgentRenderingEnvironment=" + LOCAL
+        ), command);
+    }
+}
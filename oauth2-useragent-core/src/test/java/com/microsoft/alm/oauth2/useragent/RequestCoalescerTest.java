@@ -0,0 +1,150 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class RequestCoalescerTest {
+
+    private static final URI REDIRECT_URI = URI.create("https://redirect.example.com");
+
+    private static class BlockingRequest implements RequestCoalescer.Request {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger executions;
+        private final String code;
+
+        BlockingRequest(final AtomicInteger executions, final String code) {
+            this.executions = executions;
+            this.code = code;
+        }
+
+        @Override
+        public AuthorizationResponse execute() throws AuthorizationException {
+            executions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            }
+            catch (final InterruptedException e) {
+                throw new AuthorizationException("interrupted_exception");
+            }
+            return new AuthorizationResponse(code, null);
+        }
+    }
+
+    private static Thread startExecuting(final RequestCoalescer cut, final URI endpoint, final RequestCoalescer.Request request, final AtomicReference<Object> result) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    result.set(cut.execute(endpoint, REDIRECT_URI, request));
+                }
+                catch (final AuthorizationException e) {
+                    result.set(e);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForWaiting(final Thread thread) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test public void toKey_ignoresStateAndCase() throws Exception {
+        final URI first = URI.create("https://Login.Example.com/common/oauth2/authorize?client_id=bar&resource=foo&state=1");
+        final URI second = URI.create("https://login.example.com/common/oauth2/authorize?state=2&resource=foo&client_id=bar");
+
+        Assert.assertEquals(RequestCoalescer.toKey(first, REDIRECT_URI), RequestCoalescer.toKey(second, REDIRECT_URI));
+    }
+
+    @Test public void toKey_scopeMatters() throws Exception {
+        final URI first = URI.create("https://login.example.com/oauth2/authorize?client_id=bar&scope=openid");
+        final URI second = URI.create("https://login.example.com/oauth2/authorize?client_id=bar&scope=openid%20email");
+
+        Assert.assertFalse(RequestCoalescer.toKey(first, REDIRECT_URI).equals(RequestCoalescer.toKey(second, REDIRECT_URI)));
+    }
+
+    @Test public void execute_identicalRequestsShareTheResponse() throws Exception {
+        final RequestCoalescer cut = new RequestCoalescer();
+        final URI endpoint = URI.create("https://login.example.com/oauth2/authorize?client_id=bar&state=1");
+        final AtomicInteger executions = new AtomicInteger();
+        final BlockingRequest leaderRequest = new BlockingRequest(executions, "red");
+        final BlockingRequest followerRequest = new BlockingRequest(executions, "green");
+        final AtomicReference<Object> leaderResult = new AtomicReference<Object>();
+        final AtomicReference<Object> followerResult = new AtomicReference<Object>();
+
+        final Thread leader = startExecuting(cut, endpoint, leaderRequest, leaderResult);
+        Assert.assertTrue(leaderRequest.started.await(5, TimeUnit.SECONDS));
+        final Thread follower = startExecuting(cut, endpoint, followerRequest, followerResult);
+        waitForWaiting(follower);
+        leaderRequest.release.countDown();
+        leader.join();
+        follower.join();
+
+        Assert.assertEquals(1, executions.get());
+        Assert.assertSame(leaderResult.get(), followerResult.get());
+        Assert.assertEquals("red", ((AuthorizationResponse) followerResult.get()).getCode());
+    }
+
+    @Test public void execute_equivalentRequestRunsAfterTheOneInFlight() throws Exception {
+        final RequestCoalescer cut = new RequestCoalescer();
+        final URI leaderEndpoint = URI.create("https://login.example.com/oauth2/authorize?client_id=bar&state=1");
+        final URI followerEndpoint = URI.create("https://login.example.com/oauth2/authorize?client_id=bar&state=2");
+        final AtomicInteger executions = new AtomicInteger();
+        final BlockingRequest leaderRequest = new BlockingRequest(executions, "red");
+        final BlockingRequest followerRequest = new BlockingRequest(executions, "green");
+        followerRequest.release.countDown();
+        final AtomicReference<Object> leaderResult = new AtomicReference<Object>();
+        final AtomicReference<Object> followerResult = new AtomicReference<Object>();
+
+        final Thread leader = startExecuting(cut, leaderEndpoint, leaderRequest, leaderResult);
+        Assert.assertTrue(leaderRequest.started.await(5, TimeUnit.SECONDS));
+        final Thread follower = startExecuting(cut, followerEndpoint, followerRequest, followerResult);
+        waitForWaiting(follower);
+        Assert.assertEquals(1, executions.get());
+        leaderRequest.release.countDown();
+        leader.join();
+        follower.join();
+
+        Assert.assertEquals(2, executions.get());
+        Assert.assertEquals("red", ((AuthorizationResponse) leaderResult.get()).getCode());
+        Assert.assertEquals("green", ((AuthorizationResponse) followerResult.get()).getCode());
+    }
+
+    @Test public void execute_unrelatedRequestsDoNotWait() throws Exception {
+        final RequestCoalescer cut = new RequestCoalescer();
+        final URI leaderEndpoint = URI.create("https://login.example.com/oauth2/authorize?client_id=bar");
+        final URI otherEndpoint = URI.create("https://login.example.com/oauth2/authorize?client_id=baz");
+        final AtomicInteger executions = new AtomicInteger();
+        final BlockingRequest leaderRequest = new BlockingRequest(executions, "red");
+        final AtomicReference<Object> leaderResult = new AtomicReference<Object>();
+
+        final Thread leader = startExecuting(cut, leaderEndpoint, leaderRequest, leaderResult);
+        Assert.assertTrue(leaderRequest.started.await(5, TimeUnit.SECONDS));
+        final AuthorizationResponse actual = cut.execute(otherEndpoint, REDIRECT_URI, new RequestCoalescer.Request() {
+            @Override
+            public AuthorizationResponse execute() throws AuthorizationException {
+                return new AuthorizationResponse("blue", null);
+            }
+        });
+        leaderRequest.release.countDown();
+        leader.join();
+
+        Assert.assertEquals("blue", actual.getCode());
+    }
+}
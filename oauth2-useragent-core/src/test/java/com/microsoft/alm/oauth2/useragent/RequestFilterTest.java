@@ -0,0 +1,104 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.Properties;
+
+public class RequestFilterTest {
+
+    private final ByteArrayOutputStream reported = new ByteArrayOutputStream();
+
+    @Before public void attachProgressReporter() {
+        ProgressReporter.attach(new PrintStream(reported));
+    }
+
+    @After public void detachProgressReporter() {
+        ProgressReporter.detach();
+    }
+
+    private static RequestFilter createFilter(final String rules) {
+        final Properties properties = new Properties();
+        properties.setProperty(RequestFilter.REQUEST_FILTER_PROPERTY_NAME, rules);
+        return RequestFilter.fromProperties(properties);
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final RequestFilter actual = RequestFilter.fromProperties(properties);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void fromProperties_malformedRulesAreIgnored() throws Exception {
+        final RequestFilter actual = createFilter("block:example.com; deny:; deny:*.*.com; deny:a*b.com; deny:example.com/a*b ;deny:example.com/ok*");
+
+        Assert.assertEquals(1, actual.getRuleCount());
+    }
+
+    @Test public void isAllowed_hostAndDomainPatterns() throws Exception {
+        final RequestFilter cut = createFilter("deny:*.google-analytics.com;deny:fonts.example.com");
+
+        Assert.assertFalse(cut.isAllowed("www.google-analytics.com", "/collect"));
+        Assert.assertFalse(cut.isAllowed("Google-Analytics.com", "/collect"));
+        Assert.assertFalse(cut.isAllowed("fonts.example.com", "/font.woff"));
+        Assert.assertTrue(cut.isAllowed("example.com", "/"));
+        Assert.assertTrue(cut.isAllowed("notgoogle-analytics.com", "/collect"));
+        Assert.assertTrue(cut.isAllowed("login.example.com", "/"));
+        Assert.assertTrue(cut.isAllowed(null, null));
+    }
+
+    @Test public void isAllowed_pathPrefixes() throws Exception {
+        final RequestFilter cut = createFilter("deny:login.example.com/telemetry*;deny:*/beacon");
+
+        Assert.assertFalse(cut.isAllowed("login.example.com", "/telemetry/v2"));
+        Assert.assertTrue(cut.isAllowed("login.example.com", "/oauth2/authorize"));
+        Assert.assertFalse(cut.isAllowed("cdn.example.net", "/beacon?id=1"));
+        Assert.assertTrue(cut.isAllowed("cdn.example.net", "/script.js"));
+        Assert.assertTrue(cut.isAllowed("cdn.example.net", null));
+    }
+
+    @Test public void isAllowed_firstMatchingRuleWins() throws Exception {
+        final RequestFilter cut = createFilter("allow:login.example.com;allow:*.example.com/oauth2;deny:*.example.com;allow:*");
+
+        Assert.assertTrue(cut.isAllowed("login.example.com", "/telemetry"));
+        Assert.assertTrue(cut.isAllowed("cdn.example.com", "/oauth2/authorize"));
+        Assert.assertFalse(cut.isAllowed("cdn.example.com", "/telemetry"));
+        Assert.assertTrue(cut.isAllowed("other.example.net", "/"));
+    }
+
+    @Test public void isAllowed_denyEverythingElse() throws Exception {
+        final RequestFilter cut = createFilter("deny:*;allow:login.example.com");
+
+        Assert.assertFalse(cut.isAllowed("login.example.com", "/"));
+    }
+
+    @Test public void allow_countsBlockedRequests() throws Exception {
+        final RequestFilter cut = createFilter("deny:*.google-analytics.com");
+
+        Assert.assertTrue(cut.allow(URI.create("https://login.example.com/oauth2/authorize")));
+        Assert.assertFalse(cut.allow(URI.create("https://www.google-analytics.com/collect?v=1")));
+        Assert.assertFalse(cut.allow(URI.create("https://ssl.google-analytics.com/ga.js")));
+        Assert.assertFalse(cut.allow(URI.create("https://ssl.google-analytics.com/r/collect")));
+        Assert.assertTrue(cut.allow(URI.create("urn:ietf:wg:oauth:2.0:oob")));
+
+        Assert.assertEquals(3, cut.getBlockedCount());
+        final Map<String, Integer> actual = cut.getBlockedCountsByHost();
+        Assert.assertEquals(2, actual.size());
+        Assert.assertEquals(Integer.valueOf(1), actual.get("www.google-analytics.com"));
+        Assert.assertEquals(Integer.valueOf(2), actual.get("ssl.google-analytics.com"));
+        final String[] lines = reported.toString("UTF-8").split(System.getProperty("line.separator"));
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0], lines[0].startsWith(UserAgentImpl.EVENT_PREFIX + "REQUEST_BLOCKED "));
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public class RequestSchedulerTest {
+
+    private static Thread startAcquiring(final RequestScheduler cut, final int priority, final List<Integer> startOrder) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cut.acquire(priority);
+                    startOrder.add(priority);
+                    cut.release();
+                }
+                catch (final InterruptedException ignored) {
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForQueued(final RequestScheduler cut, final int expectedQueuedCount) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (cut.getQueuedCount() < expectedQueuedCount && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(expectedQueuedCount, cut.getQueuedCount());
+    }
+
+    @Test public void getMaxConcurrentRequests_fromProperties() throws Exception {
+        final Properties properties = new Properties();
+        Assert.assertEquals(RequestScheduler.DEFAULT_MAX_CONCURRENT_REQUESTS, RequestScheduler.getMaxConcurrentRequests(properties));
+
+        properties.setProperty(RequestScheduler.MAX_CONCURRENT_REQUESTS_PROPERTY_NAME, "1");
+        Assert.assertEquals(1, RequestScheduler.getMaxConcurrentRequests(properties));
+
+        properties.setProperty(RequestScheduler.MAX_CONCURRENT_REQUESTS_PROPERTY_NAME, "0");
+        Assert.assertEquals(RequestScheduler.DEFAULT_MAX_CONCURRENT_REQUESTS, RequestScheduler.getMaxConcurrentRequests(properties));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroConcurrency() throws Exception {
+        new RequestScheduler(0);
+    }
+
+    @Test public void acquire_withinLimitDoesNotWait() throws Exception {
+        final RequestScheduler cut = new RequestScheduler(2);
+
+        cut.acquire(RequestScheduler.DEFAULT_PRIORITY);
+        cut.acquire(RequestScheduler.DEFAULT_PRIORITY);
+
+        Assert.assertEquals(2, cut.getRunningCount());
+        Assert.assertEquals(0, cut.getQueuedCount());
+        Assert.assertEquals(2, cut.getStartedCount());
+        cut.release();
+        cut.release();
+        Assert.assertEquals(0, cut.getRunningCount());
+    }
+
+    @Test public void acquire_priorityThenArrivalOrder() throws Exception {
+        final RequestScheduler cut = new RequestScheduler(1);
+        final List<Integer> startOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        cut.acquire(RequestScheduler.DEFAULT_PRIORITY);
+
+        final Thread first = startAcquiring(cut, 1, startOrder);
+        waitForQueued(cut, 1);
+        final Thread second = startAcquiring(cut, 5, startOrder);
+        waitForQueued(cut, 2);
+        final Thread third = startAcquiring(cut, 1, startOrder);
+        waitForQueued(cut, 3);
+        final Thread fourth = startAcquiring(cut, 0, startOrder);
+        waitForQueued(cut, 4);
+        cut.release();
+        first.join();
+        second.join();
+        third.join();
+        fourth.join();
+
+        Assert.assertEquals(Arrays.asList(5, 1, 1, 0), startOrder);
+        Assert.assertEquals(5, cut.getStartedCount());
+        Assert.assertTrue(cut.getMaxQueueTimeMillis() > 0);
+        Assert.assertTrue(cut.getTotalQueueTimeMillis() >= cut.getMaxQueueTimeMillis());
+    }
+
+    @Test public void acquire_interruptedLeavesTheQueue() throws Exception {
+        final RequestScheduler cut = new RequestScheduler(1);
+        final List<Integer> startOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        cut.acquire(RequestScheduler.DEFAULT_PRIORITY);
+        final Thread waiter = startAcquiring(cut, RequestScheduler.DEFAULT_PRIORITY, startOrder);
+        waitForQueued(cut, 1);
+
+        waiter.interrupt();
+        waiter.join();
+
+        Assert.assertEquals(0, cut.getQueuedCount());
+        Assert.assertEquals(1, cut.getRunningCount());
+        Assert.assertEquals(0, startOrder.size());
+    }
+}
@@ -0,0 +1,300 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcess;
+import com.microsoft.alm.oauth2.useragent.subprocess.TestableProcessFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+public class RuntimeSelectorTest {
+
+    private static final TestableProcessFactory UNUSED_PROCESS_FACTORY = new TestableProcessFactory() {
+        @Override public TestableProcess create(final String... command) throws IOException {
+            throw new IOException("Not expected to be called.");
+        }
+    };
+
+    private File root;
+    private PlatformInfo current;
+
+    @Before public void createTemporaryFolder() throws IOException {
+        root = File.createTempFile("runtimes", "");
+        //noinspection ResultOfMethodCallIgnored
+        root.delete();
+        //noinspection ResultOfMethodCallIgnored
+        root.mkdirs();
+        final File currentHome = createRuntime("current", "11.0.2+9", false);
+        current = new PlatformInfo("11.0.2+9", currentHome.getAbsolutePath(), "Linux", "4.2.3", "amd64", ":0", null, null);
+    }
+
+    @After public void deleteTemporaryFolder() {
+        ProfileStore.delete(root);
+    }
+
+    private static void writeFile(final File file, final String contents) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(contents.getBytes("UTF-8"));
+        }
+        finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Lays out a fake JDK; a JDK 8 one has its runtime in a {@code jre} sub-folder.
+     */
+    private File createRuntime(final String name, final String version, final boolean withJavaFx) throws IOException {
+        final File jdk = new File(root, name);
+        final boolean legacy = version.startsWith("1.");
+        final File javaHome = legacy ? new File(jdk, "jre") : jdk;
+        writeFile(new File(jdk, "release"), "JAVA_VERSION=\"" + version + "\"\nOS_ARCH=\"amd64\"\n");
+        writeFile(new File(javaHome, "bin/java"), "");
+        if (withJavaFx) {
+            writeFile(new File(javaHome, "lib/ext/jfxrt.jar"), "");
+        }
+        return jdk;
+    }
+
+    private static class TimedRuntimeSelector extends RuntimeSelector {
+        private final Map<String, Long> startupMillisByHome;
+        private final List<File> measured = new ArrayList<File>();
+
+        TimedRuntimeSelector(final File rankingFile, final Map<String, Long> startupMillisByHome) {
+            super(UNUSED_PROCESS_FACTORY, rankingFile);
+            this.startupMillisByHome = startupMillisByHome;
+        }
+
+        @Override long measureStartupMillis(final File java) {
+            measured.add(java);
+            File folder = java;
+            while (!startupMillisByHome.containsKey(folder.getName())) {
+                folder = folder.getParentFile();
+            }
+            return startupMillisByHome.get(folder.getName());
+        }
+    }
+
+    @Test public void fromProperties_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+
+        final RuntimeSelector actual = RuntimeSelector.fromProperties(properties, UNUSED_PROCESS_FACTORY);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void readRelease_quotedValues() throws Exception {
+        final File releaseFile = new File(root, "release");
+        writeFile(releaseFile, "IMPLEMENTOR=\"Oracle Corporation\"\nJAVA_RUNTIME_VERSION=\"11.0.2+9-LTS\"\nMODULES=\"java.base\"\n");
+
+        final Properties actual = RuntimeSelector.readRelease(releaseFile);
+
+        Assert.assertEquals("Oracle Corporation", actual.getProperty("IMPLEMENTOR"));
+        Assert.assertEquals("11.0.2+9-LTS", actual.getProperty("JAVA_RUNTIME_VERSION"));
+    }
+
+    @Test public void describe_jdk8WithJavaFx() throws Exception {
+        final File jdk = createRuntime("jdk8", "1.8.0_252", true);
+
+        final PlatformInfo actual = RuntimeSelector.describe(RuntimeSelector.toJavaHome(jdk), current);
+
+        Assert.assertEquals(new File(jdk, "jre").getAbsolutePath(), actual.getJavaHome());
+        Assert.assertEquals(8, actual.getJavaVersion().getMinor());
+        Assert.assertEquals(252, actual.getJavaVersion().getUpdate());
+        Assert.assertEquals(new File(jdk, "jre/lib/ext/jfxrt.jar").getAbsolutePath(), actual.getJavaFxJar().getAbsolutePath());
+        Assert.assertTrue(actual.hasDesktop());
+        Assert.assertEquals(0, Provider.JAVA_FX.checkRequirements(actual).size());
+    }
+
+    @Test public void describe_notARuntime() throws Exception {
+        final File folder = new File(root, "empty");
+        //noinspection ResultOfMethodCallIgnored
+        folder.mkdirs();
+
+        final PlatformInfo actual = RuntimeSelector.describe(folder, current);
+
+        Assert.assertEquals(null, actual);
+    }
+
+    @Test public void findRuntimes_configuredHomes() throws Exception {
+        final File jdk8 = createRuntime("jdk8", "1.8.0_252", true);
+        final String separator = System.getProperty("path.separator");
+        final Properties properties = new Properties();
+        properties.setProperty(RuntimeSelector.JAVA_HOMES_PROPERTY_NAME,
+                jdk8 + separator + new File(root, "missing") + separator + current.getJavaHome() + separator + new File(jdk8, "jre"));
+
+        final List<PlatformInfo> actual = RuntimeSelector.findRuntimes(current, properties);
+
+        Assert.assertEquals(2, actual.size());
+        Assert.assertSame(current, actual.get(0));
+        Assert.assertEquals(new File(jdk8, "jre").getCanonicalPath(), actual.get(1).getJavaHome());
+    }
+
+    @Test public void selectFastest_remembersStartupTimes() throws Exception {
+        final File rankingFile = new File(root, "ranking/runtimes.properties");
+        final Map<String, Long> startupMillis = new HashMap<String, Long>();
+        startupMillis.put("slow", 900L);
+        startupMillis.put("fast", 300L);
+        final PlatformInfo slow = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("slow", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        final PlatformInfo fast = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("fast", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        final TimedRuntimeSelector first = new TimedRuntimeSelector(rankingFile, startupMillis);
+        final TimedRuntimeSelector second = new TimedRuntimeSelector(rankingFile, startupMillis);
+
+        final PlatformInfo firstActual = first.selectFastest(Arrays.asList(slow, fast));
+        final PlatformInfo secondActual = second.selectFastest(Arrays.asList(slow, fast));
+
+        Assert.assertSame(fast, firstActual);
+        Assert.assertSame(fast, secondActual);
+        Assert.assertEquals(2, first.measured.size());
+        Assert.assertEquals(0, second.measured.size());
+    }
+
+    @Test public void selectFastest_failuresAreNotRemembered() throws Exception {
+        final File rankingFile = new File(root, "runtimes.properties");
+        final Map<String, Long> startupMillis = new HashMap<String, Long>();
+        startupMillis.put("broken", Long.MAX_VALUE);
+        startupMillis.put("fast", 300L);
+        final PlatformInfo broken = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("broken", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        final PlatformInfo fast = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("fast", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        final PlatformInfo firstActual = new TimedRuntimeSelector(rankingFile, startupMillis).selectFastest(Arrays.asList(broken, fast));
+        startupMillis.put("broken", 100L);
+        final TimedRuntimeSelector cut = new TimedRuntimeSelector(rankingFile, startupMillis);
+
+        final PlatformInfo actual = cut.selectFastest(Arrays.asList(broken, fast));
+
+        Assert.assertSame(fast, firstActual);
+        Assert.assertSame(broken, actual);
+        Assert.assertEquals(1, cut.measured.size());
+    }
+
+    @Test public void measureStartupMillis_hungRuntimeIsDestroyed() throws Exception {
+        final PipedOutputStream stdErr = new PipedOutputStream();
+        final PipedInputStream stdErrReader = new PipedInputStream(stdErr);
+        final CountDownLatch destroyed = new CountDownLatch(1);
+        final TestProcess process = new TestProcess("") {
+            @Override public InputStream getErrorStream() {
+                return stdErrReader;
+            }
+
+            @Override public int waitFor() throws InterruptedException {
+                destroyed.await();
+                return 143;
+            }
+
+            @Override public void destroy() {
+                try {
+                    stdErr.close();
+                }
+                catch (final IOException ignored) {
+                }
+                destroyed.countDown();
+            }
+        };
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final RuntimeSelector cut = new RuntimeSelector(processFactory, new File(root, "runtimes.properties"), 100);
+
+        final long actual = cut.measureStartupMillis(new File("/opt/hung/bin/java"));
+
+        Assert.assertEquals(Long.MAX_VALUE, actual);
+        Assert.assertEquals(0, destroyed.getCount());
+    }
+
+    @Test public void parseStartupMillis_rememberedFailureIsRemeasured() throws Exception {
+        Assert.assertEquals(-1, RuntimeSelector.parseStartupMillis("1234:" + Long.MAX_VALUE, "1234"));
+        Assert.assertEquals(250, RuntimeSelector.parseStartupMillis("1234:250", "1234"));
+        Assert.assertEquals(-1, RuntimeSelector.parseStartupMillis("1234:250", "5678"));
+    }
+
+    @Test public void selectFastest_remeasuresUpdatedRuntime() throws Exception {
+        final File rankingFile = new File(root, "runtimes.properties");
+        final Map<String, Long> startupMillis = new HashMap<String, Long>();
+        startupMillis.put("slow", 900L);
+        startupMillis.put("fast", 300L);
+        final File slowHome = RuntimeSelector.toJavaHome(createRuntime("slow", "1.8.0_252", true));
+        final PlatformInfo slow = current.forJavaRuntime("1.8.0_252", slowHome.getAbsolutePath(), "amd64");
+        final PlatformInfo fast = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("fast", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        new TimedRuntimeSelector(rankingFile, startupMillis).selectFastest(Arrays.asList(slow, fast));
+        //noinspection ResultOfMethodCallIgnored
+        new File(slowHome, "bin/java").setLastModified(1000000000000L);
+        startupMillis.put("slow", 100L);
+        final TimedRuntimeSelector cut = new TimedRuntimeSelector(rankingFile, startupMillis);
+
+        final PlatformInfo actual = cut.selectFastest(Arrays.asList(slow, fast));
+
+        Assert.assertSame(slow, actual);
+        Assert.assertEquals(1, cut.measured.size());
+    }
+
+    @Test public void selectRuntime_findsProviderInAnotherRuntime() throws Exception {
+        final Map<String, Long> startupMillis = new HashMap<String, Long>();
+        startupMillis.put("old", 500L);
+        startupMillis.put("current", 100L);
+        final PlatformInfo old = current.forJavaRuntime("1.8.0_252", RuntimeSelector.toJavaHome(createRuntime("old", "1.8.0_252", true)).getAbsolutePath(), "amd64");
+        final Provider javaFxOnly = new Provider("JavaFxOnly") {
+            @Override public List<String> checkRequirements() {
+                return checkRequirements(PlatformInfo.getCurrent());
+            }
+
+            @Override public List<String> checkRequirements(final PlatformInfo platform) {
+                return platform.getJavaFxJar() == null ? Arrays.asList("JavaFX") : Collections.<String>emptyList();
+            }
+
+            @Override public void augmentProcessParameters(final List<String> command, final List<String> classPath) {
+            }
+        };
+        final UserAgentImpl cut = new UserAgentImpl(null, null, Arrays.asList(javaFxOnly));
+        final TimedRuntimeSelector selector = new TimedRuntimeSelector(new File(root, "runtimes.properties"), startupMillis);
+
+        final Map<Provider, List<String>> requirements = Collections.emptyMap();
+        final UserAgentImpl.ScanSnapshot scanned = new UserAgentImpl.ScanSnapshot(null, null, current, requirements, true);
+
+        final UserAgentImpl.ScanSnapshot actual = cut.selectRuntime(scanned, true, selector, Arrays.asList(current, old));
+
+        Assert.assertSame(javaFxOnly, actual.provider);
+        Assert.assertSame(old, actual.platform);
+        Assert.assertSame(requirements, actual.requirementsByProvider);
+        Assert.assertNull(scanned.provider);
+        Assert.assertEquals(0, selector.measured.size());
+    }
+
+    @Test public void saveProperties_replacesAndCleansUp() throws Exception {
+        final File file = new File(root, "measurements/runtimes.properties");
+        final Properties first = new Properties();
+        first.setProperty("a", "1");
+        final Properties second = new Properties();
+        second.setProperty("b", "2");
+
+        RuntimeSelector.saveProperties(file, first, null);
+        RuntimeSelector.saveProperties(file, second, null);
+
+        final Properties actual = RuntimeSelector.loadProperties(file);
+        Assert.assertEquals(second, actual);
+        final String[] names = file.getParentFile().list();
+        Assert.assertEquals(1, names.length);
+    }
+}
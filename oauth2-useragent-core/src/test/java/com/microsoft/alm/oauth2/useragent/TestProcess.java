@@ -52,4 +52,8 @@ public class TestProcess implements TestableProcess {
     public int waitFor() throws InterruptedException {
         return 0;
     }
+
+    @Override
+    public void destroy() {
+    }
 }
@@ -9,14 +9,20 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,6 +32,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class UserAgentImplTest {
@@ -46,6 +54,22 @@ public class UserAgentImplTest {
         Assert.assertEquals(expected, actual);
     }
 
+    @Test public void extractResponseFromRedirectUri_noQuery() {
+        final String redirectedUri = "https://msopentech.com/";
+
+        final String actual = UserAgentImpl.extractResponseFromRedirectUri(redirectedUri);
+
+        Assert.assertEquals("error=invalid_response&error_description=The+redirect+URI+had+no+response+in+its+query.", actual);
+    }
+
+    @Test public void extractResponseFromRedirectUri_malformed() {
+        final String redirectedUri = "msopentech.com/?code=abc";
+
+        final String actual = UserAgentImpl.extractResponseFromRedirectUri(redirectedUri);
+
+        Assert.assertTrue(actual.startsWith("error=invalid_response&"));
+    }
+
     @Test public void findCompatibleProvider_atLeastOneCompatible() throws Exception {
         final CompatibleProvider compatibleProvider = new CompatibleProvider();
         final IncompatibleProvider incompatibleProvider = new IncompatibleProvider();
@@ -90,6 +114,61 @@ public class UserAgentImplTest {
         Assert.assertEquals(1, incompatibleProvider.getCheckCount());
     }
 
+    @Test public void findCompatibleProvider_concurrentCallersSeeConsistentResults() throws Exception {
+        final CompatibleProvider compatibleProvider = new CompatibleProvider();
+        final IncompatibleProvider incompatibleProvider = new IncompatibleProvider();
+        final List<Provider> providers = new ArrayList<Provider>();
+        providers.add(incompatibleProvider);
+        providers.add(compatibleProvider);
+        final UserAgentImpl cut = new UserAgentImpl(null, null, providers);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 1000; j++) {
+                            final Provider provider = cut.findCompatibleProvider(null);
+                            final Map<Provider, List<String>> unmet = cut.getUnmetProviderRequirements();
+                            if (provider != compatibleProvider || unmet.size() != 1 || unmet.get(incompatibleProvider).size() != 3) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (final Throwable ignored) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0, failures.get());
+    }
+
+    @Test public void getUnmetProviderRequirements_isUnmodifiable() throws Exception {
+        final IncompatibleProvider incompatibleProvider = new IncompatibleProvider();
+        final UserAgentImpl cut = new UserAgentImpl(null, null, Arrays.<Provider>asList(incompatibleProvider));
+
+        final Map<Provider, List<String>> actual = cut.getUnmetProviderRequirements();
+
+        try {
+            actual.clear();
+            Assert.fail("The map should not have been modifiable.");
+        }
+        catch (final UnsupportedOperationException ignored) {
+        }
+        Assert.assertEquals(1, cut.getUnmetProviderRequirements().size());
+    }
+
     @Test public void findCompatibleProvider_onlyIncompatible() throws Exception {
         final IncompatibleProvider incompatibleProvider = new IncompatibleProvider();
         final List<Provider> providers = new ArrayList<Provider>();
@@ -122,7 +201,7 @@ public class UserAgentImplTest {
 
         Mockito.verify(mockUserAgent).requestAuthorizationCode(Matchers.isA(URI.class), Matchers.isA(URI.class));
         final String actual = outputStream.toString(UTF_8.name());
-        Assert.assertEquals("code=red", actual.trim());
+        Assert.assertEquals(UserAgentImpl.RESPONSE_PREFIX + "code=red", actual.trim());
     }
 
     @Test public void encode_requestAuthorizationCode() throws AuthorizationException, IOException {
@@ -144,6 +223,260 @@ public class UserAgentImplTest {
 
     }
 
+    @Test public void encode_framedResponseDoesNotWaitForExit() throws Exception {
+        final String authorizationEndpoint = "https://login.microsoftonline.com/common/oauth2/authorize?resource=foo&client_id=bar&response_type=code&redirect_uri=https%3A//redirect.example.com";
+        final String redirectUri = "https://redirect.example.com";
+        final String stdout = "Toolkit noise" + NEW_LINE
+                + UserAgentImpl.RESPONSE_PREFIX + "code=red&state=blue" + NEW_LINE
+                + "More toolkit noise" + NEW_LINE;
+        final CountDownLatch exit = new CountDownLatch(1);
+        final TestProcess process = new TestProcess(stdout) {
+            @Override public int waitFor() throws InterruptedException {
+                exit.await();
+                return 0;
+            }
+        };
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null, scheduler);
+
+        final AuthorizationResponse actual = cut.encode(UserAgentImpl.REQUEST_AUTHORIZATION_CODE, authorizationEndpoint, redirectUri);
+
+        Assert.assertEquals("red", actual.getCode());
+        Assert.assertEquals("blue", actual.getState());
+        // the slot is only released once the child process exits
+        Assert.assertEquals(1, scheduler.getRunningCount());
+        exit.countDown();
+        scheduler.acquire(RequestScheduler.DEFAULT_PRIORITY);
+        scheduler.release();
+    }
+
+    @Test public void encode_unframedResponseReleasesSlotOnReturn() throws Exception {
+        final String authorizationEndpoint = "https://login.example.com/oauth2/authorize";
+        final String redirectUri = "https://redirect.example.com";
+        final TestProcess process = new TestProcess("code=red" + NEW_LINE);
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final RequestScheduler scheduler = new RequestScheduler(1);
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null, scheduler);
+
+        final AuthorizationResponse actual = cut.encode(UserAgentImpl.REQUEST_AUTHORIZATION_CODE, authorizationEndpoint, redirectUri);
+
+        Assert.assertEquals("red", actual.getCode());
+        Assert.assertEquals(0, scheduler.getRunningCount());
+        Assert.assertEquals(1, scheduler.getStartedCount());
+    }
+
+    @Test public void encode_progressEventsAreForwardedToListeners() throws AuthorizationException, IOException {
+        final String authorizationEndpoint = "https://login.example.com/oauth2/authorize";
+        final String redirectUri = "https://redirect.example.com";
+        final String stdout = UserAgentImpl.EVENT_PREFIX + "TOOLKIT_READY 100" + NEW_LINE
+                + "Toolkit noise" + NEW_LINE
+                + UserAgentImpl.EVENT_PREFIX + "NAVIGATION_STARTED 105 https%3A%2F%2Flogin.example.com%2Foauth2%2Fauthorize" + NEW_LINE
+                + UserAgentImpl.EVENT_PREFIX + "FROM_THE_FUTURE 107" + NEW_LINE
+                + UserAgentImpl.EVENT_PREFIX + "REDIRECT_MATCHED 110 https%3A%2F%2Fredirect.example.com%3Fcode%3Dred" + NEW_LINE
+                + UserAgentImpl.RESPONSE_PREFIX + "code=red" + NEW_LINE;
+        final TestProcess process = new TestProcess(stdout);
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null);
+        final List<ProgressEvent> events = new ArrayList<ProgressEvent>();
+        cut.addProgressListener(new ProgressListener() {
+            @Override public void progressReported(final ProgressEvent event) {
+                events.add(event);
+            }
+        });
+
+        final AuthorizationResponse actual = cut.encode(UserAgentImpl.REQUEST_AUTHORIZATION_CODE, authorizationEndpoint, redirectUri);
+
+        Assert.assertEquals("red", actual.getCode());
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals(ProgressEvent.Type.TOOLKIT_READY, events.get(0).getType());
+        Assert.assertEquals(ProgressEvent.Type.NAVIGATION_STARTED, events.get(1).getType());
+        Assert.assertEquals(authorizationEndpoint, events.get(1).getDetail());
+        Assert.assertEquals(ProgressEvent.Type.REDIRECT_MATCHED, events.get(2).getType());
+        Assert.assertEquals(110L, events.get(2).getTimeMillis());
+    }
+
+    @Test public void encode_progressEventsAreNotMistakenForTheResponse() throws AuthorizationException, IOException {
+        final String stdout = UserAgentImpl.EVENT_PREFIX + "TOOLKIT_READY 100" + NEW_LINE
+                + "code=red" + NEW_LINE;
+        final TestProcess process = new TestProcess(stdout);
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null);
+
+        final AuthorizationResponse actual = cut.encode(UserAgentImpl.REQUEST_AUTHORIZATION_CODE, "https://login.example.com/", "https://redirect.example.com");
+
+        Assert.assertEquals("red", actual.getCode());
+    }
+
+    @Test public void decode_pendingProgressEventsAreSentFirst() throws AuthorizationException, UnsupportedEncodingException {
+        final UserAgent mockUserAgent = Mockito.mock(UserAgent.class);
+        Mockito.when(mockUserAgent.requestAuthorizationCode(Matchers.isA(URI.class), Matchers.isA(URI.class))).thenAnswer(new Answer<AuthorizationResponse>() {
+            @Override public AuthorizationResponse answer(final InvocationOnMock invocation) {
+                ProgressReporter.report(ProgressEvent.Type.REDIRECT_MATCHED, "https://redirect.example.com?code=red");
+                return new AuthorizationResponse("red", null);
+            }
+        });
+        final String stdin = "https://login.example.com/" + NEW_LINE + "https://redirect.example.com" + NEW_LINE;
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(stdin.getBytes(UTF_8));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ProgressReporter.report(ProgressEvent.Type.TOOLKIT_READY, null);
+
+        UserAgentImpl.decode(mockUserAgent, new String[]{UserAgentImpl.REQUEST_AUTHORIZATION_CODE}, inputStream, outputStream);
+
+        final String[] lines = outputStream.toString(UTF_8.name()).split(NEW_LINE);
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0], lines[0].startsWith(UserAgentImpl.EVENT_PREFIX + "TOOLKIT_READY "));
+        Assert.assertTrue(lines[1], lines[1].startsWith(UserAgentImpl.EVENT_PREFIX + "REDIRECT_MATCHED "));
+        Assert.assertEquals(UserAgentImpl.RESPONSE_PREFIX + "code=red", lines[2]);
+    }
+
+    @Test public void removeFramedLines_keepsOtherLines() throws Exception {
+        final String stdOut = "one" + "\n" + UserAgentImpl.EVENT_PREFIX + "TOOLKIT_READY 1" + "\r\n" + "two" + "\n" + UserAgentImpl.CAPTURE_PREFIX + "{}";
+
+        final String actual = UserAgentImpl.removeFramedLines(stdOut);
+
+        Assert.assertEquals("one\ntwo\n", actual);
+    }
+
+    @Test public void parseResponse_networkCaptureIsAttached() throws Exception {
+        final AuthorizationResponse actual = UserAgentImpl.parseResponse("code=red&state=ready", "", "{\"log\":{}}");
+
+        Assert.assertEquals("red", actual.getCode());
+        Assert.assertEquals("ready", actual.getState());
+        Assert.assertEquals("{\"log\":{}}", actual.getNetworkCapture());
+    }
+
+    @Test public void parseResponse_networkCaptureIsAttachedToErrors() throws Exception {
+        try {
+            UserAgentImpl.parseResponse("error=access_denied", "", "{\"log\":{}}");
+            Assert.fail("An AuthorizationException should have been thrown.");
+        }
+        catch (final AuthorizationException e) {
+            Assert.assertEquals("access_denied", e.getCode());
+            Assert.assertEquals("{\"log\":{}}", e.getNetworkCapture());
+        }
+    }
+
+    @Test public void decode_requestAuthorizationCodes() throws AuthorizationException, UnsupportedEncodingException {
+        final String firstEndpoint = "https://login.example.com/oauth2/authorize?resource=foo&client_id=bar";
+        final String secondEndpoint = "https://login.example.com/oauth2/authorize?resource=baz&client_id=bar";
+        final String redirectUri = "https://redirect.example.com";
+        final UserAgent mockUserAgent = Mockito.mock(UserAgent.class);
+        Mockito.when(mockUserAgent.requestAuthorizationCode(URI.create(firstEndpoint), URI.create(redirectUri))).thenReturn(new AuthorizationResponse("red", null));
+        Mockito.when(mockUserAgent.requestAuthorizationCode(URI.create(secondEndpoint), URI.create(redirectUri))).thenReturn(new AuthorizationResponse("green", null));
+        final StringBuilder sb = new StringBuilder();
+        sb.append("2").append(NEW_LINE);
+        sb.append(firstEndpoint).append(NEW_LINE);
+        sb.append(redirectUri).append(NEW_LINE);
+        sb.append(secondEndpoint).append(NEW_LINE);
+        sb.append(redirectUri).append(NEW_LINE);
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(sb.toString().getBytes(UTF_8));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        UserAgentImpl.decode(mockUserAgent, new String[]{UserAgentImpl.REQUEST_AUTHORIZATION_CODES}, inputStream, outputStream);
+
+        final String actual = outputStream.toString(UTF_8.name());
+        final String expected = UserAgentImpl.RESPONSE_PREFIX + "code=red" + NEW_LINE
+                + UserAgentImpl.RESPONSE_PREFIX + "code=green" + NEW_LINE;
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test public void decode_requestAuthorizationCodesStopsAtFirstError() throws AuthorizationException, UnsupportedEncodingException {
+        final String firstEndpoint = "https://login.example.com/oauth2/authorize?resource=foo&client_id=bar";
+        final String secondEndpoint = "https://login.example.com/oauth2/authorize?resource=baz&client_id=bar";
+        final String redirectUri = "https://redirect.example.com";
+        final UserAgent mockUserAgent = Mockito.mock(UserAgent.class);
+        Mockito.when(mockUserAgent.requestAuthorizationCode(URI.create(firstEndpoint), URI.create(redirectUri))).thenThrow(new AuthorizationException("access_denied"));
+        final StringBuilder sb = new StringBuilder();
+        sb.append("2").append(NEW_LINE);
+        sb.append(firstEndpoint).append(NEW_LINE);
+        sb.append(redirectUri).append(NEW_LINE);
+        sb.append(secondEndpoint).append(NEW_LINE);
+        sb.append(redirectUri).append(NEW_LINE);
+        final ByteArrayInputStream inputStream = new ByteArrayInputStream(sb.toString().getBytes(UTF_8));
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        UserAgentImpl.decode(mockUserAgent, new String[]{UserAgentImpl.REQUEST_AUTHORIZATION_CODES}, inputStream, outputStream);
+
+        Mockito.verify(mockUserAgent, Mockito.never()).requestAuthorizationCode(URI.create(secondEndpoint), URI.create(redirectUri));
+        final String actual = outputStream.toString(UTF_8.name());
+        Assert.assertEquals(UserAgentImpl.RESPONSE_PREFIX + "error=access_denied", actual.trim());
+    }
+
+    @Test public void requestAuthorizationCodes_oneChildForAll() throws AuthorizationException, IOException {
+        final String firstEndpoint = "https://login.example.com/oauth2/authorize?resource=foo&client_id=bar";
+        final String secondEndpoint = "https://login.example.com/oauth2/authorize?resource=baz&client_id=bar";
+        final String redirectUri = "https://redirect.example.com";
+        final String stdout = UserAgentImpl.RESPONSE_PREFIX + "code=red" + NEW_LINE
+                + UserAgentImpl.RESPONSE_PREFIX + "code=green" + NEW_LINE;
+        final TestProcess process = new TestProcess(stdout);
+        final AtomicInteger processCount = new AtomicInteger();
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                processCount.incrementAndGet();
+                return process;
+            }
+        };
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null);
+        final List<AuthorizationRequest> requests = Arrays.asList(
+                new AuthorizationRequest(URI.create(firstEndpoint), URI.create(redirectUri)),
+                new AuthorizationRequest(URI.create(secondEndpoint), URI.create(redirectUri))
+        );
+
+        final List<AuthorizationResponse> actual = cut.requestAuthorizationCodes(requests);
+
+        Assert.assertEquals(1, processCount.get());
+        Assert.assertEquals(2, actual.size());
+        Assert.assertEquals("red", actual.get(0).getCode());
+        Assert.assertEquals("green", actual.get(1).getCode());
+        final String expectedStdin = "2" + NEW_LINE
+                + firstEndpoint + NEW_LINE + redirectUri + NEW_LINE
+                + secondEndpoint + NEW_LINE + redirectUri + NEW_LINE;
+        Assert.assertEquals(expectedStdin, process.getOutput());
+    }
+
+    @Test public void requestAuthorizationCodes_childEndsEarly() throws AuthorizationException, IOException {
+        final String redirectUri = "https://redirect.example.com";
+        final String stdout = UserAgentImpl.RESPONSE_PREFIX + "code=red" + NEW_LINE;
+        final TestProcess process = new TestProcess(stdout, "Segmentation fault");
+        final TestableProcessFactory processFactory = new TestableProcessFactory() {
+            @Override public TestableProcess create(final String... command) throws IOException {
+                return process;
+            }
+        };
+        final UserAgentImpl cut = new UserAgentImpl(processFactory, TestProvider.INSTANCE, null);
+        final List<AuthorizationRequest> requests = Arrays.asList(
+                new AuthorizationRequest(URI.create("https://login.example.com/a"), URI.create(redirectUri)),
+                new AuthorizationRequest(URI.create("https://login.example.com/b"), URI.create(redirectUri))
+        );
+
+        try {
+            cut.requestAuthorizationCodes(requests);
+        }
+        catch (final AuthorizationException e) {
+            Assert.assertEquals("unknown_error", e.getCode());
+            Assert.assertEquals("Segmentation fault", e.getDescription().trim());
+            return;
+        }
+        Assert.fail("An AuthorizationException should have been thrown.");
+    }
+
     @Test public void encode_programmingError() throws AuthorizationException, IOException {
         final String authorizationEndpoint = "https://login.microsoftonline.com/common/oauth2/authorize?resource=foo&client_id=bar&response_type=code&redirect_uri=https%3A//redirect.example.com";
         final String redirectUri = "https://redirect.example.com";
@@ -256,6 +589,72 @@ public class UserAgentImplTest {
         );
     }
 
+    @Test public void sortOfUrlEncode_matchesUrlEncoderExceptForSafeCharacters() throws Exception {
+        final String input = "a+b c&d=e%f~g\u00e9\u4e2d\ud83d\ude00(x)/y:z;w\\v|u\u0001";
+
+        final String actual = UserAgentImpl.sortOfUrlEncode(input);
+
+        final String expected = URLEncoder.encode(input, "UTF-8")
+                .replace("+", " ")
+                .replace("%28", "(")
+                .replace("%29", ")")
+                .replace("%2F", "/")
+                .replace("%3A", ":")
+                .replace("%3B", ";")
+                .replace("%5C", "\\")
+                .replace("%7C", "|");
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test public void sortOfUrlEncode_unpairedSurrogate() throws Exception {
+        final String actual = UserAgentImpl.sortOfUrlEncode("a\ud83db");
+
+        Assert.assertEquals("a%3Fb", actual);
+    }
+
+    @Test public void throwUnsupported_exposesUnmetRequirements() throws Exception {
+        final LinkedHashMap<Provider, List<String>> unmetMap = new LinkedHashMap<Provider, List<String>>();
+        final Provider incompatibleProvider = new IncompatibleProvider();
+        final List<String> requirements = new ArrayList<String>(incompatibleProvider.checkRequirements());
+        unmetMap.put(incompatibleProvider, requirements);
+
+        try {
+            UserAgentImpl.throwUnsupported(unmetMap);
+        }
+        catch (final UnsupportedPlatformException e) {
+            requirements.clear();
+            unmetMap.clear();
+            Assert.assertEquals(1, e.getUnmetRequirements().size());
+            Assert.assertEquals(3, e.getUnmetRequirements().get(incompatibleProvider).size());
+            final StringBuilder sb = new StringBuilder();
+            e.appendMessage(sb);
+            Assert.assertTrue(sb.toString().startsWith("I don't support your platform yet."));
+            Assert.assertSame(e.getMessage(), e.getMessage());
+            return;
+        }
+        Assert.fail("An UnsupportedPlatformException should have been thrown");
+    }
+
+    @Test public void unsupportedPlatformException_serializesItsMessage() throws Exception {
+        final LinkedHashMap<Provider, List<String>> unmetMap = new LinkedHashMap<Provider, List<String>>();
+        final Provider incompatibleProvider = new IncompatibleProvider();
+        unmetMap.put(incompatibleProvider, incompatibleProvider.checkRequirements());
+        final UnsupportedPlatformException cut = new UnsupportedPlatformException(unmetMap);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(baos);
+
+        oos.writeObject(cut);
+        oos.close();
+
+        final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        final UnsupportedPlatformException actual = (UnsupportedPlatformException) ois.readObject();
+        Assert.assertEquals(cut.getMessage(), actual.getMessage());
+        Assert.assertEquals(0, actual.getUnmetRequirements().size());
+        final StringBuilder sb = new StringBuilder();
+        actual.appendMessage(sb);
+        Assert.assertEquals(cut.getMessage(), sb.toString());
+    }
+
     @Test public void appendVariables_Typical() throws Exception {
         final StringBuilder sb = new StringBuilder();
         final LinkedHashMap<String, String> variables = new LinkedHashMap<String, String>();
@@ -356,6 +755,112 @@ public class UserAgentImplTest {
         Assert.assertEquals(0, commands.size());
     }
 
+    @Test public void getStdErrBufferLength_defaultAndOverrides() throws Exception {
+        final Properties properties = new Properties();
+        Assert.assertEquals(UserAgentImpl.DEFAULT_STD_ERR_BUFFER_KILOBYTES * 1024, UserAgentImpl.getStdErrBufferLength(properties));
+
+        properties.setProperty(UserAgentImpl.STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME, "2");
+        Assert.assertEquals(2048, UserAgentImpl.getStdErrBufferLength(properties));
+
+        properties.setProperty(UserAgentImpl.STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME, "0");
+        Assert.assertEquals(0, UserAgentImpl.getStdErrBufferLength(properties));
+
+        properties.setProperty(UserAgentImpl.STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME, "2097152");
+        Assert.assertEquals(UserAgentImpl.MAXIMUM_STD_ERR_BUFFER_KILOBYTES * 1024, UserAgentImpl.getStdErrBufferLength(properties));
+        Assert.assertTrue(UserAgentImpl.getStdErrBufferLength(properties) > 0);
+
+        properties.setProperty(UserAgentImpl.STD_ERR_BUFFER_KILOBYTES_PROPERTY_NAME, "lots");
+        Assert.assertEquals(UserAgentImpl.DEFAULT_STD_ERR_BUFFER_KILOBYTES * 1024, UserAgentImpl.getStdErrBufferLength(properties));
+    }
+
+    @Test public void getSilentBudgetMilliseconds() throws Exception {
+        final Properties properties = new Properties();
+        Assert.assertEquals(0, UserAgentImpl.getSilentBudgetMilliseconds(properties));
+
+        properties.setProperty(UserAgentImpl.SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME, " 1500 ");
+        Assert.assertEquals(1500, UserAgentImpl.getSilentBudgetMilliseconds(properties));
+
+        properties.setProperty(UserAgentImpl.SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME, "-1");
+        Assert.assertEquals(0, UserAgentImpl.getSilentBudgetMilliseconds(properties));
+
+        properties.setProperty(UserAgentImpl.SILENT_BUDGET_MILLISECONDS_PROPERTY_NAME, "soon");
+        Assert.assertEquals(0, UserAgentImpl.getSilentBudgetMilliseconds(properties));
+    }
+
+    @Test public void addPreconnectProperty_enabled() throws Exception {
+        final Properties properties = new Properties();
+        properties.setProperty(Preconnector.PRECONNECT_PROPERTY_NAME, "true");
+        final String[] parameters = {"https://login.example.com/oauth2/authorize?client_id=bar", "https://redirect.example.com"};
+        final List<String> commands = new ArrayList<String>();
+
+        UserAgentImpl.addPreconnectProperty(properties, UserAgentImpl.REQUEST_AUTHORIZATION_CODE, parameters, commands);
+
+        Assert.assertEquals(1, commands.size());
+        Assert.assertEquals("-DuserAgentPreconnectUri=https://login.example.com/", commands.get(0));
+    }
+
+    @Test public void addPreconnectProperty_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+        final String[] parameters = {"https://login.example.com/oauth2/authorize?client_id=bar", "https://redirect.example.com"};
+        final List<String> commands = new ArrayList<String>();
+
+        UserAgentImpl.addPreconnectProperty(properties, UserAgentImpl.REQUEST_AUTHORIZATION_CODE, parameters, commands);
+
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test public void createCommand_preconnectOnlyForJavaFx() throws Exception {
+        final String[] parameters = {"https://login.example.com/oauth2/authorize?client_id=bar", "https://redirect.example.com"};
+        final String oldValue = System.getProperty(Preconnector.PRECONNECT_PROPERTY_NAME);
+        System.setProperty(Preconnector.PRECONNECT_PROPERTY_NAME, "true");
+        try {
+            final List<String> actual = UserAgentImpl.createCommand(TestProvider.INSTANCE, PlatformInfo.getCurrent(), UserAgentImpl.REQUEST_AUTHORIZATION_CODE, parameters);
+
+            Assert.assertFalse(actual.contains("-DuserAgentPreconnectUri=https://login.example.com/"));
+        }
+        finally {
+            if (oldValue == null) {
+                System.clearProperty(Preconnector.PRECONNECT_PROPERTY_NAME);
+            }
+            else {
+                System.setProperty(Preconnector.PRECONNECT_PROPERTY_NAME, oldValue);
+            }
+        }
+    }
+
+    @Test public void addProfileProperty_enabled() throws Exception {
+        final File root = File.createTempFile("profiles", "");
+        //noinspection ResultOfMethodCallIgnored
+        root.delete();
+        try {
+            final Properties properties = new Properties();
+            properties.setProperty(ProfileStore.PERSISTENT_PROFILE_PROPERTY_NAME, "true");
+            properties.setProperty(ProfileStore.PROFILE_DIRECTORY_PROPERTY_NAME, root.getAbsolutePath());
+            final String[] parameters = {"https://login.example.com/oauth2/authorize?client_id=bar", "https://redirect.example.com"};
+            final List<String> commands = new ArrayList<String>();
+
+            UserAgentImpl.addProfileProperty(properties, UserAgentImpl.REQUEST_AUTHORIZATION_CODE, parameters, commands);
+
+            final File expectedProfile = new File(root, "login.example.com");
+            Assert.assertEquals(1, commands.size());
+            Assert.assertEquals("-DuserAgentProfilePath=" + expectedProfile.getAbsolutePath(), commands.get(0));
+            Assert.assertTrue(expectedProfile.isDirectory());
+        }
+        finally {
+            ProfileStore.delete(root);
+        }
+    }
+
+    @Test public void addProfileProperty_disabledByDefault() throws Exception {
+        final Properties properties = new Properties();
+        final String[] parameters = {"https://login.example.com/oauth2/authorize?client_id=bar", "https://redirect.example.com"};
+        final List<String> commands = new ArrayList<String>();
+
+        UserAgentImpl.addProfileProperty(properties, UserAgentImpl.REQUEST_AUTHORIZATION_CODE, parameters, commands);
+
+        Assert.assertEquals(0, commands.size());
+    }
+
     @Test public void scanProviders_Compatible() {
         final Provider compatibleProvider = new CompatibleProvider();
         //noinspection ArraysAsListWithZeroOrOneArgument
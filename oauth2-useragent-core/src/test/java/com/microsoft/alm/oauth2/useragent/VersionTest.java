@@ -6,8 +6,107 @@ package com.microsoft.alm.oauth2.useragent;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class VersionTest
 {
+    /**
+     * The regular expressions that used to implement {@link Version#parseJavaRuntimeVersion(String)},
+     * kept as the reference for its behaviour.
+     */
+    private final static Pattern JAVA_LEGACY_RUNTIME_VERSION =
+            Pattern.compile("(\\d+)\\.(\\d+)(?:\\.(\\d+))?(?:_(\\d+))?(?:-(?:.*-)?b(\\d+))?.*");
+    private final static Pattern JAVA_9_PLUS_VERSION = Pattern.compile(
+            "(?<VNUM>[1-9][0-9]*(?:(?:\\.0)*\\.[1-9][0-9]*)*)" +
+            "(?:-(?<PRE>[a-zA-Z0-9]+))?" +
+            "(?:(?<PLUS>\\+)(?<BUILD>0|[1-9][0-9]*)?)?" +
+            "(?:-(?<OPT>[-a-zA-Z0-9.]+))?");
+
+    private static Version parseJavaRuntimeVersionWithRegex(final String javaRuntimeVersion) {
+        Matcher matcher = JAVA_9_PLUS_VERSION.matcher(javaRuntimeVersion);
+
+        if (matcher.matches()) {
+            String[] version = matcher.group(1).split("\\.");
+
+            int feature = Integer.parseInt(version[0]);
+            int interim = (version.length > 1 ? Integer.parseInt(version[1]) : 0);
+            int update = (version.length > 2 ? Integer.parseInt(version[2]) : 0);
+            int patch = (version.length > 3 ? Integer.parseInt(version[3]) : 0);
+
+            int build = Version.integerOrZero(matcher.group(4));
+
+            return new Version(feature, interim, update, patch, build);
+        } else {
+            matcher = JAVA_LEGACY_RUNTIME_VERSION.matcher(javaRuntimeVersion);
+
+            if (matcher.matches()) {
+                int major = Integer.parseInt(matcher.group(1));
+                int minor = Integer.parseInt(matcher.group(2));
+                int patch = Version.integerOrZero(matcher.group(3));
+                int update = Version.integerOrZero(matcher.group(4));
+                int build = Version.integerOrZero(matcher.group(5));
+
+                return new Version(major, minor, patch, update, build);
+            } else {
+                throw new IllegalArgumentException("Unrecognized version string '" + javaRuntimeVersion + "'.");
+            }
+        }
+    }
+
+    private static String describe(final String input, final boolean useRegex) {
+        try {
+            final Version v = useRegex
+                    ? parseJavaRuntimeVersionWithRegex(input)
+                    : Version.parseJavaRuntimeVersion(input);
+            return v.getMajor() + "," + v.getMinor() + "," + v.getPatch() + "," + v.getUpdate() + "," + v.getBuild();
+        }
+        catch (final IllegalArgumentException e) {
+            return e.getClass().getName();
+        }
+    }
+
+    private static void assertSameAsRegex(final String input) {
+        Assert.assertEquals("'" + input + "'", describe(input, true), describe(input, false));
+    }
+
+    @Test public void parseJavaRuntimeVersion_sameAsRegexForKnownVersions() {
+        final String[] inputs = {
+            "1.6.0_65-b14-466.1-11M4716", "1.7.0_79-internal-b14", "1.8.0_252-b09", "1.8.0_252-8u252-b09-1~deb9u1-b09",
+            "1.8.0-b132", "1.8.0_3", "1.8", "1.8.0", "1.8.0_60-b27-b28", "1.8.0_60-bx-b", "1.8.0_60-b", "1.8.0_60--b5",
+            "9", "9.0", "9.0.1", "9.0.0.1", "9.01", "09", "9-ea", "9-ea+", "9-ea+0", "9-ea+01", "9+181", "9-Ubuntu+0-9b181-4",
+            "10+46", "10.1.2+62", "10-ea+73", "11.0.2+9-LTS", "11.0.2+9-", "11-ea-", "11-ea.1", "11-.", "11+9+10",
+            "17.0.1+12-39", "1.2.3.4.5.6+7", "21-internal-adhoc.user.jdk", "2147483648", "1.2147483648", "9+2147483648",
+            "1.8.0_2147483648", "1.8.0_60-b2147483648", "1.8.0_60\n", "1.8.0_60-b27\r\n", "1.8\u2028", "", ".", "1.", "a.b",
+            "1.8.0_60 b27", "-1.8", "+9", "9-", "9+-opt", "9-pre+1-opt", "9-pre+1-opt+",
+        };
+        for (final String input : inputs) {
+            assertSameAsRegex(input);
+        }
+    }
+
+    @Test public void parseJavaRuntimeVersion_sameAsRegexForRandomStrings() {
+        final char[] alphabet = "0123456789.._-+beaLTS\n ".toCharArray();
+        final Random random = new Random(42);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.setLength(0);
+            final int length = random.nextInt(14);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            assertSameAsRegex(sb.toString());
+        }
+    }
+
+    @Test public void parseJavaRuntimeVersion_cachesResults() {
+        final Version first = Version.parseJavaRuntimeVersion("1.8.0_152-b16");
+
+        final Version second = Version.parseJavaRuntimeVersion("1.8.0_152-b16");
+
+        Assert.assertSame(first, second);
+    }
 
     @Test public void openJdk7OnUbuntu() {
         testJdkParsing(1, 7, 0, 79, 14, "1.7.0_79-b14");
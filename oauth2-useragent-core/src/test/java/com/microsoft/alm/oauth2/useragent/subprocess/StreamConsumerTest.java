@@ -0,0 +1,123 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent.subprocess;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StreamConsumerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String NEW_LINE = StreamConsumer.NEW_LINE;
+
+    private static ByteArrayInputStream asStream(final String... lines) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(UTF_8));
+    }
+
+    @Test public void run_unbounded() throws Exception {
+        final StreamConsumer cut = new StreamConsumer(asStream("one", "two", "three"));
+
+        cut.run();
+
+        Assert.assertEquals("one" + NEW_LINE + "two" + NEW_LINE + "three" + NEW_LINE, cut.toString());
+    }
+
+    @Test public void run_boundedKeepsMostRecentLines() throws Exception {
+        final int maximumLength = ("two" + NEW_LINE + "three" + NEW_LINE).length();
+        final StreamConsumer cut = new StreamConsumer(asStream("one", "two", "three"), maximumLength, null);
+
+        cut.run();
+
+        Assert.assertEquals("two" + NEW_LINE + "three" + NEW_LINE, cut.toString());
+    }
+
+    @Test public void run_boundedKeepsTailOfLongLine() throws Exception {
+        final int maximumLength = 4 + NEW_LINE.length();
+        final StreamConsumer cut = new StreamConsumer(asStream("one", "0123456789"), maximumLength, null);
+
+        cut.run();
+
+        Assert.assertEquals("6789" + NEW_LINE, cut.toString());
+    }
+
+    @Test public void run_notifiesListenerOfEveryLine() throws Exception {
+        final List<String> actual = new ArrayList<String>();
+        final LineListener listener = new LineListener() {
+            @Override public void lineRead(final String line) {
+                actual.add(line);
+            }
+        };
+        final StreamConsumer cut = new StreamConsumer(asStream("one", "two", "three"), 1, listener);
+
+        cut.run();
+
+        Assert.assertEquals(3, actual.size());
+        Assert.assertEquals("one", actual.get(0));
+        Assert.assertEquals("three", actual.get(2));
+    }
+
+    @Test public void run_unretainedLinesOnlyReachTheListener() throws Exception {
+        final List<String> actual = new ArrayList<String>();
+        final LineListener listener = new LineListener() {
+            @Override public void lineRead(final String line) {
+                actual.add(line);
+            }
+        };
+        final StreamConsumer cut = new StreamConsumer(asStream("event:one", "response:two", "capture:three"), StreamConsumer.UNBOUNDED, listener, "event:", "capture:");
+
+        cut.run();
+
+        Assert.assertEquals(3, actual.size());
+        Assert.assertEquals("response:two" + NEW_LINE, cut.toString());
+        Assert.assertEquals("two", cut.awaitLine("response:"));
+        Assert.assertNull(cut.awaitLine("event:"));
+    }
+
+    @Test public void run_listenerFailureDoesNotStopConsumption() throws Exception {
+        final LineListener listener = new LineListener() {
+            @Override public void lineRead(final String line) {
+                throw new IllegalStateException(line);
+            }
+        };
+        final StreamConsumer cut = new StreamConsumer(asStream("one", "two"), StreamConsumer.UNBOUNDED, listener);
+
+        cut.run();
+
+        Assert.assertEquals("one" + NEW_LINE + "two" + NEW_LINE, cut.toString());
+    }
+
+    @Test public void awaitLine_returnsSuccessiveMatches() throws Exception {
+        final StreamConsumer cut = new StreamConsumer(asStream("noise", "> one", "noise", "> two"));
+        cut.run();
+
+        Assert.assertEquals("one", cut.awaitLine("> "));
+        Assert.assertEquals("two", cut.awaitLine("> "));
+        Assert.assertNull(cut.awaitLine("> "));
+    }
+
+    @Test public void awaitLine_waitsForLineFromAnotherThread() throws Exception {
+        final StreamConsumer cut = new StreamConsumer(asStream());
+        final Thread producer = new Thread(new Runnable() {
+            @Override public void run() {
+                cut.append("noise");
+                cut.append("> response");
+            }
+        });
+        producer.start();
+
+        final String actual = cut.awaitLine("> ");
+
+        Assert.assertEquals("response", actual);
+        producer.join();
+    }
+}
@@ -130,6 +130,16 @@ public class PackageLocatorTest {
         assertEquals("/E:/a b/c&d", actual);
     }
 
+    @Test public void getClasspathFromUrl_classInFolderName() throws Exception {
+        final URL url
+                = new URL("file:/opt/my.classes/lib.jar");
+        final String canonicalName = "com.microsoft.alm.oauth2.useragent.utils.PackageLocatorTest";
+
+        final File actual = PackageLocator.getClasspathFromUrl(url, canonicalName);
+
+        assertEquals("/opt/my.classes/lib.jar", actual);
+    }
+
     @Test public void getClasspathFromUrl_encodedCharactersInURL() throws Exception {
         final URL url
             = new URL("file:/E:/a%20b/c%26d/com/microsoft/alm/oauth2/useragent/utils/PackageLocatorTest.class");
@@ -150,6 +160,51 @@ public class PackageLocatorTest {
         assertEquals("/c:/Documents and+Settings/User", actual);
     }
 
+    @Test public void getClasspathFromUrl_jarInFolderWithSpaces() throws Exception {
+        final URL url
+            = new URL("file:/c:/Program Files/oauth2-useragent-core.jar");
+        final String canonicalName = "com.microsoft.alm.oauth2.useragent.utils.PackageLocatorTest";
+
+        final File actual = PackageLocator.getClasspathFromUrl(url, canonicalName);
+
+        assertEquals("/c:/Program Files/oauth2-useragent-core.jar", actual);
+    }
+
+    @Test public void getClasspathFromUrl_nestedJar() throws Exception {
+        final URL url
+            = new URL("jar:file:/abc/d%20f.jar!/com/microsoft/alm/oauth2/useragent/utils/PackageLocatorTest.class");
+        final String canonicalName = "com.microsoft.alm.oauth2.useragent.utils.PackageLocatorTest";
+
+        final File actual = PackageLocator.getClasspathFromUrl(url, canonicalName);
+
+        assertEquals("/abc/d f.jar", actual);
+    }
+
+    @Test public void locatePackage_cachedPerClass() throws Exception {
+        PackageLocator.clearCache();
+        final PackageLocator first = new PackageLocator();
+        final PackageLocator second = new PackageLocator();
+
+        final File expected = first.locatePackage(testClazz);
+        final File actual = second.locatePackage(testClazz);
+
+        Assert.assertSame(expected, actual);
+        Assert.assertNotSame(expected, second.locatePackage(Assert.class));
+    }
+
+    @Test public void locatePackage_notCachedWithCustomAccessor() throws Exception {
+        final URL url
+                = new URL("jar:file:/abc/def.jar!/com/microsoft/alm/oauth2/useragent/utils/PackageLocatorTest.class");
+        when(classPropertyAccessorMock.getProtectionDomain(testClazz)).thenThrow(new SecurityException());
+        when(classPropertyAccessorMock.getResource(testClazz, testClazz.getSimpleName() + ".class")).thenReturn(url);
+        when(classPropertyAccessorMock.getCanonicalName(testClazz)).thenReturn(testClazz.getCanonicalName());
+        new PackageLocator().locatePackage(testClazz);
+
+        final File actual = underTest.locatePackage(testClazz);
+
+        assertEquals("/abc/def.jar", actual);
+    }
+
     private void assertEquals(final String expectedPath, final File actual) {
         final String expectedOsSpecificPath = toOSSpecific(expectedPath);
         final String actualPath = actual.getAbsolutePath();
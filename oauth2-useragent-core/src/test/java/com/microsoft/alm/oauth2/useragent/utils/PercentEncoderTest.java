@@ -0,0 +1,93 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+public class PercentEncoderTest {
+
+    private static final String[] SAMPLES = {
+        "",
+        "simple",
+        "a+b c&d=e%f~g",
+        "http://localhost:31415/?code=AAA&state=mystate",
+        "p\u00f6ng \u4e2d\u6587 \ud83d\ude00",
+        "tab\there\r\nnewline \u0001 \u007f",
+        "(b-o_n.g)*!'",
+    };
+
+    @Test public void encode_formMatchesUrlEncoder() throws Exception {
+        for (final String sample : SAMPLES) {
+            final String expected = URLEncoder.encode(sample, "UTF-8");
+
+            final String actual = PercentEncoder.FORM.encode(sample);
+
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    @Test public void encode_unpairedSurrogate() throws Exception {
+        final String input = "a\ud83db\ude00";
+
+        final String actual = PercentEncoder.FORM.encode(input);
+
+        Assert.assertEquals(URLEncoder.encode(input, "UTF-8"), actual);
+        Assert.assertEquals("a%3Fb%3F", actual);
+    }
+
+    @Test public void encode_customSafeCharacters() throws Exception {
+        final PercentEncoder cut = new PercentEncoder("/: ", false);
+
+        final String actual = cut.encode("C:/Program Files/+x");
+
+        Assert.assertEquals("C:/Program Files/%2Bx", actual);
+    }
+
+    @Test public void decode_formMatchesUrlDecoder() throws Exception {
+        for (final String sample : SAMPLES) {
+            final String encoded = URLEncoder.encode(sample, "UTF-8");
+
+            final String actual = PercentEncoder.FORM.decode(encoded);
+
+            Assert.assertEquals(URLDecoder.decode(encoded, "UTF-8"), actual);
+            Assert.assertEquals(sample, actual);
+        }
+    }
+
+    @Test public void decode_lowerCaseAndUnescaped() throws Exception {
+        final String input = "p%c3%b6ng+x*~!";
+
+        final String actual = PercentEncoder.FORM.decode(input);
+
+        Assert.assertEquals(URLDecoder.decode(input, "UTF-8"), actual);
+    }
+
+    @Test public void decode_nothingToDecodeReturnsSameInstance() throws Exception {
+        final String input = "nothing_to-decode.here";
+
+        final String actual = PercentEncoder.FORM.decode(input);
+
+        Assert.assertSame(input, actual);
+    }
+
+    @Test public void decode_plusIsLiteralWithoutSpaceAsPlus() throws Exception {
+        final PercentEncoder cut = new PercentEncoder("", false);
+
+        final String actual = cut.decode("a+b%20c");
+
+        Assert.assertEquals("a+b c", actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void decode_incompleteTrailingEscape() throws Exception {
+        PercentEncoder.FORM.decode("abc%4");
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void decode_illegalHexCharacters() throws Exception {
+        PercentEncoder.FORM.decode("abc%zz");
+    }
+}
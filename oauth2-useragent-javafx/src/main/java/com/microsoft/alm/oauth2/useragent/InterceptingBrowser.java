@@ -17,7 +17,9 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-class InterceptingBrowser extends Region implements ChangeListener<String> {
+class InterceptingBrowser extends Region implements ChangeListener<String>, RedirectInterceptor.Listener {
+
+    static final String CANCELLED_RESPONSE = "error=cancelled&error_description=The browser window was closed by the user.";
 
     private final Lock lock = new ReentrantLock();
     private final Condition responseReceived = lock.newCondition();
@@ -27,6 +29,13 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
     private String destinationUriString;
     private String redirectUriString;
     private String response;
+    /**
+     * Only set on the JavaFX Application Thread, right before the request's page is loaded,
+     * so that the (failed) loading of the previous request's redirect URI can't be mistaken
+     * for the current request's response.
+     */
+    private boolean awaitingResponse = false;
+    private boolean cancelled = false;
 
     public InterceptingBrowser() {
         webEngine.locationProperty().addListener(this);
@@ -34,9 +43,13 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
         final Worker<Void> loadWorker = webEngine.getLoadWorker();
         loadWorker.stateProperty().addListener(new ChangeListener<Worker.State>() {
             public void changed(final ObservableValue<? extends Worker.State> observable, final Worker.State oldValue, final Worker.State newValue) {
+                if (Worker.State.SUCCEEDED.equals(newValue)) {
+                    ProgressReporter.report(ProgressEvent.Type.PAGE_LOADED, webEngine.getLocation());
+                }
                 lock.lock();
                 try {
-                    if (Worker.State.FAILED.equals(newValue)) {
+                    if (awaitingResponse && Worker.State.FAILED.equals(newValue)) {
+                        awaitingResponse = false;
                         final Throwable exception = loadWorker.getException();
                         if (exception != null) {
                             response = AuthorizationException.toString("load_error", exception, null);
@@ -44,7 +57,7 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
                         else {
                             response = AuthorizationException.toString("load_error", "Exception details were not available", null);
                         }
-                        responseReceived.signal();
+                        responseReceived.signalAll();
                     }
                 }
                 finally {
@@ -67,18 +80,58 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
 
     @Override
     public void changed(final ObservableValue<? extends String> observable, final String oldValue, final String newValue) {
+        ProgressReporter.report(ProgressEvent.Type.LOCATION_CHANGED, newValue);
+        acceptRedirection(newValue);
+    }
+
+    @Override
+    public void redirectIntercepted(final String uriString) {
+        acceptRedirection(uriString);
+    }
+
+    private void acceptRedirection(final String newValue) {
         lock.lock();
         try {
-            if (matchesRedirection(redirectUriString, newValue)) {
-                response = UserAgentImpl.extractResponseFromRedirectUri(newValue);
-                responseReceived.signal();
+            if (!awaitingResponse || !matchesRedirection(redirectUriString, newValue)) {
+                return;
             }
+            awaitingResponse = false;
+        }
+        finally {
+            lock.unlock();
+        }
+        ProgressReporter.report(ProgressEvent.Type.REDIRECT_MATCHED, newValue);
+        // the redirect URI's page and whatever it references are of no use to anyone
+        stopLoading();
+
+        lock.lock();
+        try {
+            response = UserAgentImpl.extractResponseFromRedirectUri(newValue);
+            responseReceived.signalAll();
         }
         finally {
             lock.unlock();
         }
     }
 
+    /**
+     * Cancels the page being loaded, along with the requests for its resources.
+     * The cancellation happens right away on the JavaFX Application Thread, otherwise as soon as it can run there.
+     */
+    void stopLoading() {
+        if (Platform.isFxApplicationThread()) {
+            webEngine.getLoadWorker().cancel();
+        }
+        else {
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    webEngine.getLoadWorker().cancel();
+                }
+            });
+        }
+    }
+
     static boolean matchesRedirection(final String expectedRedirectUriString, final String actualUriString) {
         if (actualUriString == null) {
             return false;
@@ -123,20 +176,59 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
     }
 
     public void sendRequest(final URI destinationUri, final URI redirectUri) {
-        destinationUriString = destinationUri.toString();
-        redirectUriString = redirectUri.toString();
+        prepareRequest(destinationUri, redirectUri);
         Platform.runLater(new Runnable() {
             @Override
             public void run() {
-                webEngine.load(destinationUriString);
+                loadRequest();
             }
         });
     }
 
+    void prepareRequest(final URI destinationUri, final URI redirectUri) {
+        lock.lock();
+        try {
+            destinationUriString = destinationUri.toString();
+            redirectUriString = redirectUri.toString();
+            response = null;
+        }
+        finally {
+            lock.unlock();
+        }
+        final RedirectInterceptor interceptor = RedirectInterceptor.getInstalled();
+        if (interceptor != null) {
+            interceptor.expect(redirectUri.toString(), this);
+        }
+    }
+
+    /**
+     * Starts loading the prepared request.
+     * NOTE: This method must be called on the JavaFX Application Thread.
+     */
+    void loadRequest() {
+        final String uriString;
+        lock.lock();
+        try {
+            awaitingResponse = true;
+            uriString = destinationUriString;
+        }
+        finally {
+            lock.unlock();
+        }
+        ProgressReporter.report(ProgressEvent.Type.NAVIGATION_STARTED, uriString);
+        webEngine.load(uriString);
+    }
+
     public AuthorizationResponse waitForResponse() throws AuthorizationException {
         lock.lock();
         try {
-            responseReceived.awaitUninterruptibly();
+            // the response could have arrived before we started waiting
+            while (response == null && !cancelled) {
+                responseReceived.awaitUninterruptibly();
+            }
+            if (response == null) {
+                return AuthorizationResponse.fromString(CANCELLED_RESPONSE);
+            }
 
             return AuthorizationResponse.fromString(response);
         } finally {
@@ -147,8 +239,8 @@ class InterceptingBrowser extends Region implements ChangeListener<String> {
     public void cancel() {
         lock.lock();
         try {
-            response = "error=cancelled&error_description=The browser window was closed by the user.";
-            responseReceived.signal();
+            cancelled = true;
+            responseReceived.signalAll();
         }
         finally {
             lock.unlock();
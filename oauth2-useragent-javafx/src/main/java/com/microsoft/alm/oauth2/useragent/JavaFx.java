@@ -3,29 +3,246 @@
 
 package com.microsoft.alm.oauth2.useragent;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
 import javafx.scene.web.WebEngine;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
 import java.net.URI;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
 import java.util.List;
 
 public class JavaFx extends Application implements UserAgent, Runnable, RunnableFactory<JavaFx> {
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
     static RunnableFactory<JavaFx> RUNNABLE_FACTORY_OVERRIDE = null;
+    private static PersistentCookieStore persistentCookieStore = null;
+    private static FileLock profileLock = null;
+
+    /**
+     * Hands the browser over to the thread reading the parameters, which starts before the JavaFX toolkit
+     * does and might therefore have a request ready before there is anything to load it into.
+     */
+    private static final Object BROWSER_LOCK = new Object();
+    private static InterceptingBrowser sharedBrowser = null;
+    private static AuthorizationRequest earlyRequest = null;
+    private static boolean launchEnded = false;
+    private static boolean decodingStarted = false;
 
     private final RunnableFactory<JavaFx> runnableFactory;
     private InterceptingBrowser interceptingBrowser = null;
+    private String[] arguments = null;
 
     public static void main(final String[] args) {
-        launch(args);
+        RedirectInterceptor.install();
+        Preconnector.startFromSystemProperty();
+        installPersistentCookieStore();
+        DiskResponseCache.installFromSystemProperties();
+        startDecoding(args);
+        try {
+            launch(args);
+        }
+        finally {
+            abandonEarlyRequest();
+        }
+    }
+
+    /**
+     * Reads and validates the parameters from stdin while the JavaFX toolkit initializes,
+     * instead of waiting for the stage to be shown.
+     */
+    static void startDecoding(final String[] args) {
+        synchronized (BROWSER_LOCK) {
+            decodingStarted = true;
+        }
+        final JavaFx decoder = new JavaFx();
+        decoder.arguments = args;
+        final Runnable runnable = decoder.runnableFactory.create(decoder);
+        final Thread thread = new Thread(runnable);
+        thread.start();
+    }
+
+    /**
+     * Once the toolkit is ready, remembers how long it took to get there with the rendering profile
+     * the parent process selected and, if asked, loads the fonts before the page needs them.
+     * Both happen in the background so that the page keeps loading.
+     * NOTE: This method must be called on the JavaFX Application Thread.
+     */
+    static void startRenderingProbe() {
+        final RenderingProfile profile = RenderingProfile.parse(System.getProperty(RenderingProfile.SELECTED_PROFILE_PROPERTY_NAME));
+        final String environment = System.getProperty(RenderingProfile.ENVIRONMENT_PROPERTY_NAME);
+        final boolean prewarmFonts = Boolean.getBoolean(RenderingProfile.PREWARM_FONTS_PROPERTY_NAME);
+        if ((profile == null || environment == null) && !prewarmFonts) {
+            return;
+        }
+        final long startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                if (prewarmFonts) {
+                    for (final String family : Font.getFamilies()) {
+                        Font.font(family, Font.getDefault().getSize());
+                    }
+                }
+                if (profile != null && environment != null) {
+                    final boolean fellBack = profile.usesHardware() && isSoftwarePipeline();
+                    profile.recordStartup(RenderingProfile.PROBE_FILE, environment, startupMillis, fellBack);
+                }
+            }
+        }, "RenderingProbe");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Determines whether Prism ended up rendering in software, through its internal API.
+     *
+     * @return {@code true} if it did; {@code false} if it didn't or if that can't be determined,
+     *          such as on Java 9+, where the package isn't exported
+     */
+    static boolean isSoftwarePipeline() {
+        try {
+            final Class<?> graphicsPipeline = Class.forName("com.sun.prism.GraphicsPipeline");
+            final Object pipeline = graphicsPipeline.getMethod("getPipeline").invoke(null);
+            return pipeline != null && pipeline.getClass().getName().startsWith("com.sun.prism.sw.");
+        }
+        catch (final Exception ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * Wakes up the thread waiting for a browser that will never be created, such as when the toolkit fails to start.
+     */
+    static void abandonEarlyRequest() {
+        synchronized (BROWSER_LOCK) {
+            launchEnded = true;
+            BROWSER_LOCK.notifyAll();
+        }
+    }
+
+    /**
+     * Makes the browser available to {@link #requestAuthorizationCode(URI, URI)}, loading the request
+     * that arrived before the browser existed, if any.
+     * NOTE: This method must be called on the JavaFX Application Thread.
+     *
+     * @return {@code true} if the thread reading the parameters was started by {@link #main(String[])}.
+     */
+    static boolean publishBrowser(final InterceptingBrowser browser) {
+        final AuthorizationRequest pending;
+        final boolean result;
+        synchronized (BROWSER_LOCK) {
+            sharedBrowser = browser;
+            pending = earlyRequest;
+            earlyRequest = null;
+            if (pending != null) {
+                browser.prepareRequest(pending.getAuthorizationEndpoint(), pending.getRedirectUri());
+            }
+            result = decodingStarted;
+            BROWSER_LOCK.notifyAll();
+        }
+        if (pending != null) {
+            browser.loadRequest();
+        }
+        return result;
+    }
+
+    static InterceptingBrowser sendRequest(final URI authorizationEndpoint, final URI redirectUri)
+            throws AuthorizationException {
+        final InterceptingBrowser browser;
+        synchronized (BROWSER_LOCK) {
+            if (sharedBrowser == null) {
+                earlyRequest = new AuthorizationRequest(authorizationEndpoint, redirectUri);
+                boolean interrupted = false;
+                while (sharedBrowser == null && !launchEnded) {
+                    try {
+                        BROWSER_LOCK.wait();
+                    }
+                    catch (final InterruptedException ignored) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                if (sharedBrowser == null) {
+                    throw new AuthorizationException("javafx_error", "The JavaFX toolkit ended before the browser was created.", null, null);
+                }
+                // the browser was loading the request before it was handed over
+                return sharedBrowser;
+            }
+            browser = sharedBrowser;
+        }
+        browser.sendRequest(authorizationEndpoint, redirectUri);
+        return browser;
+    }
+
+    static File getProfileDirectory() {
+        final String profilePath = System.getProperty(ProfileStore.PROFILE_PATH_PROPERTY_NAME);
+        return profilePath == null ? null : new File(profilePath);
+    }
+
+    /**
+     * Must run before the {@link WebEngine} class is initialized,
+     * as it otherwise installs its own, in-memory, {@link CookieHandler}.
+     * Only with a persistent profile is WebKit's own cookie handling replaced by a {@link CookieManager},
+     * whose rules for matching and accepting cookies differ slightly.
+     * The profile stays locked until the process exits, so that it isn't evicted while in use.
+     */
+    static void installPersistentCookieStore() {
+        final File profileDirectory = getProfileDirectory();
+        if (profileDirectory != null) {
+            profileLock = ProfileStore.lockInUse(profileDirectory);
+            persistentCookieStore = new PersistentCookieStore(new File(profileDirectory, "cookies.txt"));
+            try {
+                persistentCookieStore.load();
+            }
+            catch (final IOException ignored) {
+                // start from an empty store
+            }
+            CookieHandler.setDefault(new CookieManager(persistentCookieStore, CookiePolicy.ACCEPT_ALL));
+        }
+    }
+
+    static void savePersistentCookieStore() {
+        if (persistentCookieStore != null) {
+            try {
+                persistentCookieStore.save();
+            }
+            catch (final IOException ignored) {
+                // the next request will just have to sign in again
+            }
+        }
+    }
+
+    static void setUserDataDirectory(final WebEngine webEngine) {
+        final File profileDirectory = getProfileDirectory();
+        if (profileDirectory != null) {
+            try {
+                webEngine.setUserDataDirectory(new File(profileDirectory, "webview"));
+            }
+            catch (final NoSuchMethodError ignored) {
+                // only available starting with JavaFX 8
+            }
+        }
     }
 
     public JavaFx() {
@@ -35,9 +252,19 @@ public class JavaFx extends Application implements UserAgent, Runnable, Runnable
     @Override
     public AuthorizationResponse requestAuthorizationCode(final URI authorizationEndpoint, final URI redirectUri)
             throws AuthorizationException {
-        interceptingBrowser.sendRequest(authorizationEndpoint, redirectUri);
+        final InterceptingBrowser browser = sendRequest(authorizationEndpoint, redirectUri);
+
+        return browser.waitForResponse();
+    }
 
-        return interceptingBrowser.waitForResponse();
+    @Override
+    public List<AuthorizationResponse> requestAuthorizationCodes(final List<AuthorizationRequest> requests)
+            throws AuthorizationException {
+        final List<AuthorizationResponse> result = new ArrayList<AuthorizationResponse>(requests.size());
+        for (final AuthorizationRequest request : requests) {
+            result.add(requestAuthorizationCode(request.getAuthorizationEndpoint(), request.getRedirectUri()));
+        }
+        return result;
     }
 
     /**
@@ -51,6 +278,8 @@ public class JavaFx extends Application implements UserAgent, Runnable, Runnable
      */
     @Override
     public void start(final Stage primaryStage) throws Exception {
+        ProgressReporter.report(ProgressEvent.Type.TOOLKIT_READY, null);
+        startRenderingProbe();
         // TODO: it would be nice if we could prepend the title with a user-supplied string
         primaryStage.setTitle("OAuth 2.0 Authorization Request");
 
@@ -59,12 +288,16 @@ public class JavaFx extends Application implements UserAgent, Runnable, Runnable
         addressBar.setEditable(false);
 
         interceptingBrowser = new InterceptingBrowser();
+        ProviderProbe.browserCreated();
         final WebEngine webEngine = interceptingBrowser.getWebEngine();
+        setUserDataDirectory(webEngine);
         webEngine.locationProperty().addListener(new ChangeListener<String>() {
             public void changed(final ObservableValue<? extends String> observable, final String oldValue, final String newValue) {
                 addressBar.setText(newValue);
             }
         });
+        // navigate as soon as possible: the stage doesn't need to be showing for the page to load
+        final boolean alreadyDecoding = publishBrowser(interceptingBrowser);
 
         final VBox vBox = new VBox(5);
         vBox.getChildren().setAll(addressBar, interceptingBrowser);
@@ -72,11 +305,37 @@ public class JavaFx extends Application implements UserAgent, Runnable, Runnable
 
         final Scene scene = new Scene(vBox);
         primaryStage.setScene(scene);
-        primaryStage.show();
+        primaryStage.setOnShown(new EventHandler<WindowEvent>() {
+            @Override
+            public void handle(final WindowEvent event) {
+                ProgressReporter.report(ProgressEvent.Type.WINDOW_SHOWN, null);
+            }
+        });
+        final int silentBudget = UserAgentImpl.getSilentBudgetMilliseconds(System.getProperties());
+        if (silentBudget > 0) {
+            // the process exits as soon as the response is sent, so the stage only
+            // ever appears if the authorization server needs the user's attention
+            final PauseTransition delay = new PauseTransition(Duration.millis(silentBudget));
+            delay.setOnFinished(new EventHandler<ActionEvent>() {
+                @Override
+                public void handle(final ActionEvent event) {
+                    primaryStage.show();
+                }
+            });
+            delay.play();
+        }
+        else {
+            primaryStage.show();
+        }
 
-        final Runnable runnable = runnableFactory.create(this);
-        final Thread thread = new Thread(runnable);
-        thread.start();
+        if (!alreadyDecoding) {
+            final List<String> parameterList = getParameters().getRaw();
+            //noinspection ToArrayCallWithZeroLengthArrayArgument
+            arguments = parameterList.toArray(EMPTY_STRING_ARRAY);
+            final Runnable runnable = runnableFactory.create(this);
+            final Thread thread = new Thread(runnable);
+            thread.start();
+        }
     }
 
     @Override
@@ -86,11 +345,8 @@ public class JavaFx extends Application implements UserAgent, Runnable, Runnable
 
     @Override
     public void run() {
-        final Parameters parameters = getParameters();
-        final List<String> parameterList = parameters.getRaw();
-        //noinspection ToArrayCallWithZeroLengthArrayArgument
-        final String[] args = parameterList.toArray(EMPTY_STRING_ARRAY);
-        UserAgentImpl.decode(this, args, System.in, System.out);
+        UserAgentImpl.decode(this, arguments, System.in, System.out);
+        savePersistentCookieStore();
         System.exit(0);
     }
 
@@ -0,0 +1,280 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import com.microsoft.alm.oauth2.useragent.utils.PercentEncoder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.net.CookieManager;
+import java.net.CookieStore;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.nio.channels.FileLock;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link CookieStore} that can save its persistent (i.e. non-session) cookies to a file
+ * and load them back in a later process, so that single sign-on survives between requests.
+ * Processes using the same file take turns through a lock on a sibling file and saving merges
+ * the cookies other processes saved in the meantime, except for those this one removed or replaced.
+ */
+class PersistentCookieStore implements CookieStore {
+
+    private static final String UTF_8 = "UTF-8";
+    private static final String SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 9;
+
+    private final File file;
+    private final CookieStore delegate = new CookieManager().getCookieStore();
+    private final Map<HttpCookie, Origin> origins = new LinkedHashMap<HttpCookie, Origin>();
+    private final Set<HttpCookie> removed = new HashSet<HttpCookie>();
+    private boolean removedAll = false;
+
+    PersistentCookieStore(final File file) {
+        this.file = file;
+    }
+
+    private static class Origin {
+        private final URI uri;
+        private final long expiresAt;
+
+        Origin(final URI uri, final long expiresAt) {
+            this.uri = uri;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Override
+    public synchronized void add(final URI uri, final HttpCookie cookie) {
+        delegate.add(uri, cookie);
+        if (cookie.getMaxAge() > 0) {
+            final long expiresAt = System.currentTimeMillis() + cookie.getMaxAge() * 1000L;
+            origins.put(cookie, new Origin(uri, expiresAt));
+            removed.remove(cookie);
+        }
+        else {
+            // either deleted or replaced by a session cookie
+            origins.remove(cookie);
+            removed.add(cookie);
+        }
+    }
+
+    @Override
+    public synchronized List<HttpCookie> get(final URI uri) {
+        return delegate.get(uri);
+    }
+
+    @Override
+    public synchronized List<HttpCookie> getCookies() {
+        return delegate.getCookies();
+    }
+
+    @Override
+    public synchronized List<URI> getURIs() {
+        return delegate.getURIs();
+    }
+
+    @Override
+    public synchronized boolean remove(final URI uri, final HttpCookie cookie) {
+        origins.remove(cookie);
+        removed.add(cookie);
+        return delegate.remove(uri, cookie);
+    }
+
+    @Override
+    public synchronized boolean removeAll() {
+        origins.clear();
+        removed.clear();
+        removedAll = true;
+        return delegate.removeAll();
+    }
+
+    /**
+     * Adds the unexpired cookies from the file, if it exists.
+     * Lines that can't be understood are skipped.
+     */
+    synchronized void load() throws IOException {
+        final FileLock lock = lock();
+        try {
+            read(false);
+        }
+        finally {
+            release(lock);
+        }
+    }
+
+    /**
+     * Writes the persistent cookies that haven't expired (or been removed) to the file,
+     * along with those other processes saved since, unless they were removed or replaced here.
+     */
+    synchronized void save() throws IOException {
+        final FileLock lock = lock();
+        try {
+            if (!removedAll) {
+                read(true);
+            }
+            write();
+        }
+        finally {
+            release(lock);
+        }
+    }
+
+    private FileLock lock() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            if (!parent.mkdirs()) {
+                throw new IOException("Unable to create " + parent);
+            }
+            ProfileStore.restrictToOwner(parent);
+        }
+        final RandomAccessFile lockFile = new RandomAccessFile(new File(parent, file.getName() + ".lock"), "rw");
+        try {
+            return lockFile.getChannel().lock();
+        }
+        catch (final IOException e) {
+            lockFile.close();
+            throw e;
+        }
+    }
+
+    private static void release(final FileLock lock) throws IOException {
+        try {
+            lock.release();
+        }
+        finally {
+            lock.channel().close();
+        }
+    }
+
+    private void read(final boolean merging) throws IOException {
+        final FileInputStream fis;
+        try {
+            fis = new FileInputStream(file);
+        }
+        catch (final FileNotFoundException ignored) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(fis, UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length != FIELD_COUNT) {
+                    continue;
+                }
+                try {
+                    final long expiresAt = Long.parseLong(fields[5]);
+                    final long maxAge = (expiresAt - now) / 1000L;
+                    if (maxAge <= 0) {
+                        continue;
+                    }
+                    final URI uri = URI.create(decode(fields[0]));
+                    final HttpCookie cookie = new HttpCookie(decode(fields[1]), decode(fields[2]));
+                    cookie.setDomain(decodeNullable(fields[3]));
+                    cookie.setPath(decodeNullable(fields[4]));
+                    cookie.setMaxAge(maxAge);
+                    cookie.setSecure(Boolean.parseBoolean(fields[6]));
+                    cookie.setHttpOnly(Boolean.parseBoolean(fields[7]));
+                    cookie.setVersion(Integer.parseInt(fields[8]));
+                    if (merging && (removed.contains(cookie) || origins.containsKey(cookie))) {
+                        continue;
+                    }
+                    delegate.add(uri, cookie);
+                    origins.put(cookie, new Origin(uri, expiresAt));
+                }
+                catch (final IllegalArgumentException ignored) {
+                    // includes NumberFormatException
+                }
+            }
+        }
+        finally {
+            fis.close();
+        }
+    }
+
+    private void write() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        final File temp = new File(parent, file.getName() + ".tmp");
+        // the cookies are as good as the user's credentials: nobody else may read them, not even briefly
+        //noinspection ResultOfMethodCallIgnored
+        temp.delete();
+        if (!temp.createNewFile()) {
+            throw new IOException("Unable to create " + temp);
+        }
+        ProfileStore.restrictToOwner(temp);
+        final long now = System.currentTimeMillis();
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+        try {
+            // getCookies() drops any cookies that have expired
+            for (final HttpCookie cookie : delegate.getCookies()) {
+                final Origin origin = origins.get(cookie);
+                if (origin == null || origin.expiresAt <= now) {
+                    continue;
+                }
+                writer.print(encode(origin.uri.toString()));
+                writer.print(SEPARATOR);
+                writer.print(encode(cookie.getName()));
+                writer.print(SEPARATOR);
+                writer.print(encode(cookie.getValue()));
+                writer.print(SEPARATOR);
+                writer.print(encode(cookie.getDomain()));
+                writer.print(SEPARATOR);
+                writer.print(encode(cookie.getPath()));
+                writer.print(SEPARATOR);
+                writer.print(origin.expiresAt);
+                writer.print(SEPARATOR);
+                writer.print(cookie.getSecure());
+                writer.print(SEPARATOR);
+                writer.print(cookie.isHttpOnly());
+                writer.print(SEPARATOR);
+                writer.print(cookie.getVersion());
+                writer.print('\n');
+            }
+        }
+        finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Unable to write " + temp);
+        }
+        // File.renameTo() won't replace an existing file on Windows
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+    }
+
+    static String encode(final String value) {
+        if (value == null) {
+            return "";
+        }
+        return PercentEncoder.FORM.encode(value);
+    }
+
+    static String decode(final String value) {
+        return PercentEncoder.FORM.decode(value);
+    }
+
+    static String decodeNullable(final String value) {
+        return value.length() == 0 ? null : decode(value);
+    }
+}
@@ -0,0 +1,408 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.ProtocolException;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Forwards everything to the connection the JRE would have used, timing the phases of the request
+ * for the {@link NetworkRecorder}: resolving the host name, connecting (including the TLS handshake),
+ * waiting for the response headers and receiving the body.
+ */
+class RecordingConnection extends HttpURLConnection {
+
+    private final HttpURLConnection delegate;
+    private final NetworkRecorder recorder;
+    private final NetworkRecorder.Entry entry;
+    private final long startNanos;
+    private final AtomicBoolean recorded = new AtomicBoolean(false);
+    private long connectedNanos = NetworkRecorder.UNKNOWN;
+    private long respondedNanos = NetworkRecorder.UNKNOWN;
+    private long bodySize = 0;
+
+    RecordingConnection(final HttpURLConnection delegate, final NetworkRecorder recorder) {
+        super(delegate.getURL());
+        this.delegate = delegate;
+        this.recorder = recorder;
+        this.entry = new NetworkRecorder.Entry(System.currentTimeMillis(), delegate.getURL().toExternalForm());
+        this.startNanos = System.nanoTime();
+    }
+
+    static boolean isDirect(final URL url) {
+        final ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) {
+            return true;
+        }
+        try {
+            final List<Proxy> proxies = proxySelector.select(url.toURI());
+            return proxies.isEmpty() || proxies.get(0).type() == Proxy.Type.DIRECT;
+        }
+        catch (final URISyntaxException ignored) {
+            return false;
+        }
+        catch (final IllegalArgumentException ignored) {
+            return false;
+        }
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (connectedNanos != NetworkRecorder.UNKNOWN) {
+            return;
+        }
+        final URL url = delegate.getURL();
+        final String host = url.getHost();
+        long connectStart = System.nanoTime();
+        // resolve the name ahead of the connection, which will find it in the JVM's cache;
+        // the proxy resolves it otherwise
+        if (host != null && host.length() > 0 && isDirect(url)) {
+            try {
+                InetAddress.getAllByName(host);
+                final long resolved = System.nanoTime();
+                entry.dnsNanos = resolved - connectStart;
+                connectStart = resolved;
+            }
+            catch (final IOException ignored) {
+                // the connection will report it
+            }
+        }
+        try {
+            delegate.connect();
+        }
+        catch (final IOException e) {
+            fail(e);
+            throw e;
+        }
+        connectedNanos = System.nanoTime();
+        connected = true;
+        entry.connectNanos = connectedNanos - connectStart;
+    }
+
+    private void awaitResponse() throws IOException {
+        if (respondedNanos != NetworkRecorder.UNKNOWN) {
+            return;
+        }
+        connect();
+        final int status;
+        try {
+            status = delegate.getResponseCode();
+        }
+        catch (final IOException e) {
+            fail(e);
+            throw e;
+        }
+        respondedNanos = System.nanoTime();
+        entry.method = delegate.getRequestMethod();
+        entry.status = status;
+        final String message = delegate.getResponseMessage();
+        entry.statusText = message == null ? "" : message;
+        final String contentType = delegate.getContentType();
+        entry.mimeType = contentType == null ? "" : contentType;
+        final String location = delegate.getHeaderField("Location");
+        entry.redirectUrl = location == null ? "" : location;
+        entry.waitNanos = respondedNanos - connectedNanos;
+    }
+
+    private void fail(final IOException e) {
+        entry.comment = e.toString();
+        finish();
+    }
+
+    void finish() {
+        if (recorded.compareAndSet(false, true)) {
+            if (respondedNanos != NetworkRecorder.UNKNOWN) {
+                entry.receiveNanos = System.nanoTime() - respondedNanos;
+                entry.bodySize = bodySize;
+            }
+            else if (entry.connectNanos == NetworkRecorder.UNKNOWN && entry.comment == null) {
+                entry.comment = "The request was abandoned after " + (System.nanoTime() - startNanos) / 1000000 + " ms.";
+            }
+            recorder.record(entry);
+        }
+    }
+
+    private InputStream wrap(final InputStream stream) {
+        if (stream == null) {
+            finish();
+            return null;
+        }
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                final int result = super.read();
+                if (result == -1) {
+                    finish();
+                }
+                else {
+                    bodySize++;
+                }
+                return result;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int result = super.read(b, off, len);
+                if (result == -1) {
+                    finish();
+                }
+                else {
+                    bodySize += result;
+                }
+                return result;
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+                super.close();
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        awaitResponse();
+        final InputStream stream;
+        try {
+            stream = delegate.getInputStream();
+        }
+        catch (final IOException e) {
+            finish();
+            throw e;
+        }
+        return wrap(stream);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        if (respondedNanos == NetworkRecorder.UNKNOWN) {
+            return delegate.getErrorStream();
+        }
+        return wrap(delegate.getErrorStream());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        connect();
+        return delegate.getOutputStream();
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        awaitResponse();
+        return delegate.getResponseCode();
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        awaitResponse();
+        return delegate.getResponseMessage();
+    }
+
+    @Override
+    public String getHeaderField(final String name) {
+        try {
+            awaitResponse();
+        }
+        catch (final IOException ignored) {
+            // the delegate returns null, too
+        }
+        return delegate.getHeaderField(name);
+    }
+
+    @Override
+    public String getHeaderField(final int n) {
+        try {
+            awaitResponse();
+        }
+        catch (final IOException ignored) {
+        }
+        return delegate.getHeaderField(n);
+    }
+
+    @Override
+    public String getHeaderFieldKey(final int n) {
+        try {
+            awaitResponse();
+        }
+        catch (final IOException ignored) {
+        }
+        return delegate.getHeaderFieldKey(n);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        try {
+            awaitResponse();
+        }
+        catch (final IOException ignored) {
+        }
+        return delegate.getHeaderFields();
+    }
+
+    @Override
+    public void disconnect() {
+        finish();
+        delegate.disconnect();
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return delegate.usingProxy();
+    }
+
+    @Override
+    public URL getURL() {
+        return delegate.getURL();
+    }
+
+    @Override
+    public Permission getPermission() throws IOException {
+        return delegate.getPermission();
+    }
+
+    @Override
+    public void setRequestMethod(final String method) throws ProtocolException {
+        delegate.setRequestMethod(method);
+    }
+
+    @Override
+    public String getRequestMethod() {
+        return delegate.getRequestMethod();
+    }
+
+    @Override
+    public void setInstanceFollowRedirects(final boolean followRedirects) {
+        delegate.setInstanceFollowRedirects(followRedirects);
+    }
+
+    @Override
+    public boolean getInstanceFollowRedirects() {
+        return delegate.getInstanceFollowRedirects();
+    }
+
+    @Override
+    public void setRequestProperty(final String key, final String value) {
+        delegate.setRequestProperty(key, value);
+    }
+
+    @Override
+    public void addRequestProperty(final String key, final String value) {
+        delegate.addRequestProperty(key, value);
+    }
+
+    @Override
+    public String getRequestProperty(final String key) {
+        return delegate.getRequestProperty(key);
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestProperties() {
+        return delegate.getRequestProperties();
+    }
+
+    @Override
+    public void setConnectTimeout(final int timeout) {
+        delegate.setConnectTimeout(timeout);
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return delegate.getConnectTimeout();
+    }
+
+    @Override
+    public void setReadTimeout(final int timeout) {
+        delegate.setReadTimeout(timeout);
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return delegate.getReadTimeout();
+    }
+
+    @Override
+    public void setDoInput(final boolean doInput) {
+        delegate.setDoInput(doInput);
+    }
+
+    @Override
+    public boolean getDoInput() {
+        return delegate.getDoInput();
+    }
+
+    @Override
+    public void setDoOutput(final boolean doOutput) {
+        delegate.setDoOutput(doOutput);
+    }
+
+    @Override
+    public boolean getDoOutput() {
+        return delegate.getDoOutput();
+    }
+
+    @Override
+    public void setUseCaches(final boolean useCaches) {
+        delegate.setUseCaches(useCaches);
+    }
+
+    @Override
+    public boolean getUseCaches() {
+        return delegate.getUseCaches();
+    }
+
+    @Override
+    public void setAllowUserInteraction(final boolean allowUserInteraction) {
+        delegate.setAllowUserInteraction(allowUserInteraction);
+    }
+
+    @Override
+    public boolean getAllowUserInteraction() {
+        return delegate.getAllowUserInteraction();
+    }
+
+    @Override
+    public void setIfModifiedSince(final long ifModifiedSince) {
+        delegate.setIfModifiedSince(ifModifiedSince);
+    }
+
+    @Override
+    public long getIfModifiedSince() {
+        return delegate.getIfModifiedSince();
+    }
+
+    @Override
+    public void setChunkedStreamingMode(final int chunkLength) {
+        delegate.setChunkedStreamingMode(chunkLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(final int contentLength) {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public void setFixedLengthStreamingMode(final long contentLength) {
+        delegate.setFixedLengthStreamingMode(contentLength);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,341 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Answers the browser's request for the redirect URI from within the process, so that no connection is
+ * attempted (for an {@code http://localhost} redirect URI with nothing listening, that means waiting
+ * for the connection to be refused or to time out) and the response is known before the
+ * {@link javafx.scene.web.WebEngine}'s location even changes.
+ * The requests the {@link RequestFilter} denies are answered with an empty page, too.
+ * Every other URL is handed to the handler the JRE would have used, through a {@link RecordingConnection}
+ * if the {@link NetworkRecorder} is enabled.
+ * A scheme the JRE has no handler for, like the custom scheme of a native application's redirect URI,
+ * gets one that only answers the redirect URI and otherwise fails to connect, as no handler would have;
+ * the other schemes, like {@code file} or {@code jar}, are left to their usual handlers.
+ */
+class RedirectInterceptor implements URLStreamHandlerFactory {
+
+    private static final Logger logger = Logger.getLogger(RedirectInterceptor.class.getName());
+    private static final String[] NETWORK_PROTOCOLS = {"http", "https"};
+    private static final String JRE_HANDLER_PACKAGE = "sun.net.www.protocol";
+    private static final String HANDLER_PACKAGES_PROPERTY_NAME = "java.protocol.handler.pkgs";
+    private static volatile RedirectInterceptor installed = null;
+
+    interface Listener {
+        /**
+         * Called from the thread loading the page, instead of connecting to the redirect URI.
+         *
+         * @param uriString the URI the browser was sent to, which starts with the expected redirect URI
+         */
+        void redirectIntercepted(final String uriString);
+    }
+
+    private final Map<String, URL> defaultHandlerTemplates;
+    private final RequestFilter requestFilter;
+    private final NetworkRecorder networkRecorder;
+    private volatile String redirectUriString = null;
+    private volatile Listener listener = null;
+
+    /**
+     * Must be called before the {@link URLStreamHandlerFactory} is installed, as the templates
+     * must carry the handlers the JRE would have used.
+     *
+     * @param requestFilter the rules deciding which requests to send, or {@code null} to send them all
+     * @param networkRecorder where to record the requests, or {@code null} to not record them
+     */
+    RedirectInterceptor(final RequestFilter requestFilter, final NetworkRecorder networkRecorder) {
+        this.requestFilter = requestFilter;
+        this.networkRecorder = networkRecorder;
+        final Map<String, URL> templates = new HashMap<String, URL>();
+        for (final String protocol : NETWORK_PROTOCOLS) {
+            try {
+                templates.put(protocol, new URL(protocol, "localhost", "/"));
+            }
+            catch (final MalformedURLException ignored) {
+                // this JRE can't load such URLs anyway
+            }
+        }
+        this.defaultHandlerTemplates = templates;
+    }
+
+    /**
+     * Installs an interceptor for the whole process, unless another {@link URLStreamHandlerFactory}
+     * was installed first.
+     * Must run before the {@link javafx.scene.web.WebEngine} class is initialized.
+     *
+     * @return the installed interceptor, or {@code null}
+     */
+    static RedirectInterceptor install() {
+        final RequestFilter requestFilter = RequestFilter.fromProperties(System.getProperties());
+        final NetworkRecorder networkRecorder = NetworkRecorder.installFromSystemProperties();
+        final RedirectInterceptor interceptor = new RedirectInterceptor(requestFilter, networkRecorder);
+        try {
+            URL.setURLStreamHandlerFactory(interceptor);
+        }
+        catch (final Error e) {
+            logger.log(Level.FINE, "Another URLStreamHandlerFactory was already installed", e);
+            return null;
+        }
+        installed = interceptor;
+        return interceptor;
+    }
+
+    static RedirectInterceptor getInstalled() {
+        return installed;
+    }
+
+    /**
+     * Sets the redirect URI of the request about to be loaded and who to tell when the browser is sent to it.
+     */
+    void expect(final String redirectUriString, final Listener listener) {
+        this.listener = listener;
+        this.redirectUriString = redirectUriString;
+        if (networkRecorder != null && redirectUriString != null) {
+            networkRecorder.setRedirectUri(redirectUriString);
+        }
+    }
+
+    boolean intercept(final URL url) {
+        final String expected = redirectUriString;
+        if (expected == null) {
+            return false;
+        }
+        final String actual = url.toExternalForm();
+        final boolean matches;
+        try {
+            matches = InterceptingBrowser.matchesRedirection(expected, actual);
+        }
+        catch (final IllegalArgumentException ignored) {
+            return false;
+        }
+        if (matches) {
+            final Listener current = listener;
+            if (current != null) {
+                current.redirectIntercepted(actual);
+            }
+        }
+        return matches;
+    }
+
+    boolean isBlocked(final URL url) {
+        if (requestFilter == null) {
+            return false;
+        }
+        try {
+            return !requestFilter.allow(url.toURI());
+        }
+        catch (final URISyntaxException ignored) {
+            return false;
+        }
+    }
+
+    URLConnection answer(final URL u, final String statusLine, final String comment) {
+        if (networkRecorder != null) {
+            final NetworkRecorder.Entry entry = new NetworkRecorder.Entry(System.currentTimeMillis(), u.toExternalForm());
+            entry.status = Integer.parseInt(statusLine.substring(9, 12));
+            entry.statusText = statusLine.substring(13);
+            entry.bodySize = 0;
+            entry.comment = comment;
+            networkRecorder.record(entry);
+        }
+        return new InterceptedConnection(u, statusLine);
+    }
+
+    URLConnection record(final URLConnection connection) {
+        if (networkRecorder != null && connection instanceof HttpURLConnection) {
+            return new RecordingConnection((HttpURLConnection) connection, networkRecorder);
+        }
+        return connection;
+    }
+
+    @Override
+    public URLStreamHandler createURLStreamHandler(final String protocol) {
+        final URL template = defaultHandlerTemplates.get(protocol);
+        if (template != null) {
+            return new InterceptingHandler(template);
+        }
+        return hasHandler(protocol) ? null : new RedirectOnlyHandler();
+    }
+
+    /**
+     * Looks for a handler where {@link URL} would, short of asking this factory again:
+     * in the packages listed by the {@code java.protocol.handler.pkgs} system property, then in the JRE.
+     */
+    static boolean hasHandler(final String protocol) {
+        final List<String> packages = new ArrayList<String>();
+        final String handlerPackages = System.getProperty(HANDLER_PACKAGES_PROPERTY_NAME);
+        if (handlerPackages != null) {
+            for (final String handlerPackage : handlerPackages.split("\\|")) {
+                final String trimmed = handlerPackage.trim();
+                if (trimmed.length() > 0) {
+                    packages.add(trimmed);
+                }
+            }
+        }
+        packages.add(JRE_HANDLER_PACKAGE);
+        for (final String handlerPackage : packages) {
+            final String className = handlerPackage + "." + protocol + ".Handler";
+            try {
+                Class.forName(className, false, ClassLoader.getSystemClassLoader());
+                return true;
+            }
+            catch (final ClassNotFoundException ignored) {
+            }
+        }
+        return false;
+    }
+
+    class RedirectOnlyHandler extends URLStreamHandler {
+
+        @Override
+        protected URLConnection openConnection(final URL u) throws IOException {
+            if (intercept(u)) {
+                return answer(u, InterceptedConnection.OK, "The redirect URI was intercepted.");
+            }
+            throw new IOException("There is no handler for the '" + u.getProtocol() + "' protocol.");
+        }
+    }
+
+    class InterceptingHandler extends URLStreamHandler {
+
+        private final URL template;
+
+        InterceptingHandler(final URL template) {
+            this.template = template;
+        }
+
+        /**
+         * A URL with the same protocol as its context inherits the context's handler.
+         */
+        URL toDefaultUrl(final URL u) throws MalformedURLException {
+            return new URL(template, u.toExternalForm());
+        }
+
+        @Override
+        protected URLConnection openConnection(final URL u) throws IOException {
+            if (intercept(u)) {
+                return answer(u, InterceptedConnection.OK, "The redirect URI was intercepted.");
+            }
+            if (isBlocked(u)) {
+                return answer(u, InterceptedConnection.FORBIDDEN, "The request was blocked.");
+            }
+            return record(toDefaultUrl(u).openConnection());
+        }
+
+        @Override
+        protected URLConnection openConnection(final URL u, final Proxy p) throws IOException {
+            if (intercept(u)) {
+                return answer(u, InterceptedConnection.OK, "The redirect URI was intercepted.");
+            }
+            if (isBlocked(u)) {
+                return answer(u, InterceptedConnection.FORBIDDEN, "The request was blocked.");
+            }
+            return record(toDefaultUrl(u).openConnection(p));
+        }
+
+        @Override
+        protected int getDefaultPort() {
+            return template.getDefaultPort();
+        }
+    }
+
+    /**
+     * An empty page that was never downloaded.
+     */
+    static class InterceptedConnection extends HttpURLConnection {
+
+        static final String OK = "HTTP/1.1 200 OK";
+        static final String FORBIDDEN = "HTTP/1.1 403 Forbidden";
+
+        private static final byte[] EMPTY_BODY = new byte[0];
+
+        private final List<String> headerNames = new ArrayList<String>();
+        private final List<String> headerValues = new ArrayList<String>();
+
+        InterceptedConnection(final URL u, final String statusLine) {
+            super(u);
+            addHeader(null, statusLine);
+            addHeader("Content-Type", "text/html");
+            addHeader("Content-Length", "0");
+            addHeader("Cache-Control", "no-store");
+        }
+
+        private void addHeader(final String name, final String value) {
+            headerNames.add(name);
+            headerValues.add(value);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            // void, there is nothing to connect to
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            connect();
+            return new ByteArrayInputStream(EMPTY_BODY);
+        }
+
+        @Override
+        public String getHeaderFieldKey(final int n) {
+            return n < headerNames.size() ? headerNames.get(n) : null;
+        }
+
+        @Override
+        public String getHeaderField(final int n) {
+            return n < headerValues.size() ? headerValues.get(n) : null;
+        }
+
+        @Override
+        public String getHeaderField(final String name) {
+            for (int i = headerNames.size() - 1; i >= 0; i--) {
+                final String headerName = headerNames.get(i);
+                if (headerName == null ? name == null : headerName.equalsIgnoreCase(name)) {
+                    return headerValues.get(i);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            final Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+            for (int i = 0; i < headerNames.size(); i++) {
+                result.put(headerNames.get(i), Collections.singletonList(headerValues.get(i)));
+            }
+            return Collections.unmodifiableMap(result);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpCookie;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * A class to test {@link PersistentCookieStore}.
+ */
+public class PersistentCookieStoreTest {
+
+    private static final URI LOGIN_URI = URI.create("https://login.example.com/common/oauth2/authorize");
+
+    private File file;
+
+    @Before
+    public void createTemporaryFile() throws IOException {
+        file = File.createTempFile("cookies", "txt");
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @After
+    public void deleteTemporaryFile() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(file.getParentFile(), file.getName() + ".lock").delete();
+    }
+
+    private static HttpCookie createCookie(final String name, final String value, final long maxAge) {
+        final HttpCookie result = new HttpCookie(name, value);
+        result.setDomain("login.example.com");
+        result.setPath("/");
+        result.setMaxAge(maxAge);
+        result.setSecure(true);
+        result.setHttpOnly(true);
+        return result;
+    }
+
+    @Test
+    public void saveThenLoad_persistentCookiesSurvive() throws Exception {
+        final PersistentCookieStore original = new PersistentCookieStore(file);
+        original.add(LOGIN_URI, createCookie("ESTSAUTHPERSISTENT", "a b\tc=d;%", 3600));
+        original.add(LOGIN_URI, createCookie("session", "ephemeral", -1));
+        original.save();
+
+        final PersistentCookieStore cut = new PersistentCookieStore(file);
+        cut.load();
+
+        final List<HttpCookie> actual = cut.get(LOGIN_URI);
+        Assert.assertEquals(1, actual.size());
+        final HttpCookie cookie = actual.get(0);
+        Assert.assertEquals("ESTSAUTHPERSISTENT", cookie.getName());
+        Assert.assertEquals("a b\tc=d;%", cookie.getValue());
+        Assert.assertEquals("login.example.com", cookie.getDomain());
+        Assert.assertEquals("/", cookie.getPath());
+        Assert.assertTrue(cookie.getSecure());
+        Assert.assertTrue(cookie.isHttpOnly());
+        Assert.assertTrue(cookie.getMaxAge() > 3500);
+    }
+
+    @Test
+    public void save_removedCookiesAreForgotten() throws Exception {
+        final PersistentCookieStore original = new PersistentCookieStore(file);
+        final HttpCookie cookie = createCookie("ESTSAUTHPERSISTENT", "value", 3600);
+        original.add(LOGIN_URI, cookie);
+        original.remove(LOGIN_URI, cookie);
+        original.save();
+
+        final PersistentCookieStore cut = new PersistentCookieStore(file);
+        cut.load();
+
+        Assert.assertEquals(0, cut.getCookies().size());
+    }
+
+    @Test
+    public void save_mergesCookiesSavedByOthers() throws Exception {
+        final PersistentCookieStore first = new PersistentCookieStore(file);
+        first.load();
+        final PersistentCookieStore second = new PersistentCookieStore(file);
+        second.load();
+        first.add(LOGIN_URI, createCookie("first", "1", 3600));
+        second.add(LOGIN_URI, createCookie("second", "2", 3600));
+        first.save();
+        second.save();
+
+        final PersistentCookieStore cut = new PersistentCookieStore(file);
+        cut.load();
+
+        Assert.assertEquals(2, cut.getCookies().size());
+    }
+
+    @Test
+    public void save_doesNotMergeCookiesRemovedSinceLoading() throws Exception {
+        final PersistentCookieStore original = new PersistentCookieStore(file);
+        original.add(LOGIN_URI, createCookie("ESTSAUTHPERSISTENT", "value", 3600));
+        original.save();
+        final PersistentCookieStore other = new PersistentCookieStore(file);
+        other.load();
+        other.remove(LOGIN_URI, other.getCookies().get(0));
+        other.save();
+
+        final PersistentCookieStore cut = new PersistentCookieStore(file);
+        cut.load();
+
+        Assert.assertEquals(0, cut.getCookies().size());
+    }
+
+    @Test
+    public void load_missingFile() throws Exception {
+        final PersistentCookieStore cut = new PersistentCookieStore(file);
+
+        cut.load();
+
+        Assert.assertEquals(0, cut.getCookies().size());
+    }
+}
@@ -0,0 +1,149 @@
+// Copyright (c) Microsoft. All rights reserved.
+// Licensed under the MIT license. See License.txt in the project root.
+
+package com.microsoft.alm.oauth2.useragent;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class to test {@link RedirectInterceptor}.
+ */
+public class RedirectInterceptorTest {
+
+    private static URL createUrl(final RedirectInterceptor interceptor, final String protocol, final String spec) throws Exception {
+        final URLStreamHandler handler = interceptor.createURLStreamHandler(protocol);
+        return new URL(null, spec, handler);
+    }
+
+    @Test
+    public void openConnection_redirectUriIsAnsweredWithoutConnecting() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+        final List<String> intercepted = new ArrayList<String>();
+        cut.expect("http://localhost:1/callback", new RedirectInterceptor.Listener() {
+            @Override
+            public void redirectIntercepted(final String uriString) {
+                intercepted.add(uriString);
+            }
+        });
+        final URL url = createUrl(cut, "http", "http://localhost:1/callback?code=steak&state=chicken");
+
+        final URLConnection actual = url.openConnection();
+
+        Assert.assertTrue(actual instanceof RedirectInterceptor.InterceptedConnection);
+        final HttpURLConnection connection = (HttpURLConnection) actual;
+        Assert.assertEquals(200, connection.getResponseCode());
+        Assert.assertEquals("text/html", connection.getContentType());
+        final InputStream body = connection.getInputStream();
+        Assert.assertEquals(-1, body.read());
+        Assert.assertEquals(1, intercepted.size());
+        Assert.assertEquals("http://localhost:1/callback?code=steak&state=chicken", intercepted.get(0));
+    }
+
+    @Test
+    public void openConnection_otherUrlsUseTheDefaultHandler() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+        final List<String> intercepted = new ArrayList<String>();
+        cut.expect("https://localhost:1/callback", new RedirectInterceptor.Listener() {
+            @Override
+            public void redirectIntercepted(final String uriString) {
+                intercepted.add(uriString);
+            }
+        });
+        final URL url = createUrl(cut, "https", "https://login.example.com/oauth2/authorize");
+
+        final URLConnection actual = url.openConnection();
+
+        Assert.assertFalse(actual instanceof RedirectInterceptor.InterceptedConnection);
+        Assert.assertTrue(actual instanceof HttpURLConnection);
+        Assert.assertEquals(0, intercepted.size());
+    }
+
+    @Test
+    public void openConnection_nothingExpected() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+        final URL url = createUrl(cut, "http", "http://localhost:1/callback?code=steak");
+
+        final URLConnection actual = url.openConnection();
+
+        Assert.assertFalse(actual instanceof RedirectInterceptor.InterceptedConnection);
+    }
+
+    @Test
+    public void openConnection_deniedRequestsAreAnsweredWithoutConnecting() throws Exception {
+        final RequestFilter filter = new RequestFilter(RequestFilter.parseRules("deny:*.google-analytics.com"));
+        final RedirectInterceptor cut = new RedirectInterceptor(filter, null);
+        final URL denied = createUrl(cut, "https", "https://www.google-analytics.com/collect?v=1");
+        final URL allowed = createUrl(cut, "https", "https://login.example.com/oauth2/authorize");
+
+        final URLConnection actualDenied;
+        final URLConnection actualAllowed;
+        ProgressReporter.attach(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            actualDenied = denied.openConnection();
+            actualAllowed = allowed.openConnection();
+        }
+        finally {
+            ProgressReporter.detach();
+        }
+
+        Assert.assertTrue(actualDenied instanceof RedirectInterceptor.InterceptedConnection);
+        Assert.assertEquals(403, ((HttpURLConnection) actualDenied).getResponseCode());
+        Assert.assertFalse(actualAllowed instanceof RedirectInterceptor.InterceptedConnection);
+        Assert.assertEquals(1, filter.getBlockedCount());
+    }
+
+    @Test
+    public void createURLStreamHandler_keepsDefaultPorts() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+
+        Assert.assertEquals(80, createUrl(cut, "http", "http://localhost/").getDefaultPort());
+        Assert.assertEquals(443, createUrl(cut, "https", "https://localhost/").getDefaultPort());
+    }
+
+    @Test
+    public void createURLStreamHandler_otherSchemesAreLeftAlone() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+
+        Assert.assertNull(cut.createURLStreamHandler("ftp"));
+        Assert.assertNull(cut.createURLStreamHandler("file"));
+        Assert.assertNull(cut.createURLStreamHandler("jar"));
+    }
+
+    @Test
+    public void openConnection_customSchemeRedirectUriIsAnswered() throws Exception {
+        final RedirectInterceptor cut = new RedirectInterceptor(null, null);
+        final List<String> intercepted = new ArrayList<String>();
+        cut.expect("ms-app://s-1-15-2-1234/callback", new RedirectInterceptor.Listener() {
+            @Override
+            public void redirectIntercepted(final String uriString) {
+                intercepted.add(uriString);
+            }
+        });
+        final URL redirect = createUrl(cut, "ms-app", "ms-app://s-1-15-2-1234/callback?code=steak");
+        final URL other = createUrl(cut, "ms-app", "ms-app://s-1-15-2-1234/elsewhere");
+
+        final URLConnection actual = redirect.openConnection();
+
+        Assert.assertTrue(actual instanceof RedirectInterceptor.InterceptedConnection);
+        Assert.assertEquals(1, intercepted.size());
+        try {
+            other.openConnection();
+            Assert.fail("An IOException should have been thrown");
+        }
+        catch (final IOException expected) {
+            Assert.assertEquals(1, intercepted.size());
+        }
+    }
+}
@@ -4,6 +4,7 @@
 package com.microsoft.alm.oauth2.useragent;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.SWTError;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.FillLayout;
@@ -12,11 +13,22 @@ import org.eclipse.swt.widgets.Monitor;
 import org.eclipse.swt.widgets.Shell;
 
 import java.awt.Dimension;
+import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
 
 public class StandardWidgetToolkit implements UserAgent, RunnableFactory<StandardWidgetToolkit>, Runnable {
 
+    static final String MOZ_PROFILE_PATH_PROPERTY_NAME = "org.eclipse.swt.browser.MOZ_PROFILE_PATH";
+    /**
+     * {@code SWT.EDGE}, which only exists from SWT 4.14.
+     */
+    static final int EDGE_STYLE = 1 << 18;
     static RunnableFactory<StandardWidgetToolkit> RUNNABLE_FACTORY_OVERRIDE = null;
+    private static FileLock profileLock = null;
 
     private RunnableFactory<StandardWidgetToolkit> swtRunnableFactory;
     private String[] commandLineArgs;
@@ -41,12 +53,16 @@ public class StandardWidgetToolkit implements UserAgent, RunnableFactory<Standar
         shell.setSize(size.width, size.height);
         shell.setLocation((bounds.width - size.width) / 2, (bounds.height - size.height) / 2);
 
-        Browser browser = new org.eclipse.swt.browser.Browser(shell, SWT.ON_TOP);
+        Browser browser = createBrowser(shell);
+        ProviderProbe.browserCreated();
 
         swtInterceptingBrowser = new SwtInterceptingBrowser(browser, display, shell);
+        ProgressReporter.report(ProgressEvent.Type.TOOLKIT_READY, null);
     }
 
     public static void main(final String[] args) {
+        NetworkRecorder.installFromSystemProperties();
+        usePersistentProfile();
         final StandardWidgetToolkit swt = new StandardWidgetToolkit(args);
 
         final Runnable runnable = swt.swtRunnableFactory.create(swt);
@@ -56,6 +72,59 @@ public class StandardWidgetToolkit implements UserAgent, RunnableFactory<Standar
         swt.showSwtWindow();
     }
 
+    /**
+     * Points the Mozilla engine at the persistent profile, unless a profile was explicitly configured.
+     * The other engines keep their data in the platform's own locations.
+     * The profile stays locked until the process exits, so that it isn't evicted while in use.
+     */
+    static void usePersistentProfile() {
+        final String profilePath = System.getProperty(ProfileStore.PROFILE_PATH_PROPERTY_NAME);
+        if (profilePath == null) {
+            return;
+        }
+        profileLock = ProfileStore.lockInUse(new File(profilePath));
+        if (System.getProperty(MOZ_PROFILE_PATH_PROPERTY_NAME) == null) {
+            System.setProperty(MOZ_PROFILE_PATH_PROPERTY_NAME, new File(profilePath, "mozilla").getAbsolutePath());
+        }
+    }
+
+    /**
+     * Creates the browser with the engine the parent process selected, if any, recording how long it took
+     * from the start of the process; falls back to SWT's own choice if that engine can't be used.
+     */
+    static Browser createBrowser(final Shell shell) {
+        final BrowserEngine engine = BrowserEngine.parse(System.getProperty(BrowserEngine.SELECTED_ENGINE_PROPERTY_NAME));
+        final String environment = System.getProperty(BrowserEngine.ENVIRONMENT_PROPERTY_NAME);
+        if (engine == null || environment == null) {
+            return new Browser(shell, SWT.ON_TOP);
+        }
+        Browser result;
+        long startupMillis;
+        try {
+            result = new Browser(shell, SWT.ON_TOP | getStyle(engine));
+            startupMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        }
+        catch (final SWTError ignored) {
+            result = new Browser(shell, SWT.ON_TOP);
+            startupMillis = -1;
+        }
+        engine.recordStartup(BrowserEngine.BENCHMARK_FILE, environment, startupMillis);
+        return result;
+    }
+
+    static int getStyle(final BrowserEngine engine) {
+        switch (engine) {
+            case MOZILLA:
+                return SWT.MOZILLA;
+            case WEBKIT:
+                return SWT.WEBKIT;
+            case EDGE:
+                return EDGE_STYLE;
+            default:
+                return SWT.NONE;
+        }
+    }
+
     @Override
     public AuthorizationResponse requestAuthorizationCode(final URI authorizationEndpoint, final URI redirectUri)
             throws AuthorizationException {
@@ -64,6 +133,16 @@ public class StandardWidgetToolkit implements UserAgent, RunnableFactory<Standar
         return swtInterceptingBrowser.waitForResponse();
     }
 
+    @Override
+    public List<AuthorizationResponse> requestAuthorizationCodes(final List<AuthorizationRequest> requests)
+            throws AuthorizationException {
+        final List<AuthorizationResponse> result = new ArrayList<AuthorizationResponse>(requests.size());
+        for (final AuthorizationRequest request : requests) {
+            result.add(requestAuthorizationCode(request.getAuthorizationEndpoint(), request.getRedirectUri()));
+        }
+        return result;
+    }
+
     @Override
     public Runnable create(final StandardWidgetToolkit standardWidgetToolkit) {
         return this;
@@ -76,7 +155,22 @@ public class StandardWidgetToolkit implements UserAgent, RunnableFactory<Standar
     }
 
     private void showSwtWindow() {
-        shell.open();
+        final int silentBudget = UserAgentImpl.getSilentBudgetMilliseconds(System.getProperties());
+        if (silentBudget > 0) {
+            // the process exits as soon as the response is sent, so the shell only
+            // ever appears if the authorization server needs the user's attention
+            display.timerExec(silentBudget, new Runnable() {
+                @Override
+                public void run() {
+                    if (!shell.isDisposed()) {
+                        openShell();
+                    }
+                }
+            });
+        }
+        else {
+            openShell();
+        }
         while (!shell.isDisposed()) {
             if (!display.readAndDispatch()) {
                 display.sleep();
@@ -85,6 +179,11 @@ public class StandardWidgetToolkit implements UserAgent, RunnableFactory<Standar
         display.dispose();
     }
 
+    private void openShell() {
+        shell.open();
+        ProgressReporter.report(ProgressEvent.Type.WINDOW_SHOWN, null);
+    }
+
     void dispose() {
         this.display.asyncExec(new Runnable() {
             @Override
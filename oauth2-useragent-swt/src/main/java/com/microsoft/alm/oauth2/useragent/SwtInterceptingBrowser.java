@@ -7,20 +7,37 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.browser.Browser;
 import org.eclipse.swt.browser.LocationAdapter;
 import org.eclipse.swt.browser.LocationEvent;
+import org.eclipse.swt.browser.ProgressAdapter;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Shell;
 
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class SwtInterceptingBrowser {
 
+    static final String CANCELLED_RESPONSE = "error=cancelled&error_description=The browser window was closed by the user.";
+
     private Display display;
     private Browser browser;
+    /**
+     * SWT only lets us veto navigations, not the requests for the resources of a page.
+     */
+    private final RequestFilter requestFilter = RequestFilter.fromProperties(System.getProperties());
+    /**
+     * SWT doesn't expose the requests either, so only the navigations are recorded, timed from the moment
+     * the browser is about to leave the current page to when the new one is committed (the wait)
+     * and then loaded (the receive).  Only accessed on the UI thread.
+     */
+    private final NetworkRecorder networkRecorder = NetworkRecorder.getInstalled();
+    private NetworkRecorder.Entry navigation = null;
+    private long navigationStartNanos;
+    private long navigationCommittedNanos = NetworkRecorder.UNKNOWN;
 
     private final Lock lock = new ReentrantLock();
     private final Condition responseReceived = lock.newCondition();
@@ -28,6 +45,7 @@ public class SwtInterceptingBrowser {
     private String redirectUriString;
     private String destinationUriString;
     private String response;
+    private boolean cancelled = false;
 
     public SwtInterceptingBrowser(final Browser browser, final Display display, final Shell shell) {
         this.browser = browser;
@@ -44,15 +62,40 @@ public class SwtInterceptingBrowser {
                     if (redirectUriString != null && newValue != null && newValue.startsWith(redirectUriString)) {
                         // Do not load this new location, as we are only interested in the authorization code
                         locationEvent.doit = false;
+                        ProgressReporter.report(ProgressEvent.Type.REDIRECT_MATCHED, newValue);
 
                         response = UserAgentImpl.extractResponseFromRedirectUri(newValue);
-                        responseReceived.signal();
+                        responseReceived.signalAll();
+                        recordVetoedNavigation(newValue, "The redirect URI was intercepted.");
+                    }
+                    else if (requestFilter != null && newValue != null && !isAllowed(newValue)) {
+                        locationEvent.doit = false;
+                        recordVetoedNavigation(newValue, "The request was blocked.");
+                    }
+                    else {
+                        startNavigation(newValue);
                     }
                 }
                 finally {
                     lock.unlock();
                 }
             }
+
+            @Override
+            public void changed(final LocationEvent locationEvent) {
+                ProgressReporter.report(ProgressEvent.Type.LOCATION_CHANGED, locationEvent.location);
+                if (navigation != null && locationEvent.top) {
+                    navigationCommittedNanos = System.nanoTime();
+                    navigation.waitNanos = navigationCommittedNanos - navigationStartNanos;
+                }
+            }
+        });
+        this.browser.addProgressListener(new ProgressAdapter() {
+            @Override
+            public void completed(final org.eclipse.swt.browser.ProgressEvent progressEvent) {
+                ProgressReporter.report(ProgressEvent.Type.PAGE_LOADED, SwtInterceptingBrowser.this.browser.getUrl());
+                finishNavigation(null);
+            }
         });
 
         shell.addListener(SWT.Close, new Listener() {
@@ -60,8 +103,8 @@ public class SwtInterceptingBrowser {
             public void handleEvent(Event event) {
                 lock.lock();
                 try {
-                    response = "error=cancelled&error_description=The browser window was closed by the user.";
-                    responseReceived.signal();
+                    cancelled = true;
+                    responseReceived.signalAll();
                 } finally {
                     lock.unlock();
                 }
@@ -69,14 +112,66 @@ public class SwtInterceptingBrowser {
         });
     }
 
+    private void startNavigation(final String location) {
+        if (networkRecorder == null || location == null) {
+            return;
+        }
+        finishNavigation("Another navigation started before this one completed.");
+        navigation = new NetworkRecorder.Entry(System.currentTimeMillis(), location);
+        navigationStartNanos = System.nanoTime();
+        navigationCommittedNanos = NetworkRecorder.UNKNOWN;
+    }
+
+    private void finishNavigation(final String comment) {
+        if (navigation == null) {
+            return;
+        }
+        if (navigationCommittedNanos != NetworkRecorder.UNKNOWN) {
+            navigation.receiveNanos = System.nanoTime() - navigationCommittedNanos;
+        }
+        navigation.comment = comment;
+        networkRecorder.record(navigation);
+        navigation = null;
+    }
+
+    private void recordVetoedNavigation(final String location, final String comment) {
+        if (networkRecorder == null) {
+            return;
+        }
+        final NetworkRecorder.Entry entry = new NetworkRecorder.Entry(System.currentTimeMillis(), location);
+        entry.comment = comment;
+        networkRecorder.record(entry);
+    }
+
+    boolean isAllowed(final String uriString) {
+        try {
+            return requestFilter.allow(new URI(uriString));
+        }
+        catch (final URISyntaxException ignored) {
+            return true;
+        }
+    }
+
     public void sendRequest(final URI destinationUri, final URI redirectUri) {
-        destinationUriString = destinationUri.toString();
-        redirectUriString = redirectUri.toString();
+        final String uriString = destinationUri.toString();
+        lock.lock();
+        try {
+            destinationUriString = uriString;
+            redirectUriString = redirectUri.toString();
+            response = null;
+            if (networkRecorder != null) {
+                networkRecorder.setRedirectUri(redirectUriString);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
 
         this.display.asyncExec(new Runnable() {
             @Override
             public void run() {
-                browser.setUrl(destinationUriString);
+                ProgressReporter.report(ProgressEvent.Type.NAVIGATION_STARTED, uriString);
+                browser.setUrl(uriString);
             }
         });
     }
@@ -84,7 +179,13 @@ public class SwtInterceptingBrowser {
     public AuthorizationResponse waitForResponse() throws AuthorizationException {
         lock.lock();
         try {
-            responseReceived.awaitUninterruptibly();
+            // the response could have arrived before we started waiting
+            while (response == null && !cancelled) {
+                responseReceived.awaitUninterruptibly();
+            }
+            if (response == null) {
+                return AuthorizationResponse.fromString(CANCELLED_RESPONSE);
+            }
 
             return AuthorizationResponse.fromString(response);
         } finally {